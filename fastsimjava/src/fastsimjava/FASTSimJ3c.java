@@ -1,7 +1,10 @@
 package fastsimjava;
 
 import java.io.FileWriter;
-import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import fastsimjava.abs.*;
 import fastsimjava.components.*;
@@ -16,9 +19,17 @@ public class FASTSimJ3c {
 	
 	//Current Vehicle State
 	private FSJVehState vehState;
-	//Vehicle state at all time instants during last simulated trip
+	//Columnar record of the vehicle state at all time instants during last simulated trip
+	private FSJTripRecord lastTripRecord;
+	public FSJTripRecord lastTripRecord() {return lastTripRecord;}
+	//Vehicle state objects at all time instants during last simulated trip (created from the columnar record on first request)
 	private FSJVehState[] lastTripVehStates;
-	public FSJVehState[] lastTripVehStates() {return lastTripVehStates;}
+	public FSJVehState[] lastTripVehStates() {
+		if ((lastTripVehStates == null)&&(lastTripRecord != null)) lastTripVehStates = lastTripRecord.toVehStates(vehState);
+		return lastTripVehStates;
+	}
+	//Selected output channels recorded during last simulated trip (indexed by TripRecordOutput ordinal, null if not recorded)
+	private float[][] lastTripChannels;
 	
 	//Function to return a link to current vehicle model parameters
 	public FSJVehModelParam getCurVehModel() {
@@ -29,32 +40,83 @@ public class FASTSimJ3c {
 	//Compact summary of last trip
 	private TripCSummary lastTripSummary;
 	public TripCSummary lastTripSummary() {return lastTripSummary;}
+	
+	//Method for balancing HEV battery use in compact runs (for estimating equivalent HEV fuel use at zero net battery use)
+	public enum HEVBalanceMethod {
+		lineFit,	//Line-fit of fuel vs. battery use over uniformly spaced initial SoC values, attempted with 5 to 20 points
+		rootFind,	//Bracketed secant (Illinois) search for the initial SoC at which battery use is ~zero (falls back to line-fit if not bracketed)
+	}
+	public HEVBalanceMethod hevBalanceMethod;
+	//Tolerance on battery use (kWh) and maximum number of trip simulations for the root-finding method
+	public float hevBalanceTolKWh;
+	public int hevBalanceMaxRuns;
+	//Optional executor for running the line-fit points of HEV balancing concurrently (null = run sequentially on the calling thread)
+	// Note #1: requires a power manager that supports createCopy(), otherwise the points are run sequentially
+	// Note #2: may be the same (bounded) executor the compact runs are called from -- points that no thread of the executor
+	//          has started yet are run on the calling thread instead of waiting for them
+	public ExecutorService hevFitExecutor;
+	//Number of trip simulations done by the last compact run (more than one when balancing HEV battery use)
+	private int lastHEVBalanceNumRuns;
+	public int lastHEVBalanceNumRuns() {return lastHEVBalanceNumRuns;}
+	
+	//Trip and last simulated time step of a partial compact run (null trip if no partial run is in progress)
+	private FSJTripInput partialRunTrip;
+	private int partialRunStepID;
+	public int partialRunStepID() {return partialRunStepID;}
+	
+	//Optional cache of compact run results (null = no caching), see FSJResultCache
+	public FSJResultCache resultCache;
+	//Description of the current vehicle model, its efficiency curves, simulation constants and tuning (as they were when the model was set)
+	private String vehDescription;
 
 	//Constructor
 	public FASTSimJ3c() {
 		simConsts = new FSJSimConstants();
 		vehState = null;
+		hevBalanceMethod = HEVBalanceMethod.lineFit;
+		hevBalanceTolKWh = 0.0005f;
+		hevBalanceMaxRuns = 12;
 		resetLastTripInfo();
 	}
 	private void resetLastTripInfo() {
+		partialRunTrip = null;
+		partialRunStepID = 0;
+		lastTripRecord = null;
 		lastTripVehStates = null;
+		lastTripChannels = null;
 		if (lastTripSummary != null) lastTripSummary.reset();
 		else lastTripSummary = null;
 	}
+	
+	//Functions for runs that advance the vehicle state outside of this object (FASTSimJ3cLanes and FSJStreamingSession)
+	FSJVehState laneVehState() {return vehState;}
+	TripCSummary beginLaneRun() {
+		resetLastTripInfo();
+		lastTripSummary = new TripCSummary();
+		lastHEVBalanceNumRuns = 1;
+		vehState.resetAllExceptSOC();
+		return lastTripSummary;
+	}
 
 	//Function to set the vehicle model (do this before simulation, model remains until set to something else)
 	// Note: BEVs and PHEVs are initialized to fully charge (relSoC = 1) by default, use SoC modification functions
 	//       if a different initialization is desired
 	public void setVehModel(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager) {
 		vehState = new FSJVehState(simConsts, vehModel, curveManager);
+		vehDescription = vehDescription(vehModel, curveManager);
 		resetLastTripInfo();
 	}
 	//With built-in support for 3-Parameter tuning
 	public void setVehModel(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager, float addMass, float addAux, float adjDEMult) {
 		vehState = new FSJVehState(simConsts, vehModel, curveManager, addMass, addAux, adjDEMult);
+		vehDescription = vehDescription(vehModel, curveManager);
 		resetLastTripInfo();
 	}	
 	
+	//Function to check whether results depend on ambient & engine thermal conditions (temperature, cold/hot start)
+	// -- not modeled (yet), so runs that only differ in these conditions give the same results
+	public boolean modelsThermalEffects() {return false;}
+	
 	//Function to return the tire slip condition maximum acceleration
 	public float tireSlipMaxAccelMS2() {
 		if (vehState==null) return 0f;
@@ -65,6 +127,11 @@ public class FASTSimJ3c {
 		if (vehState==null) return 0f;
 		return vehState.motion.maxDecelMS2;
 	}
+	//Function to return the current relative state of charge
+	public float curRelSoC() {
+		if (vehState==null) return 0f;
+		return vehState.soc.relSoC;
+	}
 	//Function for adjusting relative state of charge (only affects BEVs & PHEVs)
 	public void setRelSoC(float relSoC) {
 		//Exit if no vehicle model exists
@@ -96,6 +163,24 @@ public class FASTSimJ3c {
 		//	otherAuxKW --> assumed to be zero
 		//	payloadKg --> assumed to be zero
 		//Note: hybPwrMgr CANNOT be null when invoking this version of run() function
+		
+		//Exit if no vehicle model exists
+		if (vehState==null) return;
+		
+		runC(new FSJTripInput(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg), hybPwrMgr);
+	}
+	// ...version via compact (quantized) trip, decoded for this run
+	public void runC(FSJCompactTrip trip, FSJHybridPowerManagerBase hybPwrMgr) {
+		//Note: hybPwrMgr CANNOT be null when invoking this version of run() function
+
+		//Exit if no vehicle model exists
+		if (vehState==null) return;
+
+		runC(trip.toTripInput(), hybPwrMgr);
+	}
+	// ...version via pre-processed trip input (for repeated runs of the same trip)
+	public void runC(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr) {
+		//Note: hybPwrMgr CANNOT be null when invoking this version of run() function
 
 		//Exit if no vehicle model exists
 		if (vehState==null) return;
@@ -103,15 +188,111 @@ public class FASTSimJ3c {
 		//Kill previously saved results and only start compact record
 		resetLastTripInfo();
 		lastTripSummary = new TripCSummary();
+		lastHEVBalanceNumRuns = 0;
+		
+		//Check if the result is available from cache
+		String cacheKey = null;
+		if (resultCache != null) {
+			cacheKey = resultCache.key(runDescription(hybPwrMgr), trip);
+			if (cacheKey != null) {
+				FSJResultCache.CachedResult cachedResult = resultCache.get(cacheKey);
+				if (cachedResult != null) {
+					applyCachedResult(cachedResult, hybPwrMgr);
+					return;
+				}
+			}
+		}
 		
 		//Do single run (without change to SoC) if not HEV, otherwise iterate to balance for ~zero battery use
 		if (vehState.vehModel().general.vehPtType == FSJVehModelParam.VehicleDriveTrainType.hev) {
 			//HEV
-			runFitHEV(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr);
+			switch (hevBalanceMethod) {
+			case rootFind:
+				if (!runBalanceHEV(trip, hybPwrMgr)) {
+					runFitHEV(trip, hybPwrMgr);
+				}
+				break;
+			default:
+				runFitHEV(trip, hybPwrMgr);
+				break;
+			}
 		} else {
 			//Not HEV
-			runCHEV(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr, -1);
-		}		
+			runCHEV(trip, hybPwrMgr, -1);
+		}
+		
+		//Save result to cache
+		if (cacheKey != null) resultCache.put(cacheKey, cachedResult(hybPwrMgr));
+	}
+	
+	//Function to describe the vehicle model as it is set (the simulation runs from the vehicle kernel built at that point,
+	// so later changes to the model parameters or curves are not seen by the simulation)
+	private String vehDescription(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager) {
+		PieceWiseLinearEfficiencyCurve fcCurve = null;
+		PieceWiseLinearEfficiencyCurve mtCurve = null;
+		if (curveManager != null) {
+			fcCurve = curveManager.getFCCurve(vehModel.battery.fcCCurveID);
+			mtCurve = curveManager.getMtCurve(vehModel.battery.mtCCurveID);
+		}
+		FSJVehState.ThreeParTuning tpt = vehState.tpt();
+		String lsep = System.getProperty("line.separator");
+		
+		return simConsts.cacheDescription()+lsep
+				+vehModel.toString()+","+vehModel.battery.overrideMaxEsskw+","+vehModel.battery.fcCCurveID+","+vehModel.battery.mtCCurveID+lsep
+				+vehModel.massProp.totalKg+","+vehModel.massProp.allWheelsKgM2+lsep
+				+"fcCurve,"+fcCurve+",mtCurve,"+mtCurve+lsep
+				+tpt.addMass+","+tpt.addAux+","+tpt.adjDEMult;
+	}
+	//Function to describe everything that affects the results of a compact run except the trip (null if results are not cacheable)
+	private String runDescription(FSJHybridPowerManagerBase hybPwrMgr) {
+		String pwrMgrDescription = hybPwrMgr.cacheDescription();
+		if (pwrMgrDescription == null) return null;
+		
+		String lsep = System.getProperty("line.separator");
+		String description = vehDescription+lsep
+				+simConsts.cacheDescription()+lsep
+				+hevBalanceMethod+","+hevBalanceTolKWh+","+hevBalanceMaxRuns+lsep;
+		
+		//Initial state of charge (not for HEVs, as it is set by balancing for ~zero battery use)
+		if (vehState.vehModel().general.vehPtType != FSJVehModelParam.VehicleDriveTrainType.hev) {
+			description = description+vehState.soc.relSoC+","+vehState.soc.absSoC+lsep;
+		}
+		return description+pwrMgrDescription;
+	}
+	//Function to capture the results of the last compact run for caching
+	private FSJResultCache.CachedResult cachedResult(FSJHybridPowerManagerBase hybPwrMgr) {
+		FSJResultCache.CachedResult result = new FSJResultCache.CachedResult();
+		result.summaryValues = new float[] {lastTripSummary.miles, lastTripSummary.fuelUse, lastTripSummary.batteryUse, 
+				lastTripSummary.maxSpeedSlipMPH, lastTripSummary.finalRelSoC, lastTripSummary.seconds, 
+				lastTripSummary.secondsIdling, lastTripSummary.secondsFuelConvOn};
+		result.nFuelConvStarts = lastTripSummary.nFuelConvStarts;
+		result.numRuns = lastHEVBalanceNumRuns;
+		result.relSoC = vehState.soc.relSoC;
+		result.absSoC = vehState.soc.absSoC;
+		if (lastTripSummary.fcLoadHistogram != null) result.fcLoadHistogram = lastTripSummary.fcLoadHistogram.packedValues();
+		result.pwrMgrState = hybPwrMgr.decisionState();
+		return result;
+	}
+	//Function to set the compact summary, state of charge and power manager state from a cached result
+	private void applyCachedResult(FSJResultCache.CachedResult result, FSJHybridPowerManagerBase hybPwrMgr) {
+		vehState.resetAllExceptSOC();
+		vehState.soc.relSoC = result.relSoC;
+		vehState.soc.absSoC = result.absSoC;
+		if (result.fcLoadHistogram != null) vehState.energyUse.fcLoadHist = new FCFracLoadHistogram(result.fcLoadHistogram);
+		if (result.pwrMgrState != null) hybPwrMgr.setDecisionState(result.pwrMgrState);
+		
+		float[] v = result.summaryValues;
+		lastTripSummary.miles = v[0];
+		lastTripSummary.fuelUse = v[1];
+		lastTripSummary.batteryUse = v[2];
+		lastTripSummary.maxSpeedSlipMPH = v[3];
+		lastTripSummary.finalRelSoC = v[4];
+		lastTripSummary.seconds = v[5];
+		lastTripSummary.secondsIdling = v[6];
+		lastTripSummary.secondsFuelConvOn = v[7];
+		lastTripSummary.nFuelConvStarts = result.nFuelConvStarts;
+		lastTripSummary.fcLoadHistogram = vehState.energyUse.fcLoadHist;
+		lastHEVBalanceNumRuns = result.numRuns;
 	}
 	
 	//Function for running simulation of a trip w/ full Time-Record (i.e. retaining all the vehicle "states" at every time step)
@@ -126,11 +307,25 @@ public class FASTSimJ3c {
 	// ...most general version
 	public void runTR(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, 
 			FSJHybridPowerManagerBase hybPwrMgr, float hevInitialRelSoC) {
+		runTR(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr, hevInitialRelSoC, null);
+	}
+	// ...version that records only the requested output channels (null records the full vehicle state at every time step)
+	//	-- after the run, only the requested channels are available via extractTimeRecord(), and lastTripVehStates() returns null
+	public void runTR(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, 
+			FSJHybridPowerManagerBase hybPwrMgr, float hevInitialRelSoC, TripRecordOutput[] recChannels) {
 		//Inputs that may be null (and treatment if they are null) are:
 		//	timeSec --> speedDesiredMPH is assumed to be at 1sec intervals
 		//	roadGrade --> assumed to be zero
 		//	otherAuxKW --> assumed to be zero
 		//	payloadKg --> assumed to be zero
+
+		//Exit if no vehicle model exists
+		if (vehState==null) return;
+		
+		runTR(new FSJTripInput(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg), hybPwrMgr, hevInitialRelSoC, recChannels);
+	}
+	// ...version via pre-processed trip input (for repeated runs of the same trip)
+	public void runTR(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr, float hevInitialRelSoC, TripRecordOutput[] recChannels) {
 		//Note #1: hybPwrMgr CANNOT be null when invoking this version of run() function
 		//Note #2: hevInitialSoC has no effect unless the vehicle is HEV and the value is >= 0 
 		//	-- otherwise the simulation continues with "last" (after previous trip), or the default initialization of SoC in FSJVehState class
@@ -148,30 +343,32 @@ public class FASTSimJ3c {
 			setRelSoC(hevInitialRelSoC);
 		}
 		
-		ArrayList<FSJVehState> lstTR = new ArrayList<FSJVehState>();
-		lstTR.add(new FSJVehState(vehState));
+		FSJTripRecord tripRec = null;
+		float[][] tripChannels = null;
+		if (recChannels == null) {
+			tripRec = new FSJTripRecord(trip.numSteps);
+			tripRec.recordState(0, vehState);
+		} else {
+			tripChannels = new float[TripRecordOutput.values().length][];
+			for (int i=0; i<recChannels.length; i++) {
+				if (tripChannels[recChannels[i].ordinal()] == null) tripChannels[recChannels[i].ordinal()] = new float[trip.numSteps];
+			}
+			recordChannels(tripChannels, recChannels, 0, vehState);
+		}
 		
 		//Main run
-		float secSinceStart = 0f;
 		float zSpeedTolMZ = 0.001f;
 		
-		for (int i=1; i<speedDesiredMPH.length; i++) {			
-			float deltaTime = 1f;
-			if (timeSec!=null) deltaTime = timeSec[i]-timeSec[i-1];
-			secSinceStart += deltaTime;
-			
-			float desiredMPH = speedDesiredMPH[i];
-			
-			float grade = 0f;
-			if (roadGrade!=null) grade = roadGrade[i];
+		for (int i=1; i<trip.numSteps; i++) {			
+			float deltaTime = trip.deltaSec[i];
+			float desiredMPH = trip.speedMPH[i];
 			
 			boolean fuelConvWasOn = vehState.isFuelConvOn();
-			float oAuxKW = 0f;
-			if (otherAuxKW != null) oAuxKW = otherAuxKW[i];
-			if (payloadKg == null) vehState.updateState(secSinceStart, desiredMPH, grade, oAuxKW, hybPwrMgr, 0f);
-			else vehState.updateState(secSinceStart, desiredMPH, grade, oAuxKW, hybPwrMgr, payloadKg[i]);
+			vehState.updateState(trip.secSinceStart[i], desiredMPH, trip.speedMS[i], trip.grade[i], trip.gradeSin[i], trip.auxKW[i], 
+					hybPwrMgr, trip.payloadKg[i]);
 			
-			lstTR.add(new FSJVehState(vehState));
+			if (tripRec != null) tripRec.recordState(i, vehState);
+			else recordChannels(tripChannels, recChannels, i, vehState);
 			
 			if (lastTripSummary.maxSpeedSlipMPH < vehState.motion.curSpeedSlipMPH) lastTripSummary.maxSpeedSlipMPH = vehState.motion.curSpeedSlipMPH;
 			if (vehState.isFuelConvOn()) {
@@ -189,50 +386,84 @@ public class FASTSimJ3c {
 		lastTripSummary.finalRelSoC = vehState.soc.relSoC;
 		lastTripSummary.seconds = vehState.time.secSinceTripStart;
 		
-		//Copy the list into an array
-		lastTripVehStates = new FSJVehState[lstTR.size()];
-		for (int i=0; i<lastTripVehStates.length; i++) lastTripVehStates[i] = lstTR.get(i);
+		lastTripRecord = tripRec;
+		lastTripChannels = tripChannels;
+	}
+	//Internal function for recording the selected output channels at a given time step
+	private static void recordChannels(float[][] tripChannels, TripRecordOutput[] recChannels, int stepID, FSJVehState vehState) {
+		for (int j=0; j<recChannels.length; j++) {
+			tripChannels[recChannels[j].ordinal()][stepID] = channelValue(recChannels[j], stepID, vehState);
+		}
+	}
+	//Internal function for the value of an output channel from the current vehicle state
+	private static float channelValue(TripRecordOutput channel, int stepID, FSJVehState vehState) {
+		switch (channel) {
+		case Time_sec:
+			return vehState.time.secSinceTripStart;
+		case Distance_mi:
+			return vehState.motion.milesSinceStart;
+		case Speed_mph:
+			return vehState.motion.achCurSpeedMPH;
+		case RelSOC:
+			return vehState.soc.relSoC;
+		case FuelUse:
+			return vehState.energyUse.fuelUseSinceTripStart;
+		case FuelConverterKW:
+			return vehState.instPower.fcPowerOut;
+		case MotorKW:
+			if (vehState.instPower.regenKW > 0) return -vehState.instPower.mtPowerOut;
+			return vehState.instPower.mtPowerOut;
+		case BatteryKW:
+			if (stepID < 1) return 0f;
+			return vehState.energyUse.batteryKWhSinceLastState*3600f/vehState.time.deltaSecFromLastState;
+		}
+		return 0f;
 	}
 	
 	//Internal calculation function -- Line-Fitting to estimate equivalent HEV fuel economy -- multiple attempts with different number of points
-	private void runFitHEV(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, FSJHybridPowerManagerBase hybPwrMgr) {
+	private void runFitHEV(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr) {
 		
 		int startNumFitPoints = 5;
 		int maxNumFitPoints = 20;
 		boolean runFitPointsSuccessful = false;
 		
 		for (int i=startNumFitPoints; i<=maxNumFitPoints; i++) {
-			try {
-				runFitHEVgivenNumPoints(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr, i);
-				runFitPointsSuccessful = true;
-				break;
-			} catch (Exception e) {
-				runFitPointsSuccessful = false;
-			}
+			runFitPointsSuccessful = runFitHEVgivenNumPoints(trip, hybPwrMgr, i);
+			if (runFitPointsSuccessful) break;
 		}
 		
-		if (!runFitPointsSuccessful) runCHEV(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr, 0.5f);
+		if (!runFitPointsSuccessful) runCHEV(trip, hybPwrMgr, 0.5f);
 	}
 
 	//Internal calculation function -- Line-Fitting to estimate equivalent HEV fuel economy -- given number of line fit points
-	private void runFitHEVgivenNumPoints(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, FSJHybridPowerManagerBase hybPwrMgr, int numFitPoints) throws Exception {
+	// (returns false if the fit is degenerate or does not give a positive fuel use)
+	private boolean runFitHEVgivenNumPoints(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr, int numFitPoints) {
 		
 		float zTolerance = (float)1.0e-6;
 		float[] xTrys = new float[numFitPoints];
 		float[] yTrys = new float[numFitPoints];
 		
 		float deltaRelSOC = 1f/(float)numFitPoints;
+		float[] relSocTrys = new float[numFitPoints];
 		float curRelSoc = 0.5f*deltaRelSOC;
-		
-		for (int i=0; i<xTrys.length; i++) {
-			runCHEV(timeSec, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg, hybPwrMgr, curRelSoc);
-			
-			yTrys[i] = lastTripSummary.fuelUse;
-			xTrys[i] = lastTripSummary.batteryUse;
-			
+		for (int i=0; i<relSocTrys.length; i++) {
+			relSocTrys[i] = curRelSoc;
 			curRelSoc += deltaRelSOC;
 		}
 		
+		boolean pointsEvaluated = false;
+		if (hevFitExecutor != null) {
+			pointsEvaluated = runFitPointsConcurrently(trip, hybPwrMgr, relSocTrys, xTrys, yTrys);
+		}
+		if (!pointsEvaluated) {
+			for (int i=0; i<xTrys.length; i++) {
+				runCHEV(trip, hybPwrMgr, relSocTrys[i]);
+				
+				yTrys[i] = lastTripSummary.fuelUse;
+				xTrys[i] = lastTripSummary.batteryUse;
+			}
+		}
+		
 		float sumX2 = 0f;
 		float sumX = 0f;
 		float sumY = 0f;
@@ -251,42 +482,177 @@ public class FASTSimJ3c {
 		float delta = numFitPoints*sumX2 - sumX*sumX;
 		float delta0 = sumY*sumX2 - sumX*sumXY;
 		
-		if (delta < zTolerance) throw new Exception();
+		if (delta < zTolerance) return false;
 		
 		lastTripSummary.fuelUse = delta0/delta;
-		if (lastTripSummary.fuelUse < zTolerance) throw new Exception();
+		if (lastTripSummary.fuelUse < zTolerance) return false;
 		lastTripSummary.batteryUse = 0f;
+		return true;
+	}
+	
+	//Internal calculation function -- runs all but the last line fit point on copies of the vehicle state and power manager via the executor,
+	// while the last point runs on the calling thread (so the final vehicle state, power manager and summary are the same as when running sequentially),
+	// and so do points not yet started by the executor when the calling thread is done (so it never waits on tasks queued behind itself)
+	// (returns false if the power manager cannot be copied or any of the concurrent runs fails, in which case all points should be re-run sequentially)
+	private boolean runFitPointsConcurrently(final FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr, float[] relSocTrys, float[] xTrys, float[] yTrys) {
+		int nPoints = relSocTrys.length;
+		
+		//Independent copies for each concurrent point
+		final FASTSimJ3c[] workers = new FASTSimJ3c[nPoints-1];
+		final FSJHybridPowerManagerBase[] workerPwrMgrs = new FSJHybridPowerManagerBase[nPoints-1];
+		for (int i=0; i<workers.length; i++) {
+			workerPwrMgrs[i] = hybPwrMgr.createCopy();
+			if (workerPwrMgrs[i] == null) return false;
+			
+			workers[i] = new FASTSimJ3c();
+			workers[i].simConsts = simConsts;
+			workers[i].vehState = new FSJVehState(vehState);
+			workers[i].lastTripSummary = workers[i].new TripCSummary();
+		}
+		
+		FutureTask<?>[] futures = new FutureTask<?>[workers.length];
+		for (int i=0; i<workers.length; i++) {
+			final int pointID = i;
+			final float relSoc = relSocTrys[i];
+			futures[i] = new FutureTask<Object>(new Callable<Object>() {
+				@Override public Object call() {
+					workers[pointID].runCHEV(trip, workerPwrMgrs[pointID], relSoc);
+					return null;
+				}
+			});
+			try {
+				hevFitExecutor.execute(futures[i]);
+			} catch (RejectedExecutionException e) {}	//Point is run on the calling thread below
+		}
+		
+		//Last point on this thread
+		int numRunsBefore = lastHEVBalanceNumRuns;
+		int lastID = nPoints-1;
+		runCHEV(trip, hybPwrMgr, relSocTrys[lastID]);
+		yTrys[lastID] = lastTripSummary.fuelUse;
+		xTrys[lastID] = lastTripSummary.batteryUse;
+		
+		//Collect results from the other points (runs are only counted once all points succeeded, since otherwise all are re-run)
+		try {
+			for (int i=0; i<futures.length; i++) {
+				futures[i].run();	//Has no effect if the task was already started by the executor
+				futures[i].get();
+				yTrys[i] = workers[i].lastTripSummary.fuelUse;
+				xTrys[i] = workers[i].lastTripSummary.batteryUse;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lastHEVBalanceNumRuns = numRunsBefore;
+			return false;
+		} catch (Exception e) {
+			lastHEVBalanceNumRuns = numRunsBefore;
+			return false;
+		}
+		lastHEVBalanceNumRuns += futures.length;
+		return true;
+	}
+	
+	//Internal calculation function -- Root-finding on initial SoC for ~zero HEV battery use, with fuel use interpolated to zero battery use
+	// from the final bracket (returns false if zero battery use is not bracketed by the extreme SoC values or the search fails)
+	private boolean runBalanceHEV(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr) {
+		float zTolerance = (float)1.0e-6;
+		float minBracketRelSoC = (float)1.0e-4;
+		
+		//Lower end of bracket (battery use should be negative or ~zero)
+		float relSocA = 0f;
+		runCHEV(trip, hybPwrMgr, relSocA);
+		float battA = lastTripSummary.batteryUse;
+		float fuelA = lastTripSummary.fuelUse;
+		if (Math.abs(battA) <= hevBalanceTolKWh) return finishBalanceHEV(fuelA, battA, fuelA, battA);
+		
+		//Upper end of bracket (battery use should be positive or ~zero)
+		float relSocB = 1f;
+		runCHEV(trip, hybPwrMgr, relSocB);
+		float battB = lastTripSummary.batteryUse;
+		float fuelB = lastTripSummary.fuelUse;
+		if (Math.abs(battB) <= hevBalanceTolKWh) return finishBalanceHEV(fuelB, battB, fuelA, battA);
+		
+		if ((battA > 0)||(battB < 0)) return false;
+		
+		//Illinois variant of the false-position method (halving the weight of an end that is retained twice in a row)
+		float wBattA = battA;
+		float wBattB = battB;
+		int lastSideKept = 0;
+		boolean lastRunIsB = true;
+		
+		while (lastHEVBalanceNumRuns < hevBalanceMaxRuns) {
+			if ((wBattB - wBattA) < zTolerance) return false;
+			float relSoc = relSocA + (relSocB - relSocA)*(-wBattA)/(wBattB - wBattA);
+			
+			runCHEV(trip, hybPwrMgr, relSoc);
+			float batt = lastTripSummary.batteryUse;
+			float fuel = lastTripSummary.fuelUse;
+			
+			if (batt > 0) {
+				if (Math.abs(batt) <= hevBalanceTolKWh) return finishBalanceHEV(fuel, batt, fuelA, battA);
+				relSocB = relSoc;
+				battB = batt;
+				fuelB = fuel;
+				wBattB = batt;
+				if (lastSideKept < 0) wBattA *= 0.5f;
+				lastSideKept = -1;
+				lastRunIsB = true;
+			} else {
+				if (Math.abs(batt) <= hevBalanceTolKWh) return finishBalanceHEV(fuel, batt, fuelB, battB);
+				relSocA = relSoc;
+				battA = batt;
+				fuelA = fuel;
+				wBattA = batt;
+				if (lastSideKept > 0) wBattB *= 0.5f;
+				lastSideKept = 1;
+				lastRunIsB = false;
+			}
+			
+			if ((relSocB - relSocA) < minBracketRelSoC) break;
+		}
+		
+		//Iteration limit reached (or bracket collapsed), interpolate from the final bracket
+		if (lastRunIsB) return finishBalanceHEV(fuelB, battB, fuelA, battA);
+		return finishBalanceHEV(fuelA, battA, fuelB, battB);
+	}
+	//Internal function to set fuel use at zero battery use by linear interpolation from the last simulation (fuel0, batt0) and 
+	// the opposite end of the bracket (fuel1, batt1), the remaining information in the summary is from the last simulation
+	private boolean finishBalanceHEV(float fuel0, float batt0, float fuel1, float batt1) {
+		float zTolerance = (float)1.0e-6;
+		float fuelUse = fuel0;
+		if (Math.abs(batt1 - batt0) > zTolerance) fuelUse = fuel0 - batt0*(fuel1 - fuel0)/(batt1 - batt0);
+		if (fuelUse < zTolerance) return false;
+		
+		lastTripSummary.fuelUse = fuelUse;
+		lastTripSummary.batteryUse = 0f;
+		return true;
 	}
 	
 	//Internal calculation function -- Main "work-horse" for compact simulation (without saving all the intermediate states during the trip)
-	private void runCHEV(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, FSJHybridPowerManagerBase hybPwrMgr, float hevRelSOCTry) {
+	private void runCHEV(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr, float hevRelSOCTry) {
 		
 		//Reset all but the state of charge
 		vehState.resetAllExceptSOC();
 		lastTripSummary.reset();
+		lastHEVBalanceNumRuns++;
 		
 		//If a value > 0 is supplied for relative SOC (only for HEVs), set it
 		if (hevRelSOCTry >= 0f) setRelSoC(hevRelSOCTry);
 		
 		//Main run
-		float secSinceStart = 0f;
+		runCSteps(trip, hybPwrMgr, 1, trip.numSteps-1);
+	}
+	//Function to simulate a range of time steps of a trip, and update the compact summary
+	private void runCSteps(FSJTripInput trip, FSJHybridPowerManagerBase hybPwrMgr, int firstStepID, int lastStepID) {
 		float zSpeedTolMZ = 0.001f;
 		
-		for (int i=1; i<speedDesiredMPH.length; i++) {			
-			float deltaTime = 1f;
-			if (timeSec!=null) deltaTime = timeSec[i]-timeSec[i-1];
-			secSinceStart += deltaTime;
-			
-			float desiredMPH = speedDesiredMPH[i];
-			
-			float grade = 0f;
-			if (roadGrade!=null) grade = roadGrade[i];
+		for (int i=firstStepID; i<=lastStepID; i++) {			
+			float deltaTime = trip.deltaSec[i];
+			float desiredMPH = trip.speedMPH[i];
 			
 			boolean fuelConvWasOn = vehState.isFuelConvOn();
-			float oAuxKW = 0f;
-			if (otherAuxKW != null) oAuxKW = otherAuxKW[i];
-			if (payloadKg == null) vehState.updateState(secSinceStart, desiredMPH, grade, oAuxKW, hybPwrMgr, 0f);
-			else vehState.updateState(secSinceStart, desiredMPH, grade, oAuxKW, hybPwrMgr, payloadKg[i]);
+			vehState.updateState(trip.secSinceStart[i], desiredMPH, trip.speedMS[i], trip.grade[i], trip.gradeSin[i], trip.auxKW[i], 
+					hybPwrMgr, trip.payloadKg[i]);
 			
 			if (lastTripSummary.maxSpeedSlipMPH < vehState.motion.curSpeedSlipMPH) lastTripSummary.maxSpeedSlipMPH = vehState.motion.curSpeedSlipMPH;
 			if (vehState.isFuelConvOn()) {
@@ -304,6 +670,72 @@ public class FASTSimJ3c {
 		lastTripSummary.finalRelSoC = vehState.soc.relSoC;
 		lastTripSummary.seconds = vehState.time.secSinceTripStart;
 	}
+	
+	//Functions for partial compact runs, to simulate a trip in several parts, e.g. for scenario trees where runs share 
+	// the same prefix of the trip and fork from a snapshot (only the part after the fork is simulated for each scenario)
+	// Note: no balancing of battery use is done for HEVs (i.e. same results as runTR() with the same initial state)
+	public void beginRunC(FSJTripInput trip) {
+		//Exit if no vehicle model exists
+		if (vehState==null) return;
+		
+		resetLastTripInfo();
+		lastTripSummary = new TripCSummary();
+		lastHEVBalanceNumRuns = 1;
+		vehState.resetAllExceptSOC();
+		
+		partialRunTrip = trip;
+		partialRunStepID = 0;
+	}
+	// ...continue the run up to (and including) the given time step of the trip
+	public void continueRunC(FSJHybridPowerManagerBase hybPwrMgr, int toStepID) {
+		if (partialRunTrip == null) return;
+		
+		int lastStepID = Math.min(toStepID, partialRunTrip.numSteps-1);
+		if (lastStepID <= partialRunStepID) return;
+		
+		runCSteps(partialRunTrip, hybPwrMgr, partialRunStepID+1, lastStepID);
+		partialRunStepID = lastStepID;
+	}
+	// ...continue the run until the end of the trip
+	public void finishRunC(FSJHybridPowerManagerBase hybPwrMgr) {
+		if (partialRunTrip == null) return;
+		continueRunC(hybPwrMgr, partialRunTrip.numSteps-1);
+	}
+	//Function to capture the current state of a partial compact run, including the state of the power manager
+	// (returns null if there is no partial run, or if the power manager does not support createCopy())
+	public FSJSimSnapshot snapshot(FSJHybridPowerManagerBase hybPwrMgr) {
+		if ((vehState==null)||(partialRunTrip == null)) return null;
+		
+		FSJHybridPowerManagerBase pwrMgrCopy = null;
+		if (hybPwrMgr != null) {
+			pwrMgrCopy = hybPwrMgr.createCopy();
+			if (pwrMgrCopy == null) return null;	//Resuming without the power manager state would not give the same results
+		}
+		
+		FSJVehState vehStateCopy = new FSJVehState(vehState);
+		TripCSummary summaryCopy = new TripCSummary(lastTripSummary);
+		summaryCopy.fcLoadHistogram = vehStateCopy.energyUse.fcLoadHist;
+		
+		return new FSJSimSnapshot(vehStateCopy, summaryCopy, pwrMgrCopy, vehDescription, partialRunTrip, partialRunStepID);
+	}
+	//Function to restore a partial compact run from a snapshot (possibly taken from another simulator of the same vehicle model),
+	// returns a new copy of the snapshot's power manager to continue the run with (null if snapshot was taken without a power manager)
+	// Note: the snapshot is not modified, so it can be restored any number of times
+	public FSJHybridPowerManagerBase restore(FSJSimSnapshot snapshot) {
+		resetLastTripInfo();
+		
+		vehState = new FSJVehState(snapshot.vehState);
+		vehDescription = snapshot.vehDescription;
+		lastTripSummary = new TripCSummary(snapshot.summary);
+		lastTripSummary.fcLoadHistogram = vehState.energyUse.fcLoadHist;
+		lastHEVBalanceNumRuns = 1;
+		
+		partialRunTrip = snapshot.trip;
+		partialRunStepID = snapshot.stepID;
+		
+		if (snapshot.pwrMgr == null) return null;
+		return snapshot.pwrMgr.createCopy();
+	}
 
 	
 	//Class for compact summary of last vehicle trip
@@ -428,79 +860,52 @@ public class FASTSimJ3c {
 	}
 	
 	//Utility function for quick extraction of curves from previous trip simulation after invoking runTR() function
+	// Note: directly recorded quantities are returned as the arrays held in the trip record (not copies), so they should be treated as read-only
 	public float[] extractTimeRecord(TripRecordOutput recRequest) {
-		if (lastTripVehStates == null) return null;
-		
-		float[] outputCurve = new float[lastTripVehStates.length];
+		if (lastTripRecord == null) {
+			if (lastTripChannels == null) return null;
+			return lastTripChannels[recRequest.ordinal()];
+		}
 		
 		switch (recRequest) {
 		case Time_sec:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].time.secSinceTripStart;
-			}
-		}
-			break;
+			return lastTripRecord.secSinceTripStart;
 		case Distance_mi:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].motion.milesSinceStart;
-			}
-		}
-			break;
+			return lastTripRecord.milesSinceStart;
 		case Speed_mph:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].motion.achCurSpeedMPH;
-			}
-		}
-			break;
+			return lastTripRecord.achCurSpeedMPH;
 		case RelSOC:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].soc.relSoC;
-			}
-		}
-			break;
+			return lastTripRecord.relSoC;
 		case FuelUse:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].energyUse.fuelUseSinceTripStart;
-			}
-		}
-			break;
+			return lastTripRecord.fuelUseSinceTripStart;
 		case FuelConverterKW:
-		{
-			for (int i=0; i<outputCurve.length; i++) {
-				outputCurve[i] = lastTripVehStates[i].instPower.fcPowerOut;
-			}
-		}
-			break;
+			return lastTripRecord.fcPowerOut;
 		case MotorKW:
 		{
+			float[] outputCurve = new float[lastTripRecord.numSteps()];
 			for (int i=0; i<outputCurve.length; i++) {
-				FSJVehState.InstPowerInfo instPower = lastTripVehStates[i].instPower;
-				if (instPower.regenKW > 0) outputCurve[i] = -instPower.mtPowerOut;
-				else outputCurve[i] = instPower.mtPowerOut;
+				if (lastTripRecord.regenKW[i] > 0) outputCurve[i] = -lastTripRecord.mtPowerOut[i];
+				else outputCurve[i] = lastTripRecord.mtPowerOut[i];
 			}
+			return outputCurve;
 		}
-			break;
 		case BatteryKW:
 		{
+			float[] outputCurve = new float[lastTripRecord.numSteps()];
 			for (int i=1; i<outputCurve.length; i++) {
-				float deltaSec = lastTripVehStates[i].time.secSinceTripStart - lastTripVehStates[i-1].time.secSinceTripStart;
-				float deltaKWh = lastTripVehStates[i].energyUse.batteryKWhSinceLastState;
+				float deltaSec = lastTripRecord.secSinceTripStart[i] - lastTripRecord.secSinceTripStart[i-1];
+				float deltaKWh = lastTripRecord.batteryKWhSinceLastState[i];
 				outputCurve[i] = deltaKWh*3600f/deltaSec;
 			}
+			return outputCurve;
 		}
-			break;
 		}
 		
-		return outputCurve;
+		return new float[lastTripRecord.numSteps()];
 	}
 	// ...Multiple-output version
 	public float[][] extractTimeRecord(TripRecordOutput[] recRequest) {
-		if (lastTripVehStates == null) return null;
+		if ((lastTripRecord == null)&&(lastTripChannels == null)) return null;
 		if (recRequest == null) return null;
 		
 		float[][] outputCurves = new float[recRequest.length][];
@@ -514,6 +919,7 @@ public class FASTSimJ3c {
 		float[][] outputCurves = extractTimeRecord(recRequest);
 		if (outputCurves == null) return;
 		if (recRequest.length < 1) return;
+		for (int i=0; i<outputCurves.length; i++) if (outputCurves[i] == null) return;
 		
 		try {
 			FileWriter fout = new FileWriter(fileName);
@@ -0,0 +1,417 @@
+package fastsimjava;
+
+import fastsimjava.components.*;
+
+//Class for advancing several simulators (e.g. variants of a vehicle in a parameter sweep) through the same trip in lock-step
+// Conventional vehicles and BEVs are advanced together, one time step at a time over all lanes of the same type, with the
+// lane states held as struct-of-arrays and the step math taken from the shared functions in FSJVehKernel (same as FSJVehState).
+// Hybrids and plug-in hybrids (which depend on per-lane power manager logic) are not supported: runC() rejects any lane whose
+// vehicle is not a conventional vehicle or a BEV (use runC() of each such simulator instead).
+// Note #1: per-lane results (lastTripSummary() and final vehicle state of each simulator) are the same as from runC() of each simulator
+// Note #2: simulators should not be used by other threads while a lock-step run is in progress
+public class FASTSimJ3cLanes {
+	//Simulators, one per lane
+	private FASTSimJ3c[] lanes;
+	public int numLanes() {return lanes.length;}
+	public FASTSimJ3c lane(int laneID) {return lanes[laneID];}
+
+	//Lanes of conventional vehicles and BEVs
+	private LaneGroup cvLanes, bevLanes;
+
+
+	//Constructor (simulators should have their vehicle models set before running)
+	public FASTSimJ3cLanes(FASTSimJ3c[] simulators) {
+		lanes = new FASTSimJ3c[simulators.length];
+		for (int i=0; i<lanes.length; i++) lanes[i] = simulators[i];
+	}
+
+	//Function for compact run of all lanes (throws IllegalArgumentException, before running any lane, if a lane is a hybrid or plug-in hybrid)
+	public void runC(FSJTripInput trip) {
+		//Group lanes by vehicle type
+		int numCV = 0;
+		int numBEV = 0;
+		for (int i=0; i<lanes.length; i++) {
+			FSJVehState vehState = lanes[i].laneVehState();
+			if (vehState == null) continue;
+
+			switch (vehState.kernel().vehPtType) {
+			case cv:
+				numCV++;
+				break;
+			case bev:
+				numBEV++;
+				break;
+			default:
+				throw new IllegalArgumentException("Lane " + i + " is a " + vehState.kernel().vehPtType +
+						" vehicle, only conventional vehicles and BEVs can be run in lock-step");
+			}
+		}
+
+		int[] cvLaneIDs = new int[numCV];
+		int[] bevLaneIDs = new int[numBEV];
+		numCV = 0;
+		numBEV = 0;
+		for (int i=0; i<lanes.length; i++) {
+			FSJVehState vehState = lanes[i].laneVehState();
+			if (vehState == null) continue;
+
+			switch (vehState.kernel().vehPtType) {
+			case cv:
+				cvLaneIDs[numCV++] = i;
+				break;
+			case bev:
+				bevLaneIDs[numBEV++] = i;
+				break;
+			default:
+				break;
+			}
+		}
+
+		//Run each group in lock-step
+		if (numCV > 0) {
+			if ((cvLanes == null)||(cvLanes.numLanes < numCV)) cvLanes = new LaneGroup(numCV);
+			cvLanes.run(cvLaneIDs, trip, false);
+		}
+		if (numBEV > 0) {
+			if ((bevLanes == null)||(bevLanes.numLanes < numBEV)) bevLanes = new LaneGroup(numBEV);
+			bevLanes.run(bevLaneIDs, trip, true);
+		}
+	}
+
+
+	//Lanes of the same vehicle type, with state as struct-of-arrays
+	private class LaneGroup {
+		//Allocated number of lanes and number of lanes in current run
+		private int numLanes, n;
+
+		//Links to simulators, vehicle states, per-vehicle constants, component models and trip summaries
+		private FSJVehState[] vehStates;
+		private FSJVehKernel[] kernels;
+		private FSJMotor[] motors;
+		private FSJFuelConverter[] fuelConvs;
+		private FCFracLoadHistogram[] fcLoadHists;
+		private FASTSimJ3c.TripCSummary[] summaries;
+		
+		//Per-vehicle limits
+		private float[] maxAccelMS2, maxDecelMS2, achSpeedTolMS;
+
+		//Vehicle state
+		private float[] secFuelConvOn, secFuelConvOff;
+		private float[] prevSpeedMPH, prevSpeedMS, achCurSpeedMPH, achCurSpeedMS, curSpeedSlipMPH, metersFromLastState, milesSinceStart;
+		private float[] relSoC, absSoC;
+		private float[] batteryKWhSinceLastState, batteryKWhSinceTripStart, fuelUseSinceLastState, fuelUseSinceTripStart;
+		private float[] dragKW, ascentKW, rollResKW, accelKW, auxKW, fricBrakeKW, regenKW;
+		private float[] fcPowerOut, fcPowerIn, fcEffn, mtPowerOut, mtPowerIn, mtEffn;
+
+		//Per-step values: target speed and power limit
+		private float[] targetSpeedMS, maxKW;
+		
+		//Scratch holders for the step math
+		private FSJVehKernel.RoadLoad roadLoad;
+		private FSJVehKernel.DriveFlows flows;
+
+		private LaneGroup(int nLanes) {
+			numLanes = nLanes;
+
+			vehStates = new FSJVehState[numLanes];
+			kernels = new FSJVehKernel[numLanes];
+			motors = new FSJMotor[numLanes];
+			fuelConvs = new FSJFuelConverter[numLanes];
+			fcLoadHists = new FCFracLoadHistogram[numLanes];
+			summaries = new FASTSimJ3c.TripCSummary[numLanes];
+
+			maxAccelMS2 = new float[numLanes];
+			maxDecelMS2 = new float[numLanes];
+			achSpeedTolMS = new float[numLanes];
+
+			secFuelConvOn = new float[numLanes];
+			secFuelConvOff = new float[numLanes];
+			prevSpeedMPH = new float[numLanes];
+			prevSpeedMS = new float[numLanes];
+			achCurSpeedMPH = new float[numLanes];
+			achCurSpeedMS = new float[numLanes];
+			curSpeedSlipMPH = new float[numLanes];
+			metersFromLastState = new float[numLanes];
+			milesSinceStart = new float[numLanes];
+			relSoC = new float[numLanes];
+			absSoC = new float[numLanes];
+			batteryKWhSinceLastState = new float[numLanes];
+			batteryKWhSinceTripStart = new float[numLanes];
+			fuelUseSinceLastState = new float[numLanes];
+			fuelUseSinceTripStart = new float[numLanes];
+			dragKW = new float[numLanes];
+			ascentKW = new float[numLanes];
+			rollResKW = new float[numLanes];
+			accelKW = new float[numLanes];
+			auxKW = new float[numLanes];
+			fricBrakeKW = new float[numLanes];
+			regenKW = new float[numLanes];
+			fcPowerOut = new float[numLanes];
+			fcPowerIn = new float[numLanes];
+			fcEffn = new float[numLanes];
+			mtPowerOut = new float[numLanes];
+			mtPowerIn = new float[numLanes];
+			mtEffn = new float[numLanes];
+
+			targetSpeedMS = new float[numLanes];
+			maxKW = new float[numLanes];
+			
+			roadLoad = new FSJVehKernel.RoadLoad();
+			flows = new FSJVehKernel.DriveFlows();
+		}
+
+		//Function to run the trip for the given lanes
+		private void run(int[] laneIDs, FSJTripInput trip, boolean isBEV) {
+			load(laneIDs);
+
+			float zSpeedTolMZ = 0.001f;
+
+			for (int i=1; i<trip.numSteps; i++) {
+				float deltaTime = trip.deltaSec[i];
+				float deltaSec = trip.secSinceStart[i] - trip.secSinceStart[i-1];
+				float desiredMPH = trip.speedMPH[i];
+
+				if (isBEV) stepBEV(deltaSec, desiredMPH, trip.speedMS[i], trip.gradeSin[i], trip.auxKW[i], trip.payloadKg[i]);
+				else stepCV(deltaSec, desiredMPH, trip.speedMS[i], trip.gradeSin[i], trip.auxKW[i], trip.payloadKg[i]);
+
+				for (int l=0; l<n; l++) {
+					FASTSimJ3c.TripCSummary summary = summaries[l];
+					if (summary.maxSpeedSlipMPH < curSpeedSlipMPH[l]) summary.maxSpeedSlipMPH = curSpeedSlipMPH[l];
+					if (!isBEV) {
+						//Fuel converter is always on after the first time step of a conventional vehicle
+						summary.secondsFuelConvOn += deltaTime;
+						if (i == 1) summary.nFuelConvStarts += 1;
+					}
+					if (desiredMPH < zSpeedTolMZ) summary.secondsIdling += deltaTime;
+				}
+			}
+
+			store(trip);
+		}
+
+		//Function to reset the simulators and load limits & state into the arrays
+		private void load(int[] laneIDs) {
+			n = laneIDs.length;
+
+			for (int l=0; l<n; l++) {
+				FASTSimJ3c sim = lanes[laneIDs[l]];
+				summaries[l] = sim.beginLaneRun();
+
+				FSJVehState vehState = sim.laneVehState();
+				vehStates[l] = vehState;
+				motors[l] = vehState.motor();
+				fuelConvs[l] = vehState.fuelConv();
+				fcLoadHists[l] = vehState.energyUse.fcLoadHist;
+
+				kernels[l] = vehState.kernel();
+				maxAccelMS2[l] = vehState.motion.maxAccelMS2;
+				maxDecelMS2[l] = vehState.motion.maxDecelMS2;
+				achSpeedTolMS[l] = FSJVehKernel.achSpeedTolMS(vehState.simConsts());
+
+				secFuelConvOn[l] = vehState.time.secFuelConvOn;
+				secFuelConvOff[l] = vehState.time.secFuelConvOff;
+
+				prevSpeedMPH[l] = vehState.motion.prevSpeedMPH;
+				prevSpeedMS[l] = vehState.motion.prevSpeedMS;
+				achCurSpeedMPH[l] = vehState.motion.achCurSpeedMPH;
+				achCurSpeedMS[l] = vehState.motion.achCurSpeedMS;
+				curSpeedSlipMPH[l] = vehState.motion.curSpeedSlipMPH;
+				metersFromLastState[l] = vehState.motion.metersFromLastState;
+				milesSinceStart[l] = vehState.motion.milesSinceStart;
+
+				relSoC[l] = vehState.soc.relSoC;
+				absSoC[l] = vehState.soc.absSoC;
+
+				batteryKWhSinceLastState[l] = vehState.energyUse.batteryKWhSinceLastState;
+				batteryKWhSinceTripStart[l] = vehState.energyUse.batteryKWhSinceTripStart;
+				fuelUseSinceLastState[l] = vehState.energyUse.fuelUseSinceLastState;
+				fuelUseSinceTripStart[l] = vehState.energyUse.fuelUseSinceTripStart;
+
+				dragKW[l] = vehState.instPower.dragKW;
+				ascentKW[l] = vehState.instPower.ascentKW;
+				rollResKW[l] = vehState.instPower.rollResKW;
+				accelKW[l] = vehState.instPower.accelKW;
+				auxKW[l] = vehState.instPower.auxKW;
+				fricBrakeKW[l] = vehState.instPower.fricBrakeKW;
+				regenKW[l] = vehState.instPower.regenKW;
+				fcPowerOut[l] = vehState.instPower.fcPowerOut;
+				fcPowerIn[l] = vehState.instPower.fcPowerIn;
+				fcEffn[l] = vehState.instPower.fcEffn;
+				mtPowerOut[l] = vehState.instPower.mtPowerOut;
+				mtPowerIn[l] = vehState.instPower.mtPowerIn;
+				mtEffn[l] = vehState.instPower.mtEffn;
+			}
+		}
+
+		//Function to copy the arrays back into the vehicle states of the simulators and complete the trip summaries
+		private void store(FSJTripInput trip) {
+			int lastID = trip.numSteps-1;
+
+			for (int l=0; l<n; l++) {
+				FSJVehState vehState = vehStates[l];
+
+				if (lastID > 0) {
+					vehState.time.secSinceTripStart = trip.secSinceStart[lastID];
+					vehState.time.deltaSecFromLastState = trip.secSinceStart[lastID] - trip.secSinceStart[lastID-1];
+					vehState.motion.curDesiredSpeedMPH = trip.speedMPH[lastID];
+					vehState.motion.curRoadGrade = trip.grade[lastID];
+				}
+				vehState.time.secFuelConvOn = secFuelConvOn[l];
+				vehState.time.secFuelConvOff = secFuelConvOff[l];
+
+				vehState.motion.prevSpeedMPH = prevSpeedMPH[l];
+				vehState.motion.prevSpeedMS = prevSpeedMS[l];
+				vehState.motion.achCurSpeedMPH = achCurSpeedMPH[l];
+				vehState.motion.achCurSpeedMS = achCurSpeedMS[l];
+				vehState.motion.curSpeedSlipMPH = curSpeedSlipMPH[l];
+				vehState.motion.metersFromLastState = metersFromLastState[l];
+				vehState.motion.milesSinceStart = milesSinceStart[l];
+
+				vehState.soc.relSoC = relSoC[l];
+				vehState.soc.absSoC = absSoC[l];
+
+				vehState.energyUse.batteryKWhSinceLastState = batteryKWhSinceLastState[l];
+				vehState.energyUse.batteryKWhSinceTripStart = batteryKWhSinceTripStart[l];
+				vehState.energyUse.fuelUseSinceLastState = fuelUseSinceLastState[l];
+				vehState.energyUse.fuelUseSinceTripStart = fuelUseSinceTripStart[l];
+
+				vehState.instPower.dragKW = dragKW[l];
+				vehState.instPower.ascentKW = ascentKW[l];
+				vehState.instPower.rollResKW = rollResKW[l];
+				vehState.instPower.accelKW = accelKW[l];
+				vehState.instPower.auxKW = auxKW[l];
+				vehState.instPower.fricBrakeKW = fricBrakeKW[l];
+				vehState.instPower.regenKW = regenKW[l];
+				vehState.instPower.fcPowerOut = fcPowerOut[l];
+				vehState.instPower.fcPowerIn = fcPowerIn[l];
+				vehState.instPower.fcEffn = fcEffn[l];
+				vehState.instPower.mtPowerOut = mtPowerOut[l];
+				vehState.instPower.mtPowerIn = mtPowerIn[l];
+				vehState.instPower.mtEffn = mtEffn[l];
+
+				FASTSimJ3c.TripCSummary summary = summaries[l];
+				summary.miles = milesSinceStart[l];
+				summary.fuelUse = fuelUseSinceTripStart[l];
+				summary.fcLoadHistogram = fcLoadHists[l];
+				summary.batteryUse = batteryKWhSinceTripStart[l];
+				summary.finalRelSoC = relSoC[l];
+				summary.seconds = vehState.time.secSinceTripStart;
+
+				//Release links
+				vehStates[l] = null;
+				kernels[l] = null;
+				motors[l] = null;
+				fuelConvs[l] = null;
+				fcLoadHists[l] = null;
+				summaries[l] = null;
+			}
+		}
+
+		//Function to advance all lanes of conventional vehicles by one time step
+		private void stepCV(float deltaSec, float desiredMPH, float desiredMS, float roadGradeSin, float oAux, float addPayloadKg) {
+			float headWindMPH = 0f;
+			float headWindMS = headWindMPH/FSJSimConstants.mphPerMps;
+
+			//Turn fuel converter on (if first time step), update time and motion, apply tire slip limits to target speed
+			// and find maximum fuel converter power
+			for (int l=0; l<n; l++) {
+				if (secFuelConvOn[l] <= 0) {
+					secFuelConvOn[l] = 0f;
+					secFuelConvOff[l] = -1;
+					fcPowerOut[l] = 0f;
+				}
+				secFuelConvOn[l] += deltaSec;
+
+				prevSpeedMPH[l] = achCurSpeedMPH[l];
+				prevSpeedMS[l] = achCurSpeedMS[l];
+
+				targetSpeedMS[l] = FSJVehKernel.targetSpeedMS(prevSpeedMS[l], desiredMS, deltaSec, maxAccelMS2[l], maxDecelMS2[l]);
+				maxKW[l] = FSJVehKernel.maxFuelConvKWOut(kernels[l], fcPowerOut[l], deltaSec);
+			}
+
+			//Remaining calculations for each lane
+			for (int l=0; l<n; l++) {
+				FSJVehKernel kernel = kernels[l];
+				float totalAuxKW = kernel.fixedAuxKW + oAux;
+				
+				float achSpeedMS = FSJVehKernel.achievedSpeedMS(kernel, achSpeedTolMS[l], prevSpeedMS[l], targetSpeedMS[l], 
+						maxKW[l], totalAuxKW, kernel.driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg, roadLoad);
+				FSJVehKernel.cvDriveFlows(kernel, fuelConvs[l], roadLoad.sumKW(kernel.driveEnergyMod), totalAuxKW, 1.0f, deltaSec, flows);
+
+				//Update state
+				updateMotion(l, achSpeedMS, desiredMPH, deltaSec);
+
+				fuelUseSinceLastState[l] = flows.fuelUse;
+				fuelUseSinceTripStart[l] += fuelUseSinceLastState[l];
+
+				auxKW[l] = totalAuxKW;
+				fricBrakeKW[l] = flows.fricBrakeKW;
+				fcPowerOut[l] = flows.fcPowerOut;
+				fcPowerIn[l] = flows.fcPowerIn;
+				fcEffn[l] = flows.fcEffn;
+
+				fcLoadHists[l].addTimeOperating(deltaSec, flows.fcPowerOut);
+			}
+		}
+
+		//Function to advance all lanes of BEVs by one time step
+		private void stepBEV(float deltaSec, float desiredMPH, float desiredMS, float roadGradeSin, float oAux, float addPayloadKg) {
+			float headWindMPH = 0f;
+			float headWindMS = headWindMPH/FSJSimConstants.mphPerMps;
+
+			//Update time and motion, apply tire slip limits to target speed and find limits on motor power
+			for (int l=0; l<n; l++) {
+				secFuelConvOff[l] += deltaSec;
+
+				prevSpeedMPH[l] = achCurSpeedMPH[l];
+				prevSpeedMS[l] = achCurSpeedMS[l];
+
+				targetSpeedMS[l] = FSJVehKernel.targetSpeedMS(prevSpeedMS[l], desiredMS, deltaSec, maxAccelMS2[l], maxDecelMS2[l]);
+				maxKW[l] = FSJVehKernel.bevMaxMotorKWOut(kernels[l], motors[l], mtPowerOut[l], kernels[l].fixedAuxKW + oAux, deltaSec);
+			}
+
+			//Remaining calculations for each lane
+			for (int l=0; l<n; l++) {
+				FSJVehKernel kernel = kernels[l];
+				float totalAuxKW = kernel.fixedAuxKW + oAux;
+				
+				float achSpeedMS = FSJVehKernel.achievedSpeedMS(kernel, achSpeedTolMS[l], prevSpeedMS[l], targetSpeedMS[l], 
+						maxKW[l], 0f, kernel.driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg, roadLoad);
+				FSJVehKernel.bevDriveFlows(kernel, motors[l], roadLoad.sumKW(kernel.driveEnergyMod), totalAuxKW, absSoC[l], 
+						prevSpeedMPH[l], achSpeedMS, deltaSec, flows);
+
+				//Update energy use and state of charge
+				batteryKWhSinceLastState[l] = flows.batteryKWh;
+				batteryKWhSinceTripStart[l] += batteryKWhSinceLastState[l];
+				absSoC[l] += -batteryKWhSinceLastState[l]/kernel.maxEssKwh;
+				relSoC[l] += -batteryKWhSinceLastState[l]/kernel.batterySwingKWh;
+
+				//Update state
+				updateMotion(l, achSpeedMS, desiredMPH, deltaSec);
+
+				regenKW[l] = flows.regenKW;
+				auxKW[l] = totalAuxKW;
+				fricBrakeKW[l] = flows.fricBrakeKW;
+				mtPowerIn[l] = flows.mtPowerIn;
+				mtPowerOut[l] = flows.mtPowerOut;
+				mtEffn[l] = flows.mtEffn;
+
+				fcLoadHists[l].addTimeNotOperating(deltaSec);
+			}
+		}
+
+		//Function to update the motion and road load arrays after solving for achieved speed
+		private void updateMotion(int l, float achSpeedMS, float desiredMPH, float deltaSec) {
+			achCurSpeedMS[l] = achSpeedMS;
+			achCurSpeedMPH[l] = achCurSpeedMS[l]*FSJSimConstants.mphPerMps;
+			curSpeedSlipMPH[l] = desiredMPH - achCurSpeedMPH[l];
+			metersFromLastState[l] = FSJVehKernel.metersTravelled(prevSpeedMS[l], achCurSpeedMS[l], deltaSec);
+			milesSinceStart[l] += metersFromLastState[l]/FSJSimConstants.metersPerMile;
+
+			dragKW[l] = roadLoad.dragKW;
+			accelKW[l] = roadLoad.accelKW;
+			ascentKW[l] = roadLoad.ascentKW;
+			rollResKW[l] = roadLoad.rollResKW;
+		}
+	}
+}
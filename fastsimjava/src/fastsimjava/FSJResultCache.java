@@ -0,0 +1,240 @@
+package fastsimjava;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fastsimjava.components.*;
+
+//Two-tier cache of compact run results (FASTSimJ3c.runC), keyed on a SHA-256 fingerprint of everything that affects the results:
+// vehicle model, efficiency curves, three-parameter tuning, simulation constants, HEV balancing settings, trip contents,
+// power manager settings & decision state and initial state of charge
+// -- Recently used results are kept in memory (LRU), and optionally all results are also saved to files in a folder,
+//    so that later jobs (or several jobs at the same time) can re-use them
+// Note #1: to use, set the resultCache field of the simulator (one cache may be shared by any number of simulators and threads)
+// Note #2: results are only cached for power managers that support cacheDescription()
+public class FSJResultCache {
+	//Default number of results kept in memory
+	public static final int Default_MaxMemoryEntries = 10000;
+	//File extension of results saved in the folder
+	public static final String FileExtension = ".csv";
+
+	//In-memory results, in order of last use
+	private LinkedHashMap<String, CachedResult> memEntries;
+	private int maxMemoryEntries;
+	//Folder for the on-disk results (null if memory only)
+	private File folder;
+	public File folder() {return folder;}
+
+	//Statistics
+	private AtomicLong numMemoryHits, numDiskHits, numMisses, numNotCacheable;
+	public long numMemoryHits() {return numMemoryHits.get();}
+	public long numDiskHits() {return numDiskHits.get();}
+	public long numMisses() {return numMisses.get();}
+	public long numNotCacheable() {return numNotCacheable.get();}
+	public long numHits() {return numMemoryHits.get() + numDiskHits.get();}
+	public float hitRate() {
+		long total = numHits() + numMisses.get();
+		if (total < 1) return 0f;
+		return numHits()/(float)total;
+	}
+
+
+	//Constructor for memory only cache
+	public FSJResultCache() {
+		this(Default_MaxMemoryEntries, null);
+	}
+	// ...with optional folder for saving results to disk (folder is created if it does not exist)
+	public FSJResultCache(int maxMemoryEntries, String folderPath) {
+		this.maxMemoryEntries = Math.max(1, maxMemoryEntries);
+		memEntries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+				return size() > FSJResultCache.this.maxMemoryEntries;
+			}
+		};
+
+		if (folderPath != null) {
+			folder = new File(folderPath);
+			if (!folder.exists()) folder.mkdirs();
+		}
+
+		numMemoryHits = new AtomicLong();
+		numDiskHits = new AtomicLong();
+		numMisses = new AtomicLong();
+		numNotCacheable = new AtomicLong();
+	}
+
+	//Number of results in memory
+	public synchronized int numMemoryEntries() {return memEntries.size();}
+	//Function to clear results in memory (results on disk are kept)
+	public synchronized void clearMemory() {memEntries.clear();}
+	//Function to reset statistics
+	public void resetStats() {
+		numMemoryHits.set(0);
+		numDiskHits.set(0);
+		numMisses.set(0);
+		numNotCacheable.set(0);
+	}
+	@Override public String toString() {
+		return "memoryHits,"+numMemoryHits()+",diskHits,"+numDiskHits()+",misses,"+numMisses()+",notCacheable,"+numNotCacheable();
+	}
+
+
+	//Function to return the key for a run given the description of the simulation setup and the trip (null if not cacheable)
+	String key(String runDescription, FSJTripInput trip) {
+		if (runDescription == null) {
+			numNotCacheable.incrementAndGet();
+			return null;
+		}
+		byte[] tripDigest = trip.digest();
+		if (tripDigest == null) {
+			numNotCacheable.incrementAndGet();
+			return null;
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(runDescription.getBytes("UTF-8"));
+			md.update(tripDigest);
+			byte[] digest = md.digest();
+
+			StringBuilder sb = new StringBuilder(2*digest.length);
+			for (int i=0; i<digest.length; i++) sb.append(String.format("%02x", digest[i]));
+			return sb.toString();
+		} catch (Exception e) {
+			numNotCacheable.incrementAndGet();
+			return null;
+		}
+	}
+
+	//Function to look-up a result (in memory first, then on disk), returns null if not found
+	CachedResult get(String key) {
+		synchronized (this) {
+			CachedResult result = memEntries.get(key);
+			if (result != null) {
+				numMemoryHits.incrementAndGet();
+				return result;
+			}
+		}
+
+		CachedResult result = readFromFile(key);
+		if (result != null) {
+			numDiskHits.incrementAndGet();
+			synchronized (this) {
+				memEntries.put(key, result);
+			}
+			return result;
+		}
+
+		numMisses.incrementAndGet();
+		return null;
+	}
+	//Function to add a result
+	void put(String key, CachedResult result) {
+		synchronized (this) {
+			memEntries.put(key, result);
+		}
+		writeToFile(key, result);
+	}
+
+
+	//File for a result
+	private File file(String key) {
+		return new File(folder, key + FileExtension);
+	}
+	//Function to read a result from file (null if no folder, not found or could not be read)
+	private CachedResult readFromFile(String key) {
+		if (folder == null) return null;
+		File f = file(key);
+		if (!f.exists()) return null;
+
+		try {
+			BufferedReader fin = new BufferedReader(new FileReader(f));
+			String[] lines = new String[4];
+			for (int i=0; i<lines.length; i++) lines[i] = fin.readLine();
+			fin.close();
+
+			return new CachedResult(lines);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	//Function to write a result to file (written to a temporary file first, so that other readers never see a partial result)
+	private void writeToFile(String key, CachedResult result) {
+		if (folder == null) return;
+		File f = file(key);
+		if (f.exists()) return;
+
+		try {
+			String lsep = System.getProperty("line.separator");
+			File tmpFile = File.createTempFile(key, ".tmp", folder);
+			FileWriter fout = new FileWriter(tmpFile);
+			String[] lines = result.toLines();
+			for (int i=0; i<lines.length; i++) fout.append(lines[i] + lsep);
+			fout.flush();
+			fout.close();
+
+			if (!tmpFile.renameTo(f)) tmpFile.delete();
+		} catch (Exception e) {}
+	}
+
+
+	//Class for the results of one compact run -- compact summary, state of charge after the trip,
+	// number of trip simulations (for HEV balancing) and decision state of the power manager after the trip
+	static class CachedResult {
+		float[] summaryValues;
+		int nFuelConvStarts, numRuns;
+		float relSoC, absSoC;
+		float[] fcLoadHistogram;
+		float[] pwrMgrState;
+
+		CachedResult() {}
+		//Constructor from the lines of a saved file
+		private CachedResult(String[] lines) {
+			String[] sp = lines[0].split(",");
+			summaryValues = new float[sp.length-2];
+			for (int i=0; i<summaryValues.length; i++) summaryValues[i] = Float.parseFloat(sp[i]);
+			nFuelConvStarts = Integer.parseInt(sp[sp.length-2]);
+			numRuns = Integer.parseInt(sp[sp.length-1]);
+
+			sp = lines[1].split(",");
+			relSoC = Float.parseFloat(sp[0]);
+			absSoC = Float.parseFloat(sp[1]);
+
+			fcLoadHistogram = parseValues(lines[2]);
+			pwrMgrState = parseValues(lines[3]);
+		}
+		//Function to form the lines for saving to file
+		private String[] toLines() {
+			String[] lines = new String[4];
+			lines[0] = valuesString(summaryValues) + "," + nFuelConvStarts + "," + numRuns;
+			lines[1] = "" + relSoC + "," + absSoC;
+			lines[2] = valuesString(fcLoadHistogram);
+			lines[3] = valuesString(pwrMgrState);
+			return lines;
+		}
+
+		private static String valuesString(float[] values) {
+			if (values == null) return "";
+			StringBuilder sb = new StringBuilder();
+			for (int i=0; i<values.length; i++) {
+				if (i > 0) sb.append(',');
+				sb.append(values[i]);
+			}
+			return sb.toString();
+		}
+		private static float[] parseValues(String readLine) {
+			if ((readLine == null)||(readLine.length() < 1)) return null;
+			String[] sp = readLine.split(",");
+			float[] values = new float[sp.length];
+			for (int i=0; i<values.length; i++) values[i] = Float.parseFloat(sp[i]);
+			return values;
+		}
+	}
+}
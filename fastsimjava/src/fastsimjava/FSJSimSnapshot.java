@@ -0,0 +1,37 @@
+package fastsimjava;
+
+import fastsimjava.abs.*;
+import fastsimjava.components.*;
+
+//Captured state of a partial compact run (see FASTSimJ3c.snapshot()), from which any number of runs can be resumed via FASTSimJ3c.restore()
+// Note: all contents are private copies, so the snapshot is not affected by the simulator continuing (and is safe to share across threads)
+public class FSJSimSnapshot {
+	//Vehicle state, compact summary of the trip so far and power manager (null if the run had none)
+	FSJVehState vehState;
+	FASTSimJ3c.TripCSummary summary;
+	FSJHybridPowerManagerBase pwrMgr;
+	//Description of the vehicle model as it was set in the simulator (for result cache keys after restoring)
+	String vehDescription;
+	
+	//Trip being simulated and last simulated time step
+	FSJTripInput trip;
+	int stepID;
+	
+	//Constructor
+	FSJSimSnapshot(FSJVehState vehState, FASTSimJ3c.TripCSummary summary, FSJHybridPowerManagerBase pwrMgr, String vehDescription, FSJTripInput trip, int stepID) {
+		this.vehState = vehState;
+		this.summary = summary;
+		this.pwrMgr = pwrMgr;
+		this.vehDescription = vehDescription;
+		this.trip = trip;
+		this.stepID = stepID;
+	}
+	
+	//Accessors (the returned objects should be treated as read-only)
+	public FSJTripInput trip() {return trip;}
+	public int stepID() {return stepID;}
+	public float relSoC() {return vehState.soc.relSoC;}
+	public float miles() {return summary.miles;}
+	public float seconds() {return summary.seconds;}
+	public boolean hasPwrMgr() {return pwrMgr != null;}
+}
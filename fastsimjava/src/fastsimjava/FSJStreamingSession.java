@@ -0,0 +1,112 @@
+package fastsimjava;
+
+import fastsimjava.abs.*;
+import fastsimjava.components.*;
+
+//Class for simulating a trip one sample at a time, as samples arrive (e.g. from a live telematics feed)
+// Memory use is constant regardless of trip length: only the current vehicle state and the compact trip summary are kept.
+// Note #1: results after the last sample are the same as from runTR() of the simulator on the whole trip
+//          (for HEVs, this is the run from the current SoC, no balancing for zero battery use is possible while streaming)
+// Note #2: a session uses its simulator exclusively, create one simulator (and session) per vehicle
+public class FSJStreamingSession {
+	//Simulator, vehicle state and power manager
+	private FASTSimJ3c sim;
+	private FSJVehState vehState;
+	private FSJHybridPowerManagerBase hybPwrMgr;
+	public FASTSimJ3c simulator() {return sim;}
+
+	//Compact summary of the trip so far (updated after every sample)
+	private FASTSimJ3c.TripCSummary summary;
+	public FASTSimJ3c.TripCSummary summary() {return summary;}
+
+	//Number of samples received in current trip, time stamp of last sample and time since start of trip
+	private long numSamples;
+	private float lastTimeSec, curSec;
+	public long numSamples() {return numSamples;}
+
+	//Function to return the current vehicle state (should be treated as read-only)
+	public FSJVehState curState() {return vehState;}
+
+
+	//Constructor with default power manager (simulator should have its vehicle model set)
+	public FSJStreamingSession(FASTSimJ3c simulator) {
+		this(simulator, new FSJHybridPowerManagerDefault());
+	}
+	// ...with given power manager (CANNOT be null)
+	public FSJStreamingSession(FASTSimJ3c simulator, FSJHybridPowerManagerBase pwrMgr) {
+		sim = simulator;
+		hybPwrMgr = pwrMgr;
+		startTrip();
+	}
+
+	//Function to start a new trip (state of charge carries over from the previous trip, use simulator().setRelSoC() to change it)
+	public void startTrip() {
+		numSamples = 0;
+		lastTimeSec = 0f;
+		curSec = 0f;
+
+		//Nothing to simulate if no vehicle model exists
+		vehState = sim.laneVehState();
+		if (vehState == null) {
+			summary = null;
+			return;
+		}
+
+		summary = sim.beginLaneRun();
+		summary.fcLoadHistogram = vehState.energyUse.fcLoadHist;
+		summary.finalRelSoC = vehState.soc.relSoC;
+	}
+
+	//Function to add the next sample of the trip (the first sample of a trip is the initial condition and only sets the time reference)
+	// returns false if the sample was ignored because its time stamp is not after the previous sample
+	public boolean addSample(float timeSec, float speedDesiredMPH, float roadGrade, float otherAuxKW, float payloadKg) {
+		if (vehState == null) return false;
+		if (numSamples == 0) {
+			lastTimeSec = timeSec;
+			numSamples++;
+			return true;
+		}
+		if (timeSec <= lastTimeSec) return false;
+
+		float deltaTime = timeSec - lastTimeSec;
+		lastTimeSec = timeSec;
+		update(deltaTime, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg);
+		return true;
+	}
+	// ...version for samples at 1sec intervals
+	public void addSample1Hz(float speedDesiredMPH, float roadGrade, float otherAuxKW, float payloadKg) {
+		if (vehState == null) return;
+		if (numSamples == 0) {
+			numSamples++;
+			return;
+		}
+
+		lastTimeSec += 1f;
+		update(1f, speedDesiredMPH, roadGrade, otherAuxKW, payloadKg);
+	}
+
+	//Function to advance the vehicle state by one time step and update the summary (same sequence as in the compact run)
+	private void update(float deltaTime, float desiredMPH, float roadGrade, float otherAuxKW, float payloadKg) {
+		float zSpeedTolMZ = 0.001f;
+		curSec += deltaTime;
+		numSamples++;
+
+		boolean fuelConvWasOn = vehState.isFuelConvOn();
+		vehState.updateState(curSec, desiredMPH, desiredMPH/FSJSimConstants.mphPerMps, roadGrade, FSJTripInput.gradeSin(roadGrade),
+				otherAuxKW, hybPwrMgr, payloadKg);
+
+		if (summary.maxSpeedSlipMPH < vehState.motion.curSpeedSlipMPH) summary.maxSpeedSlipMPH = vehState.motion.curSpeedSlipMPH;
+		if (vehState.isFuelConvOn()) {
+			summary.secondsFuelConvOn += deltaTime;
+			if (!fuelConvWasOn) summary.nFuelConvStarts += 1;
+		}
+		if (desiredMPH < zSpeedTolMZ) summary.secondsIdling += deltaTime;
+
+		summary.miles = vehState.motion.milesSinceStart;
+		summary.fuelUse = vehState.energyUse.fuelUseSinceTripStart;
+		summary.fcLoadHistogram = vehState.energyUse.fcLoadHist;
+		summary.batteryUse = vehState.energyUse.batteryKWhSinceTripStart;
+		summary.finalRelSoC = vehState.soc.relSoC;
+		summary.seconds = vehState.time.secSinceTripStart;
+	}
+}
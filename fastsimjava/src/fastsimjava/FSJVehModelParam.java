@@ -386,7 +386,10 @@ public class FSJVehModelParam {
 		
 		private BatteryParam(BatteryParam other) {
 			maxEssKw = other.maxEssKw;
+			specialFlag = other.specialFlag;
 			overrideMaxEsskw = other.overrideMaxEsskw;
+			fcCCurveID = other.fcCCurveID;
+			mtCCurveID = other.mtCCurveID;
 			maxEssKwh = other.maxEssKwh;
 			essKgPerKwh = other.essKgPerKwh;
 			essBaseKg = other.essBaseKg;
@@ -612,6 +615,10 @@ public class FSJVehModelParam {
 		}
 	}
 	
+	//Function to re-calculate mass properties (after changing any of the parameters that affect component masses)
+	public void recalcMassProp() {
+		massProp = new MassProp();
+	}
 	//Function to re-adjust the component mass multiplier while maintaining total mass via re-adjusting the glider mass
 	public void reAdjustCompMass(float newCompMassMultiplier) {
 		float oldTotalKg = massProp.totalKg;
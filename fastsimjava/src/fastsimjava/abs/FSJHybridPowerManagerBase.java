@@ -13,4 +13,15 @@ public abstract class FSJHybridPowerManagerBase {
 	
 	//Function for PHEVs to inform the vehicle state whether they are operating in "charge-sustain" -like conditions
 	public abstract boolean isInChargeSustain(FSJVehState vehCurState);
+	
+	//Function to create an independent copy (including tuning constants and current decision state), for simulating on another thread
+	// Note: returns null if the implementation does not support copying
+	public FSJHybridPowerManagerBase createCopy() {return null;}
+	
+	//Function to describe the tuning constants and current decision state (everything that affects the results of the next trip),
+	// used for caching simulation results -- Note: returns null if not supported, in which case results are not cached
+	public String cacheDescription() {return null;}
+	//Functions to save and set the decision state (for restoring the state after a trip whose results were taken from a cache)
+	public float[] decisionState() {return null;}
+	public void setDecisionState(float[] state) {}
 }
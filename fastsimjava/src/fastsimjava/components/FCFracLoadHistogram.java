@@ -23,6 +23,26 @@ public class FCFracLoadHistogram {
 		timeOperatedAtFracMaxLoad = new float[other.timeOperatedAtFracMaxLoad.length];
 		for (int i=0; i<timeOperatedAtFracMaxLoad.length; i++) timeOperatedAtFracMaxLoad[i] = other.timeOperatedAtFracMaxLoad[i];
 	}
+	//Constructor from packed values (as returned by packedValues())
+	public FCFracLoadHistogram(float[] packedValues) {
+		maxKW = packedValues[0];
+		totalAnalyzedTime = packedValues[1];
+		operatingTime = packedValues[2];
+		deltaKW = packedValues[3];
+		
+		timeOperatedAtFracMaxLoad = new float[packedValues.length-4];
+		for (int i=0; i<timeOperatedAtFracMaxLoad.length; i++) timeOperatedAtFracMaxLoad[i] = packedValues[i+4];
+	}
+	//Function to return all values packed in one array (e.g. for saving to file)
+	public float[] packedValues() {
+		float[] packedValues = new float[timeOperatedAtFracMaxLoad.length+4];
+		packedValues[0] = maxKW;
+		packedValues[1] = totalAnalyzedTime;
+		packedValues[2] = operatingTime;
+		packedValues[3] = deltaKW;
+		for (int i=0; i<timeOperatedAtFracMaxLoad.length; i++) packedValues[i+4] = timeOperatedAtFracMaxLoad[i];
+		return packedValues;
+	}
 	
 	//Reset record function
 	public void reset() {
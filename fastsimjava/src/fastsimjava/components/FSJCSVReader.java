@@ -0,0 +1,315 @@
+package fastsimjava.components;
+
+import java.io.EOFException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+//Reader of comma-separated files, one line at a time, with values parsed directly from a re-used character buffer
+// (no String or String[] per line or per value, as with readLine().split(",") and Float.parseFloat)
+// -- Line endings are as in BufferedReader.readLine() (\n, \r or \r\n)
+// -- Values are taken in order from the current line, missing trailing values read as empty (as with String.split)
+// -- Floats with mantissa of up to 2^24 (i.e. 7-8 significant digits) and decimal exponent of up to 10 are parsed via exact float
+//    arithmetic, all other values are passed to Float.parseFloat, so results are always identical to Float.parseFloat
+public class FSJCSVReader {
+	//Default initial buffer size (grows for longer lines)
+	private static final int Default_BufferSize = 1 << 16;
+	//Largest mantissa that is exactly represented as float, and exactly represented powers of ten
+	private static final long MaxExactMantissa = 1L << 24;
+	private static final float[] ExactPowersOfTen = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	//Source (null if reading a single line)
+	private Reader in;
+	//Buffer, with unread characters in [pos, lim)
+	private char[] buf;
+	private int pos, lim;
+	//Whether a \n should be skipped (if the last line ended with \r)
+	private boolean skipLF;
+	//Current line in [lineStart, lineEnd), start of the next value in line (> lineEnd if no more values)
+	private int lineStart, lineEnd, fieldPos;
+	//Number of lines read so far, and whether the current line is to be returned again by nextLine()
+	private int lineNumber;
+	private boolean pushedBack;
+	public int lineNumber() {return lineNumber;}
+
+
+	//Constructor via file name
+	public FSJCSVReader(String fileName) throws IOException {
+		this(new FileReader(fileName));
+	}
+	// ...via any reader (no need for it to be buffered)
+	public FSJCSVReader(Reader in) {
+		this(in, 0);
+	}
+	// ...via a reader that starts after a number of lines of the file (so that line numbers are counted in the whole file)
+	public FSJCSVReader(Reader in, int linesBefore) {
+		this.in = in;
+		buf = new char[Default_BufferSize];
+		fieldPos = 1;
+		lineNumber = linesBefore;
+	}
+	//Private constructor for parsing values of a single line
+	private FSJCSVReader(char[] line) {
+		buf = line;
+		lineEnd = buf.length;
+		lim = buf.length;
+		pos = lim;
+		lineNumber = 1;
+	}
+
+	//Function to close the source
+	public void close() throws IOException {
+		if (in != null) in.close();
+	}
+
+
+	//Function to advance to the next line, returns false at end of file
+	public boolean nextLine() throws IOException {
+		if (pushedBack) {
+			pushedBack = false;
+			lineNumber++;
+			fieldPos = lineStart;
+			return true;
+		}
+
+		if (skipLF) {
+			if ((pos < lim)||fill()) {
+				if (buf[pos] == '\n') pos++;
+			}
+			skipLF = false;
+		}
+
+		int scanned = 0;
+		while (true) {
+			while (pos + scanned < lim) {
+				char c = buf[pos + scanned];
+				if ((c == '\n')||(c == '\r')) {
+					setLine(pos, pos + scanned);
+					pos = lineEnd + 1;
+					skipLF = (c == '\r');
+					return true;
+				}
+				scanned++;
+			}
+
+			if (!fill()) {
+				if (scanned > 0) {
+					setLine(pos, pos + scanned);
+					pos = lineEnd;
+					return true;
+				}
+				lineStart = pos;
+				lineEnd = pos;
+				fieldPos = pos + 1;
+				return false;
+			}
+		}
+	}
+	//Function to advance to the next line, throwing EOFException at end of file
+	public void requireNextLine() throws IOException {
+		if (!nextLine()) throw new EOFException("Unexpected end of file after line " + lineNumber);
+	}
+	//Function to read the next line as a String (null at end of file), as BufferedReader.readLine()
+	public String readLine() throws IOException {
+		if (!nextLine()) return null;
+		return new String(buf, lineStart, lineEnd - lineStart);
+	}
+	//Function to have the current line returned again by the next call of nextLine()
+	public void pushBack() {
+		pushedBack = true;
+		lineNumber--;
+	}
+
+	private void setLine(int start, int end) {
+		lineStart = start;
+		lineEnd = end;
+		fieldPos = start;
+		lineNumber++;
+	}
+	//Function to read more characters into the buffer (unread characters are moved to the start, buffer grows if full),
+	// returns false at end of file
+	private boolean fill() throws IOException {
+		if (in == null) return false;
+
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, lim - pos);
+			lim -= pos;
+			pos = 0;
+		} else if (lim == buf.length) {
+			buf = Arrays.copyOf(buf, 2*buf.length);
+		}
+
+		int n = in.read(buf, lim, buf.length - lim);
+		if (n <= 0) return false;
+		lim += n;
+		return true;
+	}
+
+
+	//Whether the current line is empty or white space only
+	public boolean isBlankLine() {
+		for (int i=lineStart; i<lineEnd; i++) {
+			if (!Character.isWhitespace(buf[i])) return false;
+		}
+		return true;
+	}
+	//Whether there are more values in the current line (trailing empty values do not count, as with String.split)
+	public boolean hasNextField() {
+		for (int i=fieldPos; i<lineEnd; i++) {
+			if (buf[i] != ',') return true;
+		}
+		return false;
+	}
+	//Number of values in the current line (trailing empty values do not count, as with String.split)
+	public int numFields() {
+		int end = lineEnd;
+		while ((end > lineStart)&&(buf[end-1] == ',')) end--;
+		if ((end == lineStart)&&(lineEnd > lineStart)) return 0;
+
+		int count = 1;
+		for (int i=lineStart; i<end; i++) {
+			if (buf[i] == ',') count++;
+		}
+		return count;
+	}
+
+	//Functions to read the next value in the current line
+	public float nextFloat() {
+		int end = fieldEnd();
+		float value = parseFloat(buf, fieldPos, end);
+		fieldPos = end + 1;
+		return value;
+	}
+	public int nextInt() {
+		int end = fieldEnd();
+		int value = parseInt(buf, fieldPos, end);
+		fieldPos = end + 1;
+		return value;
+	}
+	public String nextString() {
+		int end = fieldEnd();
+		String value = new String(buf, fieldPos, end - fieldPos);
+		fieldPos = end + 1;
+		return value;
+	}
+	public void skipField() {
+		fieldPos = fieldEnd() + 1;
+	}
+	//End of the next value (a missing value reads as empty, which fails to parse as a number)
+	private int fieldEnd() {
+		if (fieldPos > lineEnd) {
+			fieldPos = lineEnd;
+			return lineEnd;
+		}
+		int end = fieldPos;
+		while ((end < lineEnd)&&(buf[end] != ',')) end++;
+		return end;
+	}
+
+
+	//Function to return a reader positioned at the start of a given line (for reading its values)
+	public static FSJCSVReader forLine(String line) {
+		return new FSJCSVReader(line.toCharArray());
+	}
+	//Function to parse all values of a line (trailing empty values do not count, as with String.split)
+	public static float[] parseFloats(String line) {
+		FSJCSVReader reader = new FSJCSVReader(line.toCharArray());
+		return reader.parseFloats(reader.numFields());
+	}
+	// ...only the first numValues
+	public static float[] parseFloats(String line, int numValues) {
+		return new FSJCSVReader(line.toCharArray()).parseFloats(numValues);
+	}
+	private float[] parseFloats(int numValues) {
+		float[] values = new float[numValues];
+		for (int i=0; i<values.length; i++) values[i] = nextFloat();
+		return values;
+	}
+
+	//Function to parse a float (same result as Float.parseFloat, including exceptions)
+	public static float parseFloat(char[] chars, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if ((i < end)&&((chars[i] == '-')||(chars[i] == '+'))) {
+			negative = (chars[i] == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int exp10 = 0;
+		boolean anyDigits = false;
+		boolean afterPoint = false;
+		while (i < end) {
+			char c = chars[i];
+			if ((c >= '0')&&(c <= '9')) {
+				mantissa = 10*mantissa + (c - '0');
+				if (mantissa > MaxExactMantissa) return slowParseFloat(chars, start, end);
+				if (afterPoint) exp10--;
+				anyDigits = true;
+			} else if ((c == '.')&&!afterPoint) {
+				afterPoint = true;
+			} else {
+				break;
+			}
+			i++;
+		}
+		if (!anyDigits) return slowParseFloat(chars, start, end);
+
+		if ((i < end)&&((chars[i] == 'e')||(chars[i] == 'E'))) {
+			i++;
+			boolean negExp = false;
+			if ((i < end)&&((chars[i] == '-')||(chars[i] == '+'))) {
+				negExp = (chars[i] == '-');
+				i++;
+			}
+			int exp = 0;
+			boolean anyExpDigits = false;
+			while ((i < end)&&(chars[i] >= '0')&&(chars[i] <= '9')) {
+				exp = 10*exp + (chars[i] - '0');
+				if (exp > 100) return slowParseFloat(chars, start, end);
+				anyExpDigits = true;
+				i++;
+			}
+			if (!anyExpDigits) return slowParseFloat(chars, start, end);
+			if (negExp) exp10 -= exp;
+			else exp10 += exp;
+		}
+		if (i < end) return slowParseFloat(chars, start, end);
+
+		//Both operands are exact, so the single rounding of the division or multiplication gives the correctly rounded value
+		float value;
+		if (mantissa == 0) value = 0f;
+		else if (exp10 == 0) value = mantissa;
+		else if ((exp10 < 0)&&(exp10 >= -10)) value = mantissa/ExactPowersOfTen[-exp10];
+		else if ((exp10 > 0)&&(exp10 <= 10)) value = mantissa*ExactPowersOfTen[exp10];
+		else return slowParseFloat(chars, start, end);
+
+		if (negative) return -value;
+		return value;
+	}
+	private static float slowParseFloat(char[] chars, int start, int end) {
+		return Float.parseFloat(new String(chars, start, end - start));
+	}
+
+	//Function to parse an int (same result as Integer.parseInt, including exceptions)
+	public static int parseInt(char[] chars, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if ((i < end)&&((chars[i] == '-')||(chars[i] == '+'))) {
+			negative = (chars[i] == '-');
+			i++;
+		}
+		if ((i >= end)||(end - i > 9)) return Integer.parseInt(new String(chars, start, end - start));
+
+		int value = 0;
+		while (i < end) {
+			char c = chars[i];
+			if ((c < '0')||(c > '9')) return Integer.parseInt(new String(chars, start, end - start));
+			value = 10*value + (c - '0');
+			i++;
+		}
+		if (negative) return -value;
+		return value;
+	}
+}
@@ -0,0 +1,172 @@
+package fastsimjava.components;
+
+//Compact (quantized) trip at 1sec intervals, for keeping large numbers of trips in memory -- about 2-4 bytes per time step
+// instead of 12-16 bytes for float arrays of speed, grade, auxiliary load and payload
+// -- Speed & grade are stored as 16-bit fixed-point values (by default at 0.01mph and 0.0001 resolution, coarser only
+//    if needed for the range of values in the trip)
+// -- Stretches of zero speed are stored as runs (start & length) instead of per time step
+// -- Grade, auxiliary load & payload that are zero throughout the trip are not stored, auxiliary load & payload that are
+//    constant are stored as a single value
+// Note: trips are decoded into FSJTripInput for each simulation run (see FASTSimJ3c.runC), decoded values are the same every time
+public class FSJCompactTrip {
+	//Default resolution of speed (mph) and grade
+	public static final float Default_SpeedResolutionMPH = 0.01f;
+	public static final float Default_GradeResolution = 0.0001f;
+	//Minimum number of consecutive zero-speed time steps stored as a run
+	public static final int MinIdleRunSteps = 4;
+
+	//Number of time steps
+	private int numSteps;
+	public int numSteps() {return numSteps;}
+
+	//Speed at time steps not in zero-speed runs (value = q*speedMult/speedDiv), and zero-speed runs (in order of start step)
+	private short[] speedQ;
+	private int speedMult;
+	private float speedDiv;
+	private int[] idleRunStart, idleRunLength;
+
+	//Grade (value = q*gradeMult/gradeDiv, null if zero throughout)
+	private short[] gradeQ;
+	private int gradeMult;
+	private float gradeDiv;
+
+	//Auxiliary load (kW) & payload (kg) -- null if zero throughout, single value if constant
+	private float[] auxKW, payloadKg;
+
+
+	//Constructor with default resolutions (only speed CANNOT be null)
+	public FSJCompactTrip(float[] speedMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg) {
+		this(speedMPH, roadGrade, otherAuxKW, payloadKg, Default_SpeedResolutionMPH, Default_GradeResolution);
+	}
+	// ...with given resolutions
+	public FSJCompactTrip(float[] speedMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg, float speedResolutionMPH, float gradeResolution) {
+		numSteps = speedMPH.length;
+
+		//Speed
+		speedDiv = Math.round(1f/speedResolutionMPH);
+		speedMult = fixedPointMult(speedMPH, speedDiv);
+		int[] q = new int[numSteps];
+		for (int i=0; i<numSteps; i++) q[i] = Math.round(speedMPH[i]*speedDiv/speedMult);
+
+		//Zero-speed runs
+		int numRuns = 0;
+		int numIdleSteps = 0;
+		int[] runStart = new int[numSteps/MinIdleRunSteps + 1];
+		int[] runLength = new int[runStart.length];
+		int i = 0;
+		while (i < numSteps) {
+			int runEnd = i;
+			while ((runEnd < numSteps)&&(q[runEnd] == 0)) runEnd++;
+			if (runEnd - i >= MinIdleRunSteps) {
+				runStart[numRuns] = i;
+				runLength[numRuns] = runEnd - i;
+				numIdleSteps += runEnd - i;
+				numRuns++;
+			}
+			i = Math.max(runEnd, i+1);
+		}
+		idleRunStart = new int[numRuns];
+		idleRunLength = new int[numRuns];
+		for (int j=0; j<numRuns; j++) {
+			idleRunStart[j] = runStart[j];
+			idleRunLength[j] = runLength[j];
+		}
+
+		speedQ = new short[numSteps - numIdleSteps];
+		int qID = 0;
+		int runID = 0;
+		i = 0;
+		while (i < numSteps) {
+			if ((runID < numRuns)&&(i == idleRunStart[runID])) {
+				i += idleRunLength[runID];
+				runID++;
+				continue;
+			}
+			speedQ[qID++] = (short)q[i];
+			i++;
+		}
+
+		//Grade
+		gradeDiv = Math.round(1f/gradeResolution);
+		gradeMult = fixedPointMult(roadGrade, gradeDiv);
+		if (!allZero(roadGrade)) {
+			gradeQ = new short[numSteps];
+			for (int j=0; j<numSteps; j++) gradeQ[j] = (short)Math.round(roadGrade[j]*gradeDiv/gradeMult);
+		}
+
+		//Auxiliary load & payload
+		auxKW = compactValues(otherAuxKW);
+		this.payloadKg = compactValues(payloadKg);
+	}
+
+	//Function for the smallest multiplier of the resolution that fits all values into 16-bits
+	private static int fixedPointMult(float[] values, float div) {
+		if (values == null) return 1;
+		float maxAbs = 0f;
+		for (int i=0; i<values.length; i++) maxAbs = Math.max(maxAbs, Math.abs(values[i]));
+		return Math.max(1, (int)Math.ceil(maxAbs*div/Short.MAX_VALUE));
+	}
+	private static boolean allZero(float[] values) {
+		if (values == null) return true;
+		for (int i=0; i<values.length; i++) {
+			if (values[i] != 0) return false;
+		}
+		return true;
+	}
+	private static float[] compactValues(float[] values) {
+		if (allZero(values)) return null;
+		for (int i=1; i<values.length; i++) {
+			if (values[i] != values[0]) return values.clone();
+		}
+		return new float[] {values[0]};
+	}
+	private float[] expandValues(float[] values) {
+		if (values == null) return null;
+		if (values.length == numSteps) return values.clone();
+
+		float[] arr = new float[numSteps];
+		for (int i=0; i<numSteps; i++) arr[i] = values[0];
+		return arr;
+	}
+
+
+	//Function to decode into input for simulation
+	public FSJTripInput toTripInput() {
+		return new FSJTripInput(null, speedMPH(), roadGrade(), otherAuxKW(), payloadKg());
+	}
+
+	//Decoded values (grade, auxiliary load and payload are null if zero throughout)
+	public float[] speedMPH() {
+		float[] arr = new float[numSteps];
+		int qID = 0;
+		int runID = 0;
+		int i = 0;
+		while (i < numSteps) {
+			if ((runID < idleRunStart.length)&&(i == idleRunStart[runID])) {
+				i += idleRunLength[runID];
+				runID++;
+				continue;
+			}
+			arr[i] = (speedQ[qID++]*speedMult)/speedDiv;
+			i++;
+		}
+		return arr;
+	}
+	public float[] roadGrade() {
+		if (gradeQ == null) return null;
+		float[] arr = new float[numSteps];
+		for (int i=0; i<numSteps; i++) arr[i] = (gradeQ[i]*gradeMult)/gradeDiv;
+		return arr;
+	}
+	public float[] otherAuxKW() {return expandValues(auxKW);}
+	public float[] payloadKg() {return expandValues(payloadKg);}
+
+	//Approximate number of bytes used by the stored values
+	public int compactBytes() {
+		int numBytes = 2*speedQ.length + 8*idleRunStart.length;
+		if (gradeQ != null) numBytes += 2*gradeQ.length;
+		if (auxKW != null) numBytes += 4*auxKW.length;
+		if (payloadKg != null) numBytes += 4*payloadKg.length;
+		return numBytes;
+	}
+}
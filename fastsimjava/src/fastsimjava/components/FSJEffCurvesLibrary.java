@@ -0,0 +1,185 @@
+package fastsimjava.components;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fastsimjava.FSJEffCurvesManager;
+import fastsimjava.FSJVehModelParam;
+
+//Thread-safe cache of the fuel converter and motor look-up tables derived from efficiency curves, looked-up by curve contents
+// Note #1: interning of the curves themselves was intentionally dropped: curves are mutable and FSJEffCurvesManager and
+//          FSJOneFileVehModel deep-copy them, so each manager keeps its own (small) curves and only the derived look-up tables
+//          are shared; cache keys hold private copies of the curve values, so later changes to a manager's curves do not affect the cache
+// Note #2: FSJFuelConverter and FSJMotor objects are immutable once created, so the cached objects are shared read-only
+//          across vehicle states, simulation runs and threads
+// Note #3: when the limit on cached objects is exceeded, the least recently used ones are evicted
+public class FSJEffCurvesLibrary {
+	//Default limit on number of cached fuel converter + motor objects
+	public static final int Default_MaxCachedComponents = 4096;
+
+	//Library shared by all vehicle states
+	private static final FSJEffCurvesLibrary shared = new FSJEffCurvesLibrary();
+	public static FSJEffCurvesLibrary shared() {return shared;}
+
+	//Cached fuel converter & motor objects, in order of last use (all access synchronized on the map)
+	private LinkedHashMap<ComponentKey, Object> components;
+
+	//Limit on number of cached fuel converter + motor objects
+	public volatile int maxCachedComponents;
+
+	//Number of look-ups served from cache and number of new objects created
+	private AtomicLong numHits, numMisses;
+	public long numHits() {return numHits.get();}
+	public long numMisses() {return numMisses.get();}
+
+
+	//Constructor
+	public FSJEffCurvesLibrary() {
+		components = new LinkedHashMap<ComponentKey, Object>(16, 0.75f, true);
+		maxCachedComponents = Default_MaxCachedComponents;
+		numHits = new AtomicLong();
+		numMisses = new AtomicLong();
+	}
+
+	//Function to return a fuel converter model for the given vehicle model
+	public FSJFuelConverter fuelConverter(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan, int numLookupPoints) {
+		PieceWiseLinearEfficiencyCurve customCurve = curveMan.getFCCurve(vehModelParam.battery.fcCCurveID);
+		ComponentKey key = new ComponentKey(false, customCurve, vehModelParam.fuelConv.maxFuelConvKw,
+				vehModelParam.fuelConv.fcEffType.ordinal(), numLookupPoints, false);
+
+		FSJFuelConverter fuelConv = (FSJFuelConverter)getComponent(key);
+		if (fuelConv != null) return fuelConv;
+
+		//Created outside of the lock (other threads may create the same object meanwhile, the first one stored is returned)
+		fuelConv = new FSJFuelConverter(vehModelParam, curveMan, numLookupPoints);
+		return (FSJFuelConverter)putComponent(key, fuelConv);
+	}
+	//Function to return an electric motor model for the given vehicle model
+	public FSJMotor motor(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan, int numLookupPoints) {
+		PieceWiseLinearEfficiencyCurve customCurve = curveMan.getMtCurve(vehModelParam.battery.mtCCurveID);
+		ComponentKey key = new ComponentKey(true, customCurve, vehModelParam.motor.maxMotorKw,
+				Float.floatToIntBits(vehModelParam.motor.motorPeakEff), numLookupPoints, false);
+
+		FSJMotor motor = (FSJMotor)getComponent(key);
+		if (motor != null) return motor;
+
+		motor = new FSJMotor(vehModelParam, curveMan, numLookupPoints);
+		return (FSJMotor)putComponent(key, motor);
+	}
+
+	//Function to look-up a cached object (marking it as most recently used), null if not cached
+	private Object getComponent(ComponentKey key) {
+		Object component;
+		synchronized (components) {
+			component = components.get(key);
+		}
+		if (component != null) numHits.incrementAndGet();
+		else numMisses.incrementAndGet();
+		return component;
+	}
+	//Function to cache a new object, evicting the least recently used ones beyond the limit (returns the object already cached, if any)
+	private Object putComponent(ComponentKey key, Object component) {
+		synchronized (components) {
+			Object existing = components.get(key);
+			if (existing != null) return existing;
+
+			components.put(key.storedCopy(), component);
+			Iterator<ComponentKey> it = components.keySet().iterator();
+			while ((components.size() > maxCachedComponents)&&it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+			return component;
+		}
+	}
+
+	//Function to clear cached fuel converter & motor objects (objects already handed out remain valid)
+	public void clearComponents() {
+		synchronized (components) {
+			components.clear();
+		}
+	}
+	//Function to return the number of cached fuel converter + motor objects
+	public int numCachedComponents() {
+		synchronized (components) {
+			return components.size();
+		}
+	}
+
+
+	//Key for look-up of curves by contents (optionally with private copy of the values)
+	private static class CurveKey {
+		private FSJEffCurvesManager.CurveType cType;
+		private float[] fracOfMaxPower, effValues;
+		private int hash;
+
+		private CurveKey(PieceWiseLinearEfficiencyCurve curve, boolean copyValues) {
+			cType = curve.cType;
+			fracOfMaxPower = curve.fracOfMaxPower;
+			effValues = curve.effValues;
+			if (copyValues) {
+				fracOfMaxPower = Arrays.copyOf(fracOfMaxPower, fracOfMaxPower.length);
+				effValues = Arrays.copyOf(effValues, effValues.length);
+			}
+
+			hash = 31*Arrays.hashCode(fracOfMaxPower) + Arrays.hashCode(effValues);
+			if (cType != null) hash = 31*hash + cType.ordinal();
+		}
+
+		@Override public int hashCode() {return hash;}
+		@Override public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof CurveKey)) return false;
+			CurveKey other = (CurveKey)obj;
+			if (hash != other.hash) return false;
+			if (cType != other.cType) return false;
+			return Arrays.equals(fracOfMaxPower, other.fracOfMaxPower) && Arrays.equals(effValues, other.effValues);
+		}
+	}
+
+	//Key for look-up of fuel converter or motor objects, via component kind, curve values (null for default curve), maximum power,
+	// a further integer parameter (fuel converter type or bits of motor peak efficiency) and look-up resolution
+	private static class ComponentKey {
+		private boolean isMotor;
+		private PieceWiseLinearEfficiencyCurve customCurve;
+		private CurveKey curve;
+		private int maxKWBits, param, numLookupPoints;
+		private int hash;
+
+		private ComponentKey(boolean isMotor, PieceWiseLinearEfficiencyCurve customCurve, float maxKW, int param, int numLookupPoints,
+				boolean copyValues) {
+			this.isMotor = isMotor;
+			this.customCurve = customCurve;
+			if (customCurve != null) curve = new CurveKey(customCurve, copyValues);
+			maxKWBits = Float.floatToIntBits(maxKW);
+			this.param = param;
+			this.numLookupPoints = numLookupPoints;
+
+			hash = (curve == null) ? 0 : curve.hash;
+			hash = 31*hash + maxKWBits;
+			hash = 31*hash + param;
+			hash = 31*hash + numLookupPoints;
+			if (isMotor) hash = 31*hash + 1;
+		}
+
+		@Override public int hashCode() {return hash;}
+		@Override public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ComponentKey)) return false;
+			ComponentKey other = (ComponentKey)obj;
+			if (isMotor != other.isMotor) return false;
+			if ((maxKWBits != other.maxKWBits)||(param != other.param)||(numLookupPoints != other.numLookupPoints)) return false;
+			if (curve == null) return other.curve == null;
+			return curve.equals(other.curve);
+		}
+		
+		//Key to be stored in the cache, with a private copy of the curve values (so later changes to curves do not affect the cache)
+		private ComponentKey storedCopy() {
+			ComponentKey key = new ComponentKey(isMotor, customCurve, Float.intBitsToFloat(maxKWBits), param, numLookupPoints, true);
+			key.customCurve = null;
+			return key;
+		}
+	}
+}
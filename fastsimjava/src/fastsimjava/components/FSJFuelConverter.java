@@ -3,8 +3,8 @@ package fastsimjava.components;
 import fastsimjava.*;
 
 public class FSJFuelConverter {
-	//Constant for fine-grid array of kWIn points
-	private static final int NumPointsForKWOut = 101;
+	//Number of points in fine-grid array of kWOut points
+	private int numPointsForKWOut;
 	
 	//Maximum output power
 	private float maxOutPowerKW;
@@ -14,27 +14,29 @@ public class FSJFuelConverter {
 	private float powerAtMaxEffKW;
 	public float powerAtMaxEffKW() {return powerAtMaxEffKW;}
 	
-	//Array of values for the input kW to achieve a desired output kW
-	private float[] kWInValues;
+	//Array of values for the input kW to achieve a desired output kW (on uniform grid of output kW), with slope in each interval
+	private float[] kWInValues, kWInSlopes;
+	private float deltaPowerOutKW;
 
 	//Function for calculating the input power corresponding to a desired output power
 	public float inputPowerKW(float outPowerKW) {	
-		float deltaPowerOutKW = maxOutPowerKW/(float)(NumPointsForKWOut-1);
 		int arrayID = (int)(outPowerKW/deltaPowerOutKW);
 		
 		if (arrayID < 0) return kWInValues[0];
-		if (arrayID >= (NumPointsForKWOut-1)) return kWInValues[NumPointsForKWOut-1];
+		if (arrayID >= (numPointsForKWOut-1)) return kWInValues[numPointsForKWOut-1];
 		
-		float y1 = kWInValues[arrayID];
-		float y2 = kWInValues[arrayID+1];
-		float c2 = (outPowerKW - arrayID*deltaPowerOutKW)/deltaPowerOutKW;
-		float c1 = 1f - c2;
-		
-		return c1*y1 + c2*y2;
+		return kWInValues[arrayID] + kWInSlopes[arrayID]*(outPowerKW - arrayID*deltaPowerOutKW);
 	}	
 
 	//Constructor
 	public FSJFuelConverter(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan) {
+		this(vehModelParam, curveMan, FSJSimConstants.Default_EffLookupNumPoints);
+	}
+	// ...with given number of points in fine-grid array
+	public FSJFuelConverter(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan, int numLookupPoints) {
+		//Set number of points in fine-grid array
+		numPointsForKWOut = Math.max(2, numLookupPoints);
+		
 		//Set maximum output power
 		maxOutPowerKW = vehModelParam.fuelConv.maxFuelConvKw;
 
@@ -64,11 +66,7 @@ public class FSJFuelConverter {
 			}
 		}
 		
-		kWInValues = new float[NumPointsForKWOut];
-		for (int i=1; i<kWInValues.length; i++) {
-			float curKWOut = ((float)i/(float)(NumPointsForKWOut-1))*maxOutPowerKW;
-			kWInValues[i] = linInterpolate(powX, powY, curKWOut);
-		}		
+		initLookup(powX, powY);
 	}
 	
 	private void defaultInit(FSJVehModelParam.FuelConverterEffType fcType) {
@@ -119,24 +117,32 @@ public class FSJFuelConverter {
 			}
 		}
 		
-		kWInValues = new float[NumPointsForKWOut];
-		for (int i=1; i<kWInValues.length; i++) {
-			float curKWOut = ((float)i/(float)(NumPointsForKWOut-1))*maxOutPowerKW;
-			kWInValues[i] = linInterpolate(powX, powY, curKWOut);
-		}		
+		initLookup(powX, powY);
 	}
-	private static float linInterpolate(float[] xs, float[] ys, float x) {
-		if (x <= xs[0]) return ys[0];
-		if (x >= xs[xs.length-1]) return ys[xs.length-1];
+	//Function to fill the fine-grid array from a piece-wise linear curve of input power vs. output power
+	private void initLookup(float[] powX, float[] powY) {
+		deltaPowerOutKW = maxOutPowerKW/(float)(numPointsForKWOut-1);
 		
+		kWInValues = new float[numPointsForKWOut];
 		int intervalID = 0;
-		while (xs[intervalID+1] < x) intervalID++;
-		
-		float x1 = xs[intervalID];
-		float x2 = xs[intervalID+1];
-		float z = (x-x1)/(x2-x1);
+		for (int i=1; i<kWInValues.length; i++) {
+			float curKWOut = ((float)i/(float)(numPointsForKWOut-1))*maxOutPowerKW;
+			
+			//Walk along the curve (grid points are in increasing order)
+			if (curKWOut <= powX[0]) {
+				kWInValues[i] = powY[0];
+			} else if (curKWOut >= powX[powX.length-1]) {
+				kWInValues[i] = powY[powX.length-1];
+			} else {
+				while (powX[intervalID+1] < curKWOut) intervalID++;
+				float z = (curKWOut-powX[intervalID])/(powX[intervalID+1]-powX[intervalID]);
+				kWInValues[i] = powY[intervalID] + z*(powY[intervalID+1]-powY[intervalID]);
+			}
+		}
 		
-		return ys[intervalID] + z*(ys[intervalID+1]-ys[intervalID]);
+		kWInSlopes = new float[numPointsForKWOut-1];
+		if (deltaPowerOutKW > 0) {
+			for (int i=0; i<kWInSlopes.length; i++) kWInSlopes[i] = (kWInValues[i+1]-kWInValues[i])/deltaPowerOutKW;
+		}
 	}
-
 }
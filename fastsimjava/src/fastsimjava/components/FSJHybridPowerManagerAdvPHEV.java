@@ -3,6 +3,7 @@ package fastsimjava.components;
 import java.util.ArrayList;
 
 import fastsimjava.FSJVehModelParam;
+import fastsimjava.abs.FSJHybridPowerManagerBase;
 
 //Class for PHEVs Power management with advanced options, including charge hold and battery charge modes
 public class FSJHybridPowerManagerAdvPHEV extends FSJHybridPowerManagerDefault {
@@ -32,6 +33,71 @@ public class FSJHybridPowerManagerAdvPHEV extends FSJHybridPowerManagerDefault {
 		//Other initialization
 		resetModeIntervals();
 	}
+	//Copy constructor (mode segments are not modified once added, so the new object keeps links to the same segments)
+	public FSJHybridPowerManagerAdvPHEV(FSJHybridPowerManagerAdvPHEV other) {
+		super(other);
+		
+		HighSpeedBufferMPH = other.HighSpeedBufferMPH;
+		ChgDepleteBufferRelSOC = other.ChgDepleteBufferRelSOC;
+		
+		lastModeIntervalID = other.lastModeIntervalID;
+		prevSOC = other.prevSOC;
+		dynamicTargetSOC = other.dynamicTargetSOC;
+		chgModeSOCStart = other.chgModeSOCStart;
+		lastDecisionType = other.lastDecisionType;
+		
+		modeSeg = null;
+		if (other.modeSeg != null) {
+			modeSeg = new AdvPHEVModeDistanceSegment[other.modeSeg.length];
+			for (int i=0; i<modeSeg.length; i++) modeSeg[i] = other.modeSeg[i];
+		}
+	}
+	//Function to create a copy (only if not a sub-class, which would otherwise lose its own data)
+	@Override public FSJHybridPowerManagerBase createCopy() {
+		if (getClass() != FSJHybridPowerManagerAdvPHEV.class) return null;
+		return new FSJHybridPowerManagerAdvPHEV(this);
+	}
+	//Function to take over the decision state of another power manager part-way through a trip (mode segments are kept)
+	@Override public void copyDecisionState(FSJHybridPowerManagerDefault other) {
+		super.copyDecisionState(other);
+		if (!(other instanceof FSJHybridPowerManagerAdvPHEV)) return;
+		
+		FSJHybridPowerManagerAdvPHEV otherAdv = (FSJHybridPowerManagerAdvPHEV)other;
+		lastModeIntervalID = otherAdv.lastModeIntervalID;
+		prevSOC = otherAdv.prevSOC;
+		dynamicTargetSOC = otherAdv.dynamicTargetSOC;
+		chgModeSOCStart = otherAdv.chgModeSOCStart;
+		lastDecisionType = otherAdv.lastDecisionType;
+	}
+	//Functions for caching of results (only if not a sub-class, which may have more settings)
+	@Override public String cacheDescription() {
+		if (getClass() != FSJHybridPowerManagerAdvPHEV.class) return null;
+		
+		String st = "AdvPHEV,"+engineOnStaysOnSec+","+HighSpeedBufferMPH+","+ChgDepleteBufferRelSOC;
+		float[] state = decisionState();
+		for (int i=1; i<state.length; i++) st = st + "," + state[i];
+		if (modeSeg != null) {
+			for (int i=0; i<modeSeg.length; i++) {
+				st = st + "," + modeSeg[i].mode.ordinal() + "," + modeSeg[i].milesStartCurrentMode + "," 
+						+ modeSeg[i].chgUpMode_milesToTargetSOC + "," + modeSeg[i].chgUpMode_targetSOC;
+			}
+		}
+		return st;
+	}
+	@Override public float[] decisionState() {
+		float decisionTypeID = -1f;
+		if (lastDecisionType != null) decisionTypeID = lastDecisionType.ordinal();
+		return new float[] {fuelConvKWOut, lastModeIntervalID, prevSOC, dynamicTargetSOC, chgModeSOCStart, decisionTypeID};
+	}
+	@Override public void setDecisionState(float[] state) {
+		fuelConvKWOut = state[0];
+		lastModeIntervalID = (int)state[1];
+		prevSOC = state[2];
+		dynamicTargetSOC = state[3];
+		chgModeSOCStart = state[4];
+		lastDecisionType = null;
+		if (state[5] >= 0) lastDecisionType = FCKWOutDecisionCondition.values()[(int)state[5]];
+	}
 	
 	public void addChargeMangementSegment_normal(float tripMilesStart) {
 		AdvPHEVModeDistanceSegment nSegment = new AdvPHEVModeDistanceSegment();
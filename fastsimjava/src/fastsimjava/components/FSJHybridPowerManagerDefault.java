@@ -18,6 +18,33 @@ public class FSJHybridPowerManagerDefault extends FSJHybridPowerManagerBase {
 	public FSJHybridPowerManagerDefault() {
 		engineOnStaysOnSec = 4f;	//Adjust as needed by the model of vehicle
 	}
+	//Copy constructor
+	public FSJHybridPowerManagerDefault(FSJHybridPowerManagerDefault other) {
+		fuelConvKWOut = other.fuelConvKWOut;
+		engineOnStaysOnSec = other.engineOnStaysOnSec;
+	}
+	//Function to create a copy (only if not a sub-class, which would otherwise lose its own data)
+	@Override public FSJHybridPowerManagerBase createCopy() {
+		if (getClass() != FSJHybridPowerManagerDefault.class) return null;
+		return new FSJHybridPowerManagerDefault(this);
+	}
+	//Function to take over the decision state (but not the tuning constants) of another power manager part-way through a trip,
+	// e.g. to continue a run restored from a snapshot with different power management settings
+	public void copyDecisionState(FSJHybridPowerManagerDefault other) {
+		fuelConvKWOut = other.fuelConvKWOut;
+	}
+	//Functions for caching of results (only if not a sub-class, which may have more settings)
+	// Note: fuelConvKWOut is re-calculated at every time step, so it does not affect the results of the next trip
+	@Override public String cacheDescription() {
+		if (getClass() != FSJHybridPowerManagerDefault.class) return null;
+		return "Default,"+engineOnStaysOnSec;
+	}
+	@Override public float[] decisionState() {
+		return new float[] {fuelConvKWOut};
+	}
+	@Override public void setDecisionState(float[] state) {
+		fuelConvKWOut = state[0];
+	}
 
 	//Interfacing function
 	public void setCurState(FSJVehState vehCurState, float mphDesired, float kWDesiredAtWheels, float fcMod,
@@ -4,8 +4,8 @@ import fastsimjava.FSJEffCurvesManager;
 import fastsimjava.FSJVehModelParam;
 
 public class FSJMotor {
-	//Constant for look-up arrays
-	private static final int NumPointsForLookup = 101;
+	//Number of points in look-up arrays
+	private int numPointsForLookup;
 
 	//Maximum output power
 	private float maxOutPowerKW;
@@ -19,51 +19,50 @@ public class FSJMotor {
 	private float minMotorEff;
 	public float minMotorEff() {return minMotorEff;}
 	
-	//Lookup arrays
-	private float[] outKWArr, inKWArr;
+	//Lookup arrays on a uniform grid of output power, with slope of input power in each interval
+	private float[] outKWArr, inKWArr, inKWSlope;
+	private float deltaOutKW;
+	//Inverse lookup: uniform grid of input power, with the lookup array interval containing the start of each bucket
+	// and slope of output power in each interval of the lookup arrays
+	private int[] inBucketStartID;
+	private float[] outKWSlope;
+	private float deltaInKW;
 		
 	//Function to calculate necessary input (electric) power for desired output (mechanical) power
 	public float inputPowerKW(float outPowerKW) {
 		if (outPowerKW <= 0) return 0f;
 		if (outPowerKW >= maxOutPowerKW) return maxKWIn;
 		
-		int arrIDinOutKW = 0;
-		for (int i=1; i<outKWArr.length; i++) {
-			if (outPowerKW < outKWArr[i]) break;
-			arrIDinOutKW++;
-		}
+		int arrIDinOutKW = Math.min((int)(outPowerKW/deltaOutKW), outKWArr.length-1);
+		if ((arrIDinOutKW > 0)&&(outPowerKW < outKWArr[arrIDinOutKW])) arrIDinOutKW--;
+		if (((arrIDinOutKW+1)<outKWArr.length)&&(outPowerKW >= outKWArr[arrIDinOutKW+1])) arrIDinOutKW++;
 		
 		if ((arrIDinOutKW+1)>=outKWArr.length) return maxKWIn;
-		
-		float y1 = inKWArr[arrIDinOutKW];
-		float y2 = inKWArr[arrIDinOutKW+1];
-		float c2 = (outPowerKW-outKWArr[arrIDinOutKW])/(outKWArr[arrIDinOutKW+1]-outKWArr[arrIDinOutKW]);
-		float c1 = 1f - c2;		
 
-		return c1*y1 + c2*y2;
+		return inKWArr[arrIDinOutKW] + inKWSlope[arrIDinOutKW]*(outPowerKW-outKWArr[arrIDinOutKW]);
 	}
 	//Function to calculate the output (mechanical) power for a given input (electric) power
 	public float outputPowerKW(float inPowerKW) {
 		if (inPowerKW <= 0) return 0f;
 		if (inPowerKW >= maxKWIn) return maxOutPowerKW;
 		
-		int arrIDinInKW = 0;
-		for (int i=1; i<inKWArr.length; i++) {
-			if (inPowerKW < inKWArr[i]) break;
-			arrIDinInKW++;
-		}
+		int bucketID = Math.min((int)(inPowerKW/deltaInKW), inBucketStartID.length-1);
+		int arrIDinInKW = inBucketStartID[bucketID];
+		while (((arrIDinInKW+2)<inKWArr.length)&&(inPowerKW >= inKWArr[arrIDinInKW+1])) arrIDinInKW++;
 
-		float y1 = outKWArr[arrIDinInKW];
-		float y2 = outKWArr[arrIDinInKW+1];
-		float c2 = (inPowerKW-inKWArr[arrIDinInKW])/(inKWArr[arrIDinInKW+1]-inKWArr[arrIDinInKW]);
-		float c1 = 1f - c2;		
-		
-		return c1*y1 + c2*y2;
+		return outKWArr[arrIDinInKW] + outKWSlope[arrIDinInKW]*(inPowerKW-inKWArr[arrIDinInKW]);
 	}	
 
 	
 	//Constructor
 	public FSJMotor(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan) {
+		this(vehModelParam, curveMan, FSJSimConstants.Default_EffLookupNumPoints);
+	}
+	// ...with given number of points in look-up arrays
+	public FSJMotor(FSJVehModelParam vehModelParam, FSJEffCurvesManager curveMan, int numLookupPoints) {
+		//Set number of points in look-up arrays
+		numPointsForLookup = Math.max(2, numLookupPoints);
+		
 		//Set maximum power
 		maxOutPowerKW = vehModelParam.motor.maxMotorKw;
 
@@ -106,23 +105,7 @@ public class FSJMotor {
 			ys[i] = xs[i]/adjEffMap[i];
 		}
 		
-		outKWArr = new float[NumPointsForLookup];
-		inKWArr = new float[NumPointsForLookup];
-		
-		maxKWIn = 0f;
-		
-		float deltaKW = maxOutPowerKW/((float)(outKWArr.length-1));
-		for (int i=1; i<outKWArr.length; i++) {
-			float curKWout = i*deltaKW;
-			float curKWin = linInterpolate(xs, ys, curKWout);
-
-			outKWArr[i] = curKWout;
-			inKWArr[i] = curKWin;
-			
-			if (maxKWIn < curKWin) {
-				maxKWIn = curKWin;
-			}
-		}		
+		initLookup(xs, ys);
 }
 	
 	
@@ -164,15 +147,32 @@ public class FSJMotor {
 			ys[i] = xs[i]/adjEffMap[i];
 		}
 		
-		outKWArr = new float[NumPointsForLookup];
-		inKWArr = new float[NumPointsForLookup];
+		initLookup(xs, ys);
+	}
+
+	//Function to fill the look-up arrays from a piece-wise linear curve of input power vs. output power
+	private void initLookup(float[] xs, float[] ys) {
+		outKWArr = new float[numPointsForLookup];
+		inKWArr = new float[numPointsForLookup];
 		
 		maxKWIn = 0f;
 		
-		float deltaKW = maxOutPowerKW/((float)(outKWArr.length-1));
+		deltaOutKW = maxOutPowerKW/((float)(outKWArr.length-1));
+		int intervalID = 0;
 		for (int i=1; i<outKWArr.length; i++) {
-			float curKWout = i*deltaKW;
-			float curKWin = linInterpolate(xs, ys, curKWout);
+			float curKWout = i*deltaOutKW;
+			
+			//Walk along the curve (look-up points are in increasing order)
+			float curKWin;
+			if (curKWout <= xs[0]) {
+				curKWin = ys[0];
+			} else if (curKWout >= xs[xs.length-1]) {
+				curKWin = ys[xs.length-1];
+			} else {
+				while (xs[intervalID+1] < curKWout) intervalID++;
+				float z = (curKWout-xs[intervalID])/(xs[intervalID+1]-xs[intervalID]);
+				curKWin = ys[intervalID] + z*(ys[intervalID+1]-ys[intervalID]);
+			}
 
 			outKWArr[i] = curKWout;
 			inKWArr[i] = curKWin;
@@ -180,20 +180,26 @@ public class FSJMotor {
 			if (maxKWIn < curKWin) {
 				maxKWIn = curKWin;
 			}
-		}		
-	}
-
-	private static float linInterpolate(float[] xs, float[] ys, float x) {
-		if (x <= xs[0]) return ys[0];
-		if (x >= xs[xs.length-1]) return ys[xs.length-1];
-		
-		int intervalID = 0;
-		while (xs[intervalID+1] < x) intervalID++;
+		}
 		
-		float x1 = xs[intervalID];
-		float x2 = xs[intervalID+1];
-		float z = (x-x1)/(x2-x1);
+		//Slopes in each interval
+		inKWSlope = new float[outKWArr.length-1];
+		outKWSlope = new float[outKWArr.length-1];
+		for (int i=0; i<inKWSlope.length; i++) {
+			float dOut = outKWArr[i+1] - outKWArr[i];
+			float dIn = inKWArr[i+1] - inKWArr[i];
+			if (dOut > 0) inKWSlope[i] = dIn/dOut;
+			if (dIn > 0) outKWSlope[i] = dOut/dIn;
+		}
 		
-		return ys[intervalID] + z*(ys[intervalID+1]-ys[intervalID]);
+		//Inverse look-up buckets
+		inBucketStartID = new int[outKWArr.length-1];
+		deltaInKW = maxKWIn/((float)inBucketStartID.length);
+		int arrID = 0;
+		for (int i=0; i<inBucketStartID.length; i++) {
+			float bucketStartKWin = i*deltaInKW;
+			while (((arrID+2)<inKWArr.length)&&(bucketStartKWin >= inKWArr[arrID+1])) arrID++;
+			inBucketStartID[i] = arrID;
+		}
 	}
 }
@@ -9,6 +9,14 @@ public class FSJSimConstants {
 	public float airDensity,gravity,h2KWhPerKg,kWhPerGGE,kWhPerGalDiesel,gasKWhPerKg,dieselKWhPerKg,cngKWhPerM3;
 	public float refAmbTempC,refAtmPressureBar;
 	
+	//Tolerance (in m/s) on the achievable speed when the vehicle cannot meet the desired speed (not part of the CSV file)
+	public float achSpeedTolMS;
+	public static final float Default_AchSpeedTolMS = 0.01f;
+	
+	//Number of points in the uniform-grid look-up tables of motor and fuel converter efficiency (not part of the CSV file)
+	public int effLookupNumPoints;
+	public static final int Default_EffLookupNumPoints = 101;
+	
 	public static final float mphPerMps = 2.2369f; 		//Miles per hour / meters per second
 	public static final float metersPerMile = 1609;		//Meters per mile
 	public static final float inchesPerMeter = 39.37f;	//Inches per meter
@@ -35,9 +43,14 @@ public class FSJSimConstants {
 		
 		refAmbTempC = 20f;				//Degrees Celsius
 		refAtmPressureBar = 1.0098f;	//Bar
+		
+		achSpeedTolMS = Default_AchSpeedTolMS;
+		effLookupNumPoints = Default_EffLookupNumPoints;
 	}
 	//Constructor via CSV file
 	public FSJSimConstants(String fname) {
+		achSpeedTolMS = Default_AchSpeedTolMS;
+		effLookupNumPoints = Default_EffLookupNumPoints;
 		readFromCSVFile(fname);
 	}
 	//Function to write contents to CSV file
@@ -75,6 +88,12 @@ public class FSJSimConstants {
 		return ""+airDensity+","+gravity+","+h2KWhPerKg+","+kWhPerGGE+","+kWhPerGalDiesel+","+
 				gasKWhPerKg+","+dieselKWhPerKg+","+refAmbTempC+","+refAtmPressureBar;
 	}
+	//Function to describe all values (including those not in the CSV file) for result cache keys
+	// -- any field added to this class that affects simulation results must be added here
+	public String cacheDescription() {
+		return ""+airDensity+","+gravity+","+h2KWhPerKg+","+kWhPerGGE+","+kWhPerGalDiesel+","+gasKWhPerKg+","+dieselKWhPerKg+","+
+				cngKWhPerM3+","+refAmbTempC+","+refAtmPressureBar+","+achSpeedTolMS+","+effLookupNumPoints;
+	}
 	//Function to parse values from equivalent string
 	public void parseFromString(String readLine) {
 		String[] strSplit = readLine.split(",");
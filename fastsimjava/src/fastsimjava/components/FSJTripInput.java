@@ -0,0 +1,99 @@
+package fastsimjava.components;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+//Pre-processed trip input (dense arrays, one value per time step), created once and reusable for any number of simulation runs
+// Note: arrays are shared with the simulations, and should not be modified after construction
+public class FSJTripInput {
+	//Number of time steps
+	public final int numSteps;
+
+	//Time since start of trip and time step (seconds), deltaSec[0] is zero
+	public final float[] secSinceStart, deltaSec;
+	//Desired speed in miles per hour & meters per second
+	public final float[] speedMPH, speedMS;
+	//Road grade and the sine of its angle
+	public final float[] grade, gradeSin;
+	//Additional auxiliary load (kW) and payload (kg)
+	public final float[] auxKW, payloadKg;
+	
+	//SHA-256 digest of the trip contents (computed on first request, e.g. for caching of simulation results)
+	private byte[] digest;
+
+	//Constructor via the same inputs as the simulation run functions
+	//Inputs that may be null (and treatment if they are null) are:
+	//	timeSec --> speedDesiredMPH is assumed to be at 1sec intervals
+	//	roadGrade --> assumed to be zero
+	//	otherAuxKW --> assumed to be zero
+	//	payloadKg --> assumed to be zero
+	public FSJTripInput(float[] timeSec, float[] speedDesiredMPH, float[] roadGrade, float[] otherAuxKW, float[] payloadKg) {
+		numSteps = speedDesiredMPH.length;
+
+		secSinceStart = new float[numSteps];
+		deltaSec = new float[numSteps];
+		speedMPH = new float[numSteps];
+		speedMS = new float[numSteps];
+		grade = new float[numSteps];
+		gradeSin = new float[numSteps];
+		auxKW = new float[numSteps];
+		this.payloadKg = new float[numSteps];
+
+		float curSec = 0f;
+		for (int i=0; i<numSteps; i++) {
+			if (i > 0) {
+				float deltaTime = 1f;
+				if (timeSec!=null) deltaTime = timeSec[i]-timeSec[i-1];
+				curSec += deltaTime;
+				deltaSec[i] = deltaTime;
+			}
+			secSinceStart[i] = curSec;
+
+			speedMPH[i] = speedDesiredMPH[i];
+			speedMS[i] = speedDesiredMPH[i]/FSJSimConstants.mphPerMps;
+
+			if (roadGrade!=null) grade[i] = roadGrade[i];
+			gradeSin[i] = gradeSin(grade[i]);
+
+			if (otherAuxKW!=null) auxKW[i] = otherAuxKW[i];
+			if (payloadKg!=null) this.payloadKg[i] = payloadKg[i];
+		}
+	}
+
+	//Function to check whether the other trip has the same contents (i.e. gives the same simulation results)
+	public boolean sameContents(FSJTripInput other) {
+		if (other == this) return true;
+		if (other.numSteps != numSteps) return false;
+		return Arrays.equals(deltaSec, other.deltaSec) && Arrays.equals(speedMPH, other.speedMPH) && Arrays.equals(grade, other.grade) 
+				&& Arrays.equals(auxKW, other.auxKW) && Arrays.equals(payloadKg, other.payloadKg);
+	}
+
+	//Function to return the SHA-256 digest of the trip contents (null if it could not be calculated)
+	public synchronized byte[] digest() {
+		if (digest != null) return digest;
+		
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			ByteBuffer bb = ByteBuffer.allocate(4*5*numSteps + 4);
+			bb.putInt(numSteps);
+			for (int i=0; i<numSteps; i++) {
+				bb.putFloat(deltaSec[i]);
+				bb.putFloat(speedMPH[i]);
+				bb.putFloat(grade[i]);
+				bb.putFloat(auxKW[i]);
+				bb.putFloat(payloadKg[i]);
+			}
+			md.update(bb.array());
+			digest = md.digest();
+		} catch (Exception e) {
+			return null;
+		}
+		return digest;
+	}
+
+	//Function for the sine of the road angle given the road grade
+	public static float gradeSin(float roadGrade) {
+		return (float)Math.sin(Math.atan(roadGrade));
+	}
+}
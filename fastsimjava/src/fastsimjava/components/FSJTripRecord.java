@@ -0,0 +1,205 @@
+package fastsimjava.components;
+
+import java.io.FileWriter;
+
+//Columnar (struct-of-arrays) record of the vehicle state at every time step of a trip
+// Each state quantity is kept in one primitive array, pre-allocated for the number of time steps in the trip,
+// instead of keeping a deep copy of FSJVehState for every time step
+public class FSJTripRecord {
+	//Number of recorded time steps
+	private int numSteps;
+	public int numSteps() {return numSteps;}
+
+	//Time-related information
+	public float[] secSinceTripStart,deltaSecFromLastState,secFuelConvOn,secFuelConvOff;
+	//Motion information
+	public float[] prevSpeedMPH,prevSpeedMS,curDesiredSpeedMPH,achCurSpeedMPH,achCurSpeedMS,
+		curSpeedSlipMPH,curRoadGrade,metersFromLastState,milesSinceStart;
+	//Battery state of charge information
+	public float[] swingKWh,relSoC,absSoC;
+	//Fuel and electric energy usage
+	public float[] batteryKWhSinceLastState,batteryKWhSinceTripStart,fuelUseSinceLastState,fuelUseSinceTripStart;
+	//Power consumption terms
+	public float[] dragKW,ascentKW,rollResKW,accelKW,auxKW,fricBrakeKW,regenKW;
+	public float[] fcPowerOut,fcPowerIn,fcEffn,mtPowerOut,mtPowerIn,mtEffn;
+
+	//Constructor, allocates all arrays for the given number of time steps
+	public FSJTripRecord(int nSteps) {
+		numSteps = nSteps;
+
+		secSinceTripStart = new float[numSteps];
+		deltaSecFromLastState = new float[numSteps];
+		secFuelConvOn = new float[numSteps];
+		secFuelConvOff = new float[numSteps];
+
+		prevSpeedMPH = new float[numSteps];
+		prevSpeedMS = new float[numSteps];
+		curDesiredSpeedMPH = new float[numSteps];
+		achCurSpeedMPH = new float[numSteps];
+		achCurSpeedMS = new float[numSteps];
+		curSpeedSlipMPH = new float[numSteps];
+		curRoadGrade = new float[numSteps];
+		metersFromLastState = new float[numSteps];
+		milesSinceStart = new float[numSteps];
+
+		swingKWh = new float[numSteps];
+		relSoC = new float[numSteps];
+		absSoC = new float[numSteps];
+
+		batteryKWhSinceLastState = new float[numSteps];
+		batteryKWhSinceTripStart = new float[numSteps];
+		fuelUseSinceLastState = new float[numSteps];
+		fuelUseSinceTripStart = new float[numSteps];
+
+		dragKW = new float[numSteps];
+		ascentKW = new float[numSteps];
+		rollResKW = new float[numSteps];
+		accelKW = new float[numSteps];
+		auxKW = new float[numSteps];
+		fricBrakeKW = new float[numSteps];
+		regenKW = new float[numSteps];
+		fcPowerOut = new float[numSteps];
+		fcPowerIn = new float[numSteps];
+		fcEffn = new float[numSteps];
+		mtPowerOut = new float[numSteps];
+		mtPowerIn = new float[numSteps];
+		mtEffn = new float[numSteps];
+	}
+
+	//Function to record the current vehicle state at a given time step
+	public void recordState(int stepID, FSJVehState vehState) {
+		FSJVehState.TimeInfo time = vehState.time;
+		secSinceTripStart[stepID] = time.secSinceTripStart;
+		deltaSecFromLastState[stepID] = time.deltaSecFromLastState;
+		secFuelConvOn[stepID] = time.secFuelConvOn;
+		secFuelConvOff[stepID] = time.secFuelConvOff;
+
+		FSJVehState.MotionInfo motion = vehState.motion;
+		prevSpeedMPH[stepID] = motion.prevSpeedMPH;
+		prevSpeedMS[stepID] = motion.prevSpeedMS;
+		curDesiredSpeedMPH[stepID] = motion.curDesiredSpeedMPH;
+		achCurSpeedMPH[stepID] = motion.achCurSpeedMPH;
+		achCurSpeedMS[stepID] = motion.achCurSpeedMS;
+		curSpeedSlipMPH[stepID] = motion.curSpeedSlipMPH;
+		curRoadGrade[stepID] = motion.curRoadGrade;
+		metersFromLastState[stepID] = motion.metersFromLastState;
+		milesSinceStart[stepID] = motion.milesSinceStart;
+
+		FSJVehState.BatterySOCInfo soc = vehState.soc;
+		swingKWh[stepID] = soc.swingKWh;
+		relSoC[stepID] = soc.relSoC;
+		absSoC[stepID] = soc.absSoC;
+
+		FSJVehState.EnergyUseInfo energyUse = vehState.energyUse;
+		batteryKWhSinceLastState[stepID] = energyUse.batteryKWhSinceLastState;
+		batteryKWhSinceTripStart[stepID] = energyUse.batteryKWhSinceTripStart;
+		fuelUseSinceLastState[stepID] = energyUse.fuelUseSinceLastState;
+		fuelUseSinceTripStart[stepID] = energyUse.fuelUseSinceTripStart;
+
+		FSJVehState.InstPowerInfo instPower = vehState.instPower;
+		dragKW[stepID] = instPower.dragKW;
+		ascentKW[stepID] = instPower.ascentKW;
+		rollResKW[stepID] = instPower.rollResKW;
+		accelKW[stepID] = instPower.accelKW;
+		auxKW[stepID] = instPower.auxKW;
+		fricBrakeKW[stepID] = instPower.fricBrakeKW;
+		regenKW[stepID] = instPower.regenKW;
+		fcPowerOut[stepID] = instPower.fcPowerOut;
+		fcPowerIn[stepID] = instPower.fcPowerIn;
+		fcEffn[stepID] = instPower.fcEffn;
+		mtPowerOut[stepID] = instPower.mtPowerOut;
+		mtPowerIn[stepID] = instPower.mtPowerIn;
+		mtEffn[stepID] = instPower.mtEffn;
+	}
+
+	//Function to copy the recorded values of a given time step back into a vehicle state object
+	public void copyStepInto(int stepID, FSJVehState vehState) {
+		FSJVehState.TimeInfo time = vehState.time;
+		time.secSinceTripStart = secSinceTripStart[stepID];
+		time.deltaSecFromLastState = deltaSecFromLastState[stepID];
+		time.secFuelConvOn = secFuelConvOn[stepID];
+		time.secFuelConvOff = secFuelConvOff[stepID];
+
+		FSJVehState.MotionInfo motion = vehState.motion;
+		motion.prevSpeedMPH = prevSpeedMPH[stepID];
+		motion.prevSpeedMS = prevSpeedMS[stepID];
+		motion.curDesiredSpeedMPH = curDesiredSpeedMPH[stepID];
+		motion.achCurSpeedMPH = achCurSpeedMPH[stepID];
+		motion.achCurSpeedMS = achCurSpeedMS[stepID];
+		motion.curSpeedSlipMPH = curSpeedSlipMPH[stepID];
+		motion.curRoadGrade = curRoadGrade[stepID];
+		motion.metersFromLastState = metersFromLastState[stepID];
+		motion.milesSinceStart = milesSinceStart[stepID];
+
+		FSJVehState.BatterySOCInfo soc = vehState.soc;
+		soc.swingKWh = swingKWh[stepID];
+		soc.relSoC = relSoC[stepID];
+		soc.absSoC = absSoC[stepID];
+
+		FSJVehState.EnergyUseInfo energyUse = vehState.energyUse;
+		energyUse.batteryKWhSinceLastState = batteryKWhSinceLastState[stepID];
+		energyUse.batteryKWhSinceTripStart = batteryKWhSinceTripStart[stepID];
+		energyUse.fuelUseSinceLastState = fuelUseSinceLastState[stepID];
+		energyUse.fuelUseSinceTripStart = fuelUseSinceTripStart[stepID];
+
+		FSJVehState.InstPowerInfo instPower = vehState.instPower;
+		instPower.dragKW = dragKW[stepID];
+		instPower.ascentKW = ascentKW[stepID];
+		instPower.rollResKW = rollResKW[stepID];
+		instPower.accelKW = accelKW[stepID];
+		instPower.auxKW = auxKW[stepID];
+		instPower.fricBrakeKW = fricBrakeKW[stepID];
+		instPower.regenKW = regenKW[stepID];
+		instPower.fcPowerOut = fcPowerOut[stepID];
+		instPower.fcPowerIn = fcPowerIn[stepID];
+		instPower.fcEffn = fcEffn[stepID];
+		instPower.mtPowerOut = mtPowerOut[stepID];
+		instPower.mtPowerIn = mtPowerIn[stepID];
+		instPower.mtEffn = mtEffn[stepID];
+	}
+
+	//Function to re-create an array of vehicle state objects (one per time step), with links copied from a template state
+	// Note: the per-step fuel converter load histogram is not recorded, all returned objects carry a copy of the template's histogram
+	public FSJVehState[] toVehStates(FSJVehState template) {
+		FSJVehState[] arr = new FSJVehState[numSteps];
+		for (int i=0; i<arr.length; i++) {
+			arr[i] = new FSJVehState(template);
+			copyStepInto(i, arr[i]);
+		}
+		return arr;
+	}
+
+	//Function to return a comma-separated string of all values at a given time step (same order as FSJVehState.HeaderString)
+	public String stepString(int stepID) {
+		return ""+secSinceTripStart[stepID]+","+deltaSecFromLastState[stepID]+","+secFuelConvOn[stepID]+","+secFuelConvOff[stepID]
+				+","+prevSpeedMPH[stepID]+","+prevSpeedMS[stepID]+","+curDesiredSpeedMPH[stepID]
+				+","+achCurSpeedMPH[stepID]+","+achCurSpeedMS[stepID]
+				+","+curSpeedSlipMPH[stepID]+","+curRoadGrade[stepID]
+				+","+metersFromLastState[stepID]+","+milesSinceStart[stepID]
+				+","+swingKWh[stepID]+","+relSoC[stepID]+","+absSoC[stepID]
+				+","+batteryKWhSinceLastState[stepID]+","+batteryKWhSinceTripStart[stepID]
+				+","+fuelUseSinceLastState[stepID]+","+fuelUseSinceTripStart[stepID]
+				+","+dragKW[stepID]+","+ascentKW[stepID]+","+rollResKW[stepID]+","+accelKW[stepID]+","+auxKW[stepID]+","+
+				fricBrakeKW[stepID]+","+regenKW[stepID]+","+fcPowerOut[stepID]+","+fcPowerIn[stepID]+","+fcEffn[stepID]
+				+","+mtPowerOut[stepID]+","+mtPowerIn[stepID]+","+mtEffn[stepID];
+	}
+
+	//Utility function to save the record to file (same format as FSJVehState.saveArrayToFile)
+	public void saveToFile(String fname) {
+		try {
+			FileWriter fWriter = new FileWriter(fname);
+			String lsep = System.getProperty("line.separator");
+
+			fWriter.append(FSJVehState.HeaderString);
+			fWriter.append(lsep);
+
+			for (int i=0; i<numSteps; i++) {
+				fWriter.append(stepString(i));
+				fWriter.append(lsep);
+			}
+
+			fWriter.flush();
+			fWriter.close();
+		} catch (Exception e) {}
+	}
+}
@@ -0,0 +1,334 @@
+package fastsimjava.components;
+
+import fastsimjava.FSJVehModelParam;
+
+//Immutable set of per-vehicle constants used at every time step of the simulation, flattened from the vehicle model parameters,
+// simulation constants and three-parameter tuning when the vehicle model is set (so later changes to those objects are not seen)
+// Note: products are pre-computed only where they are evaluated first in the original expressions (so results are unchanged)
+public class FSJVehKernel {
+	//Vehicle type information
+	public final FSJVehModelParam.VehicleDriveTrainType vehPtType;
+	public final FSJVehModelParam.FuelConverterEffType fcEffType;
+	public final FSJVehModelParam.HybridDriveType hybridDriveType;
+	public final boolean overrideMaxEsskw;
+
+	//Road load constants
+	public final float dragKWCoef;			//0.5*airDensity*dragCoef*frontalAreaM2
+	public final float dragKWDerivCoef;		//0.75*airDensity*dragCoef*frontalAreaM2 (for derivative of drag power w.r.t. speed)
+	public final float baseMassKg;			//Vehicle total mass + added mass from three-parameter tuning
+	public final float halfWheelsKgM2;		//0.5*inertia of all wheels
+	public final float wheelsEquivKg;		//Equivalent mass of wheel inertia (inertia / wheel radius squared)
+	public final float wheelRadiusM, wheelRrCoeff, gravity;
+	public final float maxAccelMS2, maxDecelMS2;
+
+	//Drive-train constants
+	public final float transEff, maxRegen, fixedAuxKW, driveEnergyMod;
+	public final float maxMotorKw, motorSecsToPeakPwr, maxFuelConvKw, fuelConvSecsToPeakPwr;
+
+	//Battery constants
+	public final float essChgDischgEffn, maxEssKw, maxEssKwh, maxSoCBatterySwing, batterySwingKWh;
+
+	//Energy content of fuel per unit (in kW-sec)
+	public final float fuelKWsPerUnit;
+
+	//Constructor
+	public FSJVehKernel(FSJSimConstants simConsts, FSJVehModelParam vehModel, FSJVehState.ThreeParTuning tpt) {
+		vehPtType = vehModel.general.vehPtType;
+		fcEffType = vehModel.fuelConv.fcEffType;
+		hybridDriveType = vehModel.general.hybridDriveType;
+		overrideMaxEsskw = vehModel.battery.overrideMaxEsskw;
+
+		dragKWCoef = 0.5f*simConsts.airDensity*vehModel.general.dragCoef*vehModel.general.frontalAreaM2;
+		dragKWDerivCoef = 0.75f*simConsts.airDensity*vehModel.general.dragCoef*vehModel.general.frontalAreaM2;
+		baseMassKg = vehModel.massProp.totalKg + tpt.addMass;
+		halfWheelsKgM2 = 0.5f*vehModel.massProp.allWheelsKgM2;
+		wheelRadiusM = vehModel.wheels.wheelRadiusM;
+		wheelsEquivKg = vehModel.massProp.allWheelsKgM2/(wheelRadiusM*wheelRadiusM);
+		wheelRrCoeff = vehModel.wheels.wheelRrCoeff;
+		gravity = simConsts.gravity;
+		maxAccelMS2 = vehModel.wheels.wheelCoeffOfFric*vehModel.general.driveAxleWeightFrac*simConsts.gravity/
+				(1f + (vehModel.general.vehCgM*vehModel.wheels.wheelCoeffOfFric/vehModel.general.wheelBaseM));
+		maxDecelMS2 = vehModel.wheels.wheelCoeffOfFric*simConsts.gravity;
+
+		transEff = vehModel.transmission.transEff;
+		maxRegen = vehModel.transmission.maxRegen;
+		fixedAuxKW = tpt.addAux + vehModel.transmission.auxKw;
+		driveEnergyMod = tpt.adjDEMult;
+		maxMotorKw = vehModel.motor.maxMotorKw;
+		motorSecsToPeakPwr = vehModel.motor.motorSecsToPeakPwr;
+		maxFuelConvKw = vehModel.fuelConv.maxFuelConvKw;
+		fuelConvSecsToPeakPwr = vehModel.fuelConv.fuelConvSecsToPeakPwr;
+
+		essChgDischgEffn = (float)Math.sqrt(vehModel.battery.essRoundTripEff);
+		maxEssKw = vehModel.battery.maxEssKw;
+		maxEssKwh = vehModel.battery.maxEssKwh;
+		maxSoCBatterySwing = vehModel.chargeControl.maxSoCBatterySwing;
+		batterySwingKWh = vehModel.batterySwingKWh();
+
+		switch (fcEffType) {
+		case fuelCell:
+			//Conventional vehicles have no fuel cell option, and had always been evaluated in gallons of gasoline equivalent
+			if (vehPtType == FSJVehModelParam.VehicleDriveTrainType.cv) fuelKWsPerUnit = 3600f*simConsts.kWhPerGGE;
+			else fuelKWsPerUnit = 3600f*simConsts.h2KWhPerKg;
+			break;
+		case diesel:
+		case hybridDiesel:
+			fuelKWsPerUnit = 3600f*simConsts.kWhPerGalDiesel;
+			break;
+		case cng:
+			fuelKWsPerUnit = 3600f*simConsts.cngKWhPerM3;
+			break;
+		default:
+			fuelKWsPerUnit = 3600f*simConsts.kWhPerGGE;
+			break;
+		}
+	}
+
+
+	//Step math shared by FSJVehState and FASTSimJ3cLanes (one implementation of each expression, so both give the same results)
+
+	//Holder of the road load terms at the achieved speed of a time step
+	public static class RoadLoad {
+		public float dragKW, accelKW, ascentKW, rollResKW;
+
+		//Function to calculate all terms at a given speed
+		public void set(FSJVehKernel k, float prevSpeedMS, float speedMS, float headWindMS, float roadGradeSin, float deltaSec, float addPayloadKg) {
+			dragKW = dragKW(k, prevSpeedMS+headWindMS, speedMS+headWindMS);
+			accelKW = accelAndInertiaKW(k, prevSpeedMS, speedMS, deltaSec, addPayloadKg);
+			ascentKW = ascentKW(k, roadGradeSin, prevSpeedMS, speedMS, addPayloadKg);
+			rollResKW = rollResKW(k, prevSpeedMS, speedMS, addPayloadKg);
+		}
+		//Power required to the wheels
+		public float sumKW(float driveEnergyMod) {
+			return driveEnergyMod*(dragKW+accelKW+ascentKW+rollResKW);
+		}
+	}
+	//Holder of the drive-train power flows of a time step (conventional vehicles and BEVs)
+	public static class DriveFlows {
+		public float fricBrakeKW, regenKW, fcPowerOut, fcPowerIn, fcEffn, mtPowerOut, mtPowerIn, mtEffn, essKWOut;
+		public float fuelUse, batteryKWh;
+
+		private void reset() {
+			fricBrakeKW = 0f;
+			regenKW = 0f;
+			fcPowerOut = 0f;
+			fcPowerIn = 0f;
+			fcEffn = 0f;
+			mtPowerOut = 0f;
+			mtPowerIn = 0f;
+			mtEffn = 0f;
+			essKWOut = 0f;
+			fuelUse = 0f;
+			batteryKWh = 0f;
+		}
+	}
+
+	//Function for the target speed, constrained by tire slip limits
+	public static float targetSpeedMS(float prevSpeedMS, float desiredMS, float deltaSec, float maxAccelMS2, float maxDecelMS2) {
+		float targetSpeedMS = desiredMS;
+		float maxMSIncrease = deltaSec*maxAccelMS2;
+		if (targetSpeedMS > prevSpeedMS+maxMSIncrease) targetSpeedMS = prevSpeedMS+maxMSIncrease;
+		float maxMSDecrease = deltaSec*maxDecelMS2;
+		if (targetSpeedMS < prevSpeedMS-maxMSDecrease) targetSpeedMS = prevSpeedMS-maxMSDecrease;
+		return targetSpeedMS;
+	}
+	//Function for the limit on fuel converter power output (before any modifier), given its output in the last time step
+	public static float maxFuelConvKWOut(FSJVehKernel k, float fcPowerOut, float deltaSec) {
+		return Math.min(k.maxFuelConvKw, fcPowerOut + deltaSec*k.maxFuelConvKw/k.fuelConvSecsToPeakPwr);
+	}
+	//Function for the limit on motor power output, given its output in the last time step
+	public static float maxMotorKWOut(FSJVehKernel k, float mtPowerOut, float deltaSec) {
+		return Math.min(k.maxMotorKw, Math.max(0, mtPowerOut)+(deltaSec*k.maxMotorKw/k.motorSecsToPeakPwr));
+	}
+	// ...BEV version, also limited by battery power (unless overridden)
+	public static float bevMaxMotorKWOut(FSJVehKernel k, FSJMotor motor, float mtPowerOut, float totalAuxKW, float deltaSec) {
+		float maxKWFromEssToMotor = k.maxEssKw*k.essChgDischgEffn - totalAuxKW;
+		float maxMotorKWOut = maxMotorKWOut(k, mtPowerOut, deltaSec);
+		if (!k.overrideMaxEsskw) {
+			float maxMotorOutKWForMaxEssOutKW = motor.outputPowerKW(maxKWFromEssToMotor);
+			maxMotorKWOut = Math.min(maxMotorKWOut, maxMotorOutKWForMaxEssOutKW);
+		}
+		return maxMotorKWOut;
+	}
+	//Function for the limit on battery charging power (positive value)
+	public static float maxKWEssCharging(FSJVehKernel k, float absSoC, float deltaSec) {
+		return (1f/k.essChgDischgEffn)*Math.min(k.maxEssKw, (k.maxSoCBatterySwing - absSoC)*k.maxEssKwh*3600f/deltaSec);
+	}
+	//Function for calculation of percentage regenerative breaking
+	public static float maxContrLimPercentRegen(float maxRegenFrac, float mph) {
+		float a = 500f;
+		float b = 0.99f;
+		return maxRegenFrac/(1f+a*(float)Math.exp(-b*(1f+mph)));
+	}
+	//Function for the tolerance on achievable speed
+	public static float achSpeedTolMS(FSJSimConstants simConsts) {
+		if (simConsts.achSpeedTolMS <= 0) return FSJSimConstants.Default_AchSpeedTolMS;
+		return simConsts.achSpeedTolMS;
+	}
+
+	//Function for the achieved speed of a time step (target speed, or lower if the power requirement
+	// offsetKW + driveEnergyMod*roadLoadKW/transEff exceeds maxKW), with road load terms at that speed returned in roadLoad
+	public static float achievedSpeedMS(FSJVehKernel k, float tolMS, float prevSpeedMS, float targetSpeedMS, float maxKW, float offsetKW,
+			float driveEnergyMod, float headWindMS, float roadGradeSin, float deltaSec, float addPayloadKg, RoadLoad roadLoad) {
+		float zeroSpeedTol = 0.001f;
+		float achSpeedMS = targetSpeedMS;
+		
+		roadLoad.set(k, prevSpeedMS, achSpeedMS, headWindMS, roadGradeSin, deltaSec, addPayloadKg);
+		if (offsetKW + roadLoad.sumKW(driveEnergyMod)/k.transEff > maxKW) {
+			achSpeedMS = solveAchievableSpeedMS(k, tolMS, prevSpeedMS, targetSpeedMS, maxKW, offsetKW, driveEnergyMod, headWindMS,
+					roadGradeSin, deltaSec, addPayloadKg);
+			roadLoad.set(k, prevSpeedMS, achSpeedMS, headWindMS, roadGradeSin, deltaSec, addPayloadKg);
+		}
+		
+		//Remove effect of drag if vehicle is stopped
+		if (achSpeedMS < zeroSpeedTol) {
+			achSpeedMS = 0f;
+			roadLoad.dragKW = 0f;
+			roadLoad.accelKW = accelAndInertiaKW(k, prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
+			roadLoad.ascentKW = ascentKW(k, roadGradeSin, prevSpeedMS, achSpeedMS, addPayloadKg);
+			roadLoad.rollResKW = rollResKW(k, prevSpeedMS, achSpeedMS, addPayloadKg);
+		}
+		return achSpeedMS;
+	}
+	//Function for finding the highest achievable speed (not above target speed) at which the power requirement
+	// (offsetKW + driveEnergyMod*roadLoadKW/transEff) does not exceed maxKW, given that it is exceeded at the target speed
+	// Note: the road load is convex in speed (for non-negative speeds), so Newton steps taken from above the solution
+	//       never overshoot it by more than the minimum step, and the result is within the tolerance below the exact solution
+	public static float solveAchievableSpeedMS(FSJVehKernel k, float tolMS, float prevSpeedMS, float targetSpeedMS, float maxKW, float offsetKW,
+			float driveEnergyMod, float headWindMS, float roadGradeSin, float deltaSec, float addPayloadKg) {
+		int maxNewtonIter = 20;
+		float minStepMS = 0.01f*tolMS;
+		
+		float speedMS = targetSpeedMS;
+		float excessKW = reqKW(k, prevSpeedMS, speedMS, offsetKW, driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg) - maxKW;
+		int nIter = 0;
+		
+		while (excessKW > 0) {
+			//No solution at lower speeds if the requirement does not increase with speed
+			float slopeKWperMS = driveEnergyMod*roadLoadDerivative(k, prevSpeedMS, speedMS, headWindMS, roadGradeSin, deltaSec, addPayloadKg)/k.transEff;
+			if (slopeKWperMS <= 0) return 0f;
+			
+			//Newton step, with minimum step size (which becomes the tolerance if Newton iterations are slow to converge)
+			nIter++;
+			if (nIter > maxNewtonIter) minStepMS = tolMS;
+			speedMS = speedMS - Math.max(excessKW/slopeKWperMS, minStepMS);
+			if (speedMS < 0) return 0f;
+			
+			excessKW = reqKW(k, prevSpeedMS, speedMS, offsetKW, driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg) - maxKW;
+		}
+		return speedMS;
+	}
+	//Function for calculating power requirement at a given speed
+	public static float reqKW(FSJVehKernel k, float prevSpeedMS, float speedMS, float offsetKW, float driveEnergyMod, float headWindMS,
+			float roadGradeSin, float deltaSec, float addPayloadKg) {
+		float dragPowerKW = dragKW(k, prevSpeedMS+headWindMS, speedMS+headWindMS);
+		float accelPowerKW = accelAndInertiaKW(k, prevSpeedMS, speedMS, deltaSec, addPayloadKg);
+		float ascentKW = ascentKW(k, roadGradeSin, prevSpeedMS, speedMS, addPayloadKg);
+		float rollResKW = rollResKW(k, prevSpeedMS, speedMS, addPayloadKg);
+		return offsetKW + driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/k.transEff;
+	}
+	//Function for calculating derivative of the road load (drag + acceleration + ascent + rolling resistance) w.r.t. speed
+	public static float roadLoadDerivative(FSJVehKernel k, float prevSpeedMS, float speedMS, float headWindMS, float roadGradeSin,
+			float deltaSec, float addPayloadKg) {
+		float avNetSpeed = 0.5f*(prevSpeedMS + speedMS) + headWindMS;
+		float dDrag = k.dragKWDerivCoef*avNetSpeed*avNetSpeed/1000f;
+		
+		float totalKg = k.baseMassKg + addPayloadKg;
+		float dAccel = (k.wheelsEquivKg + totalKg)*speedMS/(deltaSec*1000f);
+		
+		float dAscent = 0.5f*totalKg*k.gravity*roadGradeSin/1000f;
+		float dRollRes = 0.5f*k.gravity*totalKg*k.wheelRrCoeff/1000f;
+		
+		return dDrag + dAccel + dAscent + dRollRes;
+	}
+
+	//Function for calculating drag power
+	public static float dragKW(FSJVehKernel k, float prevNetSpeedMS, float netSpeedMS) {
+		float avSpeed = 0.5f*(prevNetSpeedMS + netSpeedMS);
+		return k.dragKWCoef*avSpeed*avSpeed*avSpeed/1000f;
+	}
+	//Function for calculating acceleration and wheel inertia power
+	public static float accelAndInertiaKW(FSJVehKernel k, float prevSpeedMS, float targetSpeedMS, float deltaSec, float addPayloadKg) {
+		float curWheelRadPS = prevSpeedMS/k.wheelRadiusM;
+		float reqWheelRadPS = targetSpeedMS/k.wheelRadiusM;
+		float inertiaKW = k.halfWheelsKgM2*
+				(reqWheelRadPS*reqWheelRadPS - curWheelRadPS*curWheelRadPS)/(deltaSec*1000f);
+		
+		float accelKW = 0.5f*(k.baseMassKg + addPayloadKg)*
+				(targetSpeedMS*targetSpeedMS - prevSpeedMS*prevSpeedMS)/(deltaSec*1000f);
+		return inertiaKW+accelKW;
+	}
+	//Function for calculating road grade power (given sine of the road angle)
+	public static float ascentKW(FSJVehKernel k, float roadGradeSin, float prevSpeedMS, float targetSpeedMS, float addPayloadKg) {
+		float avSpeed = 0.5f*(prevSpeedMS+targetSpeedMS);
+		return (k.baseMassKg + addPayloadKg)*k.gravity*roadGradeSin*avSpeed/1000f;
+	}
+	//Function for calculating tire rolling resistance
+	public static float rollResKW(FSJVehKernel k, float prevSpeedMS, float targetSpeedMS, float addPayloadKg) {
+		float avSpeed = 0.5f*(prevSpeedMS+targetSpeedMS);
+		return k.gravity*(k.baseMassKg + addPayloadKg)*k.wheelRrCoeff*avSpeed/1000f;
+	}
+
+	//Function for the power flows of a conventional vehicle, given the power required to the wheels
+	public static void cvDriveFlows(FSJVehKernel k, FSJFuelConverter fuelConv, float sumKWReqToWheel, float totalAuxKW, float fcMod,
+			float deltaSec, DriveFlows flows) {
+		flows.reset();
+		
+		//Power required from the engine and/or breaks
+		if (sumKWReqToWheel < 0) {
+			flows.fricBrakeKW = -sumKWReqToWheel;
+			flows.fcPowerOut = totalAuxKW;
+		} else {
+			flows.fcPowerOut = totalAuxKW + sumKWReqToWheel/k.transEff;
+		}
+		
+		//Required input power, efficiency and fuel amount
+		flows.fcPowerIn = fuelConv.inputPowerKW(flows.fcPowerOut/fcMod);
+		flows.fcEffn = flows.fcPowerOut/flows.fcPowerIn;
+		flows.fuelUse = flows.fcPowerIn*deltaSec/k.fuelKWsPerUnit;	//Energy content per unit of fuel depends on fuel converter type
+	}
+	//Function for the power flows of a BEV, given the power required to the wheels
+	public static void bevDriveFlows(FSJVehKernel k, FSJMotor motor, float sumKWReqToWheels, float totalAuxKW, float absSoC,
+			float prevSpeedMPH, float achSpeedMS, float deltaSec, DriveFlows flows) {
+		float zeroPowerTol = 0.00001f;
+		float essChgDischgEffn = k.essChgDischgEffn;
+		flows.reset();
+		
+		if (sumKWReqToWheels > 0f) {
+			//Driving
+			flows.mtPowerOut = sumKWReqToWheels/k.transEff;
+			flows.mtPowerIn = motor.inputPowerKW(flows.mtPowerOut);
+			if (flows.mtPowerIn > 0) flows.mtEffn = flows.mtPowerOut/flows.mtPowerIn;
+			flows.essKWOut = (flows.mtPowerIn + totalAuxKW)/essChgDischgEffn;
+			
+		} else if (sumKWReqToWheels < -zeroPowerTol) {
+			//Breaking
+			float maxKWEssCharging = maxKWEssCharging(k, absSoC, deltaSec);	//Positive value
+			float maxMechanicalRegenKWintoMotor = motor.inputPowerKW(Math.min(maxKWEssCharging, k.maxMotorKw));	//Positive value
+			float percentRegen = maxContrLimPercentRegen(k.maxRegen, 
+					0.5f*(prevSpeedMPH+achSpeedMS*FSJSimConstants.mphPerMps));		//Positive value
+			
+			float breakingKW = -sumKWReqToWheels;	//Positive value because request to wheels is negative
+			float mechRegenKW = percentRegen*breakingKW*k.transEff;
+			mechRegenKW = Math.min(mechRegenKW, maxMechanicalRegenKWintoMotor);
+			
+			flows.fricBrakeKW = breakingKW - mechRegenKW/k.transEff;
+			flows.regenKW = motor.outputPowerKW(mechRegenKW);
+			
+			flows.mtPowerIn = mechRegenKW;
+			flows.mtPowerOut = flows.regenKW;
+			if (flows.mtPowerIn > 0) flows.mtEffn = flows.mtPowerOut/flows.mtPowerIn;
+		
+			flows.essKWOut = -(flows.regenKW-totalAuxKW)*essChgDischgEffn;	
+		} else {
+			//Zero power for the drive
+			flows.essKWOut = totalAuxKW/essChgDischgEffn;
+		}
+		flows.batteryKWh = flows.essKWOut*deltaSec/3600f;
+	}
+	
+	//Function for the distance travelled in a time step
+	public static float metersTravelled(float prevSpeedMS, float achSpeedMS, float deltaSec) {
+		return 0.5f*(prevSpeedMS+achSpeedMS)*deltaSec;
+	}
+}
@@ -32,6 +32,15 @@ public class FSJVehState {
 
 	//Three Parameter Tuning
 	private ThreeParTuning tpt;
+	public ThreeParTuning tpt() {return tpt;}
+	
+	//Constants used at every time step (flattened from the above when the vehicle model is set)
+	private FSJVehKernel kernel;
+	public FSJVehKernel kernel() {return kernel;}
+	
+	//Scratch holders for the step math (created at the first time step, not shared between copies)
+	private FSJVehKernel.RoadLoad stepRoadLoad;
+	private FSJVehKernel.DriveFlows stepFlows;
 	
 	//Data Objects
 	public TimeInfo time;
@@ -54,6 +63,7 @@ public class FSJVehState {
 		fuelConv = other.fuelConv;
 		motor = other.motor;
 		tpt = other.tpt;
+		kernel = other.kernel;
 		
 		//Use copy constructor of data objects
 		time = new TimeInfo(other.time);
@@ -73,12 +83,16 @@ public class FSJVehState {
 		vehModel = vModel;
 		
 		//Create fuel converter and electric motor models
-		fuelConv = new FSJFuelConverter(vehModel, curveMan);
-		motor = new FSJMotor(vehModel, curveMan);
+		//	(shared read-only with other vehicle states of the same curves, power and look-up resolution)
+		fuelConv = FSJEffCurvesLibrary.shared().fuelConverter(vehModel, curveMan, simConsts.effLookupNumPoints);
+		motor = FSJEffCurvesLibrary.shared().motor(vehModel, curveMan, simConsts.effLookupNumPoints);
 		
 		//Create Three-Parameter Tuning Object
 		tpt = new ThreeParTuning(addMass, addAux, adjDEMult);
 		
+		//Create the kernel of per-vehicle constants
+		kernel = new FSJVehKernel(simConsts, vehModel, tpt);
+		
 		//Create data objects
 		time = new TimeInfo();
 		motion = new MotionInfo();
@@ -184,9 +198,8 @@ public class FSJVehState {
 			milesSinceStart = 0f;
 
 			//Constants (calculated only once)
-			maxAccelMS2 = vehModel.wheels.wheelCoeffOfFric*vehModel.general.driveAxleWeightFrac*simConsts.gravity/
-					(1f + (vehModel.general.vehCgM*vehModel.wheels.wheelCoeffOfFric/vehModel.general.wheelBaseM));
-			maxDecelMS2 = vehModel.wheels.wheelCoeffOfFric*simConsts.gravity;
+			maxAccelMS2 = kernel.maxAccelMS2;
+			maxDecelMS2 = kernel.maxDecelMS2;
 		}
 		@Override public String toString() {
 			return ""+prevSpeedMPH+","+prevSpeedMS+","+curDesiredSpeedMPH
@@ -350,26 +363,36 @@ public class FSJVehState {
 
 	//Function to advance to next state
 	public void updateState(float nextTimeSec, float desiredMPH, float roadGrade, float oAux, FSJHybridPowerManagerBase hybPwrMgr, float addPayloadKg) {
-		switch (vehModel.general.vehPtType) {
+		updateState(nextTimeSec, desiredMPH, desiredMPH/FSJSimConstants.mphPerMps, roadGrade, FSJTripInput.gradeSin(roadGrade), oAux, hybPwrMgr, addPayloadKg);
+	}
+	// ...version with pre-processed desired speed in m/s and sine of road angle (e.g. from FSJTripInput)
+	public void updateState(float nextTimeSec, float desiredMPH, float desiredMS, float roadGrade, float roadGradeSin, float oAux, 
+			FSJHybridPowerManagerBase hybPwrMgr, float addPayloadKg) {
+		if (stepRoadLoad == null) {
+			stepRoadLoad = new FSJVehKernel.RoadLoad();
+			stepFlows = new FSJVehKernel.DriveFlows();
+		}
+		
+		switch (kernel.vehPtType) {
 		case bev:
-			updateState_bev(nextTimeSec, desiredMPH, roadGrade, oAux, addPayloadKg);
+			updateState_bev(nextTimeSec, desiredMPH, desiredMS, roadGrade, roadGradeSin, oAux, addPayloadKg);
 			break;
 		case cv:
-			updateState_cv(nextTimeSec, desiredMPH, roadGrade, oAux, addPayloadKg);
+			updateState_cv(nextTimeSec, desiredMPH, desiredMS, roadGrade, roadGradeSin, oAux, addPayloadKg);
 			break;
 		case hev:
 		case phev:
-			updateState_hev(nextTimeSec, desiredMPH, roadGrade, oAux, hybPwrMgr, addPayloadKg);
+			updateState_hev(nextTimeSec, desiredMPH, desiredMS, roadGrade, roadGradeSin, oAux, hybPwrMgr, addPayloadKg);
 			break;
 		}
 	}
 	
 	//Hybrid or Plug-in Hybrid vehicles (including FC-HEV & FC-PHEV)
-	private void updateState_hev(float nextTimeSec, float desiredMPH, float roadGrade, float oAux, FSJHybridPowerManagerBase hybPwrMgr, float addPayloadKg) {
+	private void updateState_hev(float nextTimeSec, float desiredMPH, float desiredMS, float roadGrade, float roadGradeSin, float oAux, 
+			FSJHybridPowerManagerBase hybPwrMgr, float addPayloadKg) {
 		//Note: Fuel converter starts off at the beginning of the trip (when reset all but SOC is invoked)
 		
 		//Constants for calculation tuning
-		float achSpeedMSStep = 0.01f;
 		float zeroSpeedTol = 0.001f;
 		float fuelUseTol = 0.000001f;
 		float drivePowerTol = 0.00001f;
@@ -379,15 +402,12 @@ public class FSJVehState {
 		
 		//Get modifier values from add-ons and environmental conditions
 		float headWindMPH = 0f;	//Place-holder that allows future updates to include the effect of head-winds
-		float additionalAuxKW = tpt.addAux;
-		float essMod = 1.0f;
 		float fcMod = 1.0f;
-		float airDensModifier = 1.0f;
-		float driveEnergyMod = tpt.adjDEMult;
+		float driveEnergyMod = kernel.driveEnergyMod;
 				
 		float headWindMS = headWindMPH/FSJSimConstants.mphPerMps;
-		float totalAuxKW = additionalAuxKW + vehModel.transmission.auxKw + oAux;
-		float essChgDischgEffn = essMod*(float)Math.sqrt(vehModel.battery.essRoundTripEff);
+		float totalAuxKW = kernel.fixedAuxKW + oAux;
+		float essChgDischgEffn = kernel.essChgDischgEffn;
 		
 		//Update time and motion objects
 		time.secSinceTripStart = nextTimeSec;
@@ -405,26 +425,19 @@ public class FSJVehState {
 		motion.curDesiredSpeedMPH = desiredMPH;
 		
 		//Target speed, constrained by tire slip limits
-		float targetSpeedMS = desiredMPH/FSJSimConstants.mphPerMps;
-		float maxMSIncrease = deltaSec*motion.maxAccelMS2;
-		if (targetSpeedMS > motion.prevSpeedMS+maxMSIncrease) targetSpeedMS = motion.prevSpeedMS+maxMSIncrease;
-		float maxMSDecrease = deltaSec*motion.maxDecelMS2;
-		if (targetSpeedMS < motion.prevSpeedMS-maxMSDecrease) targetSpeedMS = motion.prevSpeedMS-maxMSDecrease;
-
+		float targetSpeedMS = FSJVehKernel.targetSpeedMS(motion.prevSpeedMS, desiredMS, deltaSec, motion.maxAccelMS2, motion.maxDecelMS2);
 		
 		//Limit for maximum driving power output (before transmission) -- Note: not using minimum SoC as a limiter
-		float maxMotorKWOut = Math.min(vehModel.motor.maxMotorKw, 
-				Math.max(0, instPower.mtPowerOut)+(deltaSec*vehModel.motor.maxMotorKw/vehModel.motor.motorSecsToPeakPwr));
-		float maxFCKWout = fcMod*Math.min(vehModel.fuelConv.maxFuelConvKw, 
-				instPower.fcPowerOut + deltaSec*vehModel.fuelConv.maxFuelConvKw/vehModel.fuelConv.fuelConvSecsToPeakPwr);
-		float maxKWFromEss = vehModel.battery.maxEssKw*essChgDischgEffn;
+		float maxMotorKWOut = FSJVehKernel.maxMotorKWOut(kernel, instPower.mtPowerOut, deltaSec);
+		float maxFCKWout = fcMod*FSJVehKernel.maxFuelConvKWOut(kernel, instPower.fcPowerOut, deltaSec);
+		float maxKWFromEss = kernel.maxEssKw*essChgDischgEffn;
 		float maxDriveKWpreTrnsm = 0f;
 		
 		boolean isInChargeSustain = hybPwrMgr.isInChargeSustain(this);
 		
-		switch (vehModel.fuelConv.fcEffType) {
+		switch (kernel.fcEffType) {
 		case fuelCell:	//Fuel Cell
-			switch (vehModel.general.hybridDriveType) {
+			switch (kernel.hybridDriveType) {
 			case parallelWAccelAssistInChDepletion:	//Fuel cell can assist with additional power if battery kW is lower than what the motor needs
 				maxKWFromEss += maxFCKWout - totalAuxKW/essChgDischgEffn;	//Total available electric power that can be directed to the motor
 				maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
@@ -444,20 +457,20 @@ public class FSJVehState {
 			}
 			break;
 		default:	//Not Fuel Cell
-			switch (vehModel.general.hybridDriveType) {
+			switch (kernel.hybridDriveType) {
 			case parallelWAccelAssistInChDepletion:
 				maxKWFromEss += -totalAuxKW/essChgDischgEffn;
-				if (!vehModel.battery.overrideMaxEsskw) maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
+				if (!kernel.overrideMaxEsskw) maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
 				maxDriveKWpreTrnsm = maxMotorKWOut + maxFCKWout;
 				break;
 			case parallelNoAccelAssistInChDepletion:
 				if (isInChargeSustain) {	//Engine assists only if not in charge depletion mode
 					maxKWFromEss += -totalAuxKW/essChgDischgEffn;
-					if (!vehModel.battery.overrideMaxEsskw) maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
+					if (!kernel.overrideMaxEsskw) maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
 					maxDriveKWpreTrnsm = maxMotorKWOut + maxFCKWout;
 					
 				} else {	//Vehicle is in charge depletion mode, engine will not assist
-					if (!vehModel.battery.overrideMaxEsskw) {
+					if (!kernel.overrideMaxEsskw) {
 						maxKWFromEss +=  -totalAuxKW/essChgDischgEffn;
 						maxMotorKWOut = Math.min(maxMotorKWOut, motor.outputPowerKW(maxKWFromEss));
 						maxDriveKWpreTrnsm = maxMotorKWOut;
@@ -465,7 +478,7 @@ public class FSJVehState {
 				}
 				break;
 			case serial:
-				if (!vehModel.battery.overrideMaxEsskw) {	//If battery capability override not in effect, adjust maximum motor power by what the battery+engine can provide
+				if (!kernel.overrideMaxEsskw) {	//If battery capability override not in effect, adjust maximum motor power by what the battery+engine can provide
 					if (isInChargeSustain) {	//Engine assists only if not in charge depletion mode (some fuel already used)
 						maxKWFromEss += maxFCKWout - totalAuxKW/essChgDischgEffn;	//Total available electric power that can be directed to the motor
 					} else {	//Vehicle is in charge depletion mode, engine will not assist
@@ -480,44 +493,13 @@ public class FSJVehState {
 			break;		
 		}
 		
-		//Iterate to identify achievable speed
-		float achSpeedMS = targetSpeedMS;
-		
-		float dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-				simConsts.airDensity*airDensModifier);
-		float accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-		float ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		float rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		
-		float totalReqDriveKWpreTrnsm = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-
-		while (totalReqDriveKWpreTrnsm > maxDriveKWpreTrnsm) {
-			achSpeedMS = achSpeedMS - achSpeedMSStep;
-			if (achSpeedMS < 0) {
-				achSpeedMS = 0f;
-				break;
-			}
-		
-			dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-					simConsts.airDensity*airDensModifier);
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			
-			totalReqDriveKWpreTrnsm = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-		}
-		
-		//Remove effect of drag if vehicle is stopped
-		if (achSpeedMS < zeroSpeedTol) {
-			achSpeedMS = 0f;
-			dragPowerKW = 0f;
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		}
+		//Solve for achievable speed
+		FSJVehKernel.RoadLoad roadLoad = stepRoadLoad;
+		float achSpeedMS = FSJVehKernel.achievedSpeedMS(kernel, FSJVehKernel.achSpeedTolMS(simConsts), motion.prevSpeedMS, targetSpeedMS, 
+				maxDriveKWpreTrnsm, 0f, driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg, roadLoad);
 		
 		//Calculate power required to the wheels
-		float sumKWReqToWheels = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW);
+		float sumKWReqToWheels = roadLoad.sumKW(driveEnergyMod);
 		
 		//Call the Hybrid Power Management Logic to determine how much power is coming from Fuel Converter (and whether it is On) 
 		hybPwrMgr.setCurState(this, achSpeedMS*FSJSimConstants.mphPerMps, sumKWReqToWheels, fcMod, essChgDischgEffn, totalAuxKW);
@@ -536,9 +518,9 @@ public class FSJVehState {
 		
 		if (sumKWReqToWheels > 0f) {
 			//Driving
-			switch (vehModel.fuelConv.fcEffType) {
+			switch (kernel.fcEffType) {
 			case fuelCell:	//Power to wheels comes from the motor
-				motorKWOut = sumKWReqToWheels/vehModel.transmission.transEff;
+				motorKWOut = sumKWReqToWheels/kernel.transEff;
 				motorKWIn = motor.inputPowerKW(motorKWOut);
 				if (motorKWIn > 0) mtEffn = motorKWOut/motorKWIn;
 				
@@ -550,15 +532,14 @@ public class FSJVehState {
 				}					
 				break;
 			default:	//Not fuel cell
-				float driveKWbeforeTransmission = sumKWReqToWheels/vehModel.transmission.transEff;
+				float driveKWbeforeTransmission = sumKWReqToWheels/kernel.transEff;
 				float excessEnginePower = fuelConvKWOut - driveKWbeforeTransmission;	//If this has a positive value, the motor is operating as a generator and battery is being charged if the excess is more than auxillary load
 				
 				if (excessEnginePower > 0) {
 					//motor is operating as a generator and battery (may be) getting charged
-					float maxKWEssCharging = (1f/essChgDischgEffn)*Math.min(vehModel.battery.maxEssKw, 
-							(vehModel.chargeControl.maxSoCBatterySwing - soc.absSoC)*vehModel.battery.maxEssKwh*3600f/deltaSec);
+					float maxKWEssCharging = FSJVehKernel.maxKWEssCharging(kernel, soc.absSoC, deltaSec);
 					float maxMechanicalRegenKWintoMotor = motor.inputPowerKW(Math.min(maxKWEssCharging, 
-							vehModel.motor.maxMotorKw));
+							kernel.maxMotorKw));
 					
 					motorKWIn = Math.min(excessEnginePower, maxMechanicalRegenKWintoMotor);
 					motorKWOut = motor.outputPowerKW(motorKWIn);
@@ -584,17 +565,16 @@ public class FSJVehState {
 			}			
 		} else if (sumKWReqToWheels < -drivePowerTol) {
 			//Breaking
-			float maxKWEssCharging = (1f/essChgDischgEffn)*Math.min(vehModel.battery.maxEssKw, 
-					(vehModel.chargeControl.maxSoCBatterySwing - soc.absSoC)*vehModel.battery.maxEssKwh*3600f/deltaSec);	//Positive Value
-			float maxMechanicalRegenKWintoMotor = motor.inputPowerKW(Math.min(maxKWEssCharging, vehModel.motor.maxMotorKw));	//Positive Value
-			float percentRegen = maxContrLimPercentRegen(vehModel.transmission.maxRegen, 
+			float maxKWEssCharging = FSJVehKernel.maxKWEssCharging(kernel, soc.absSoC, deltaSec);	//Positive Value
+			float maxMechanicalRegenKWintoMotor = motor.inputPowerKW(Math.min(maxKWEssCharging, kernel.maxMotorKw));	//Positive Value
+			float percentRegen = FSJVehKernel.maxContrLimPercentRegen(kernel.maxRegen, 
 					0.5f*(motion.prevSpeedMPH+achSpeedMS*FSJSimConstants.mphPerMps));		//Positive Value
 			
 			float breakingKW = -sumKWReqToWheels;	//Positive Value because request to wheels is negative
-			float mechRegenKW = percentRegen*breakingKW*vehModel.transmission.transEff;
+			float mechRegenKW = percentRegen*breakingKW*kernel.transEff;
 			mechRegenKW = Math.min(mechRegenKW, maxMechanicalRegenKWintoMotor);
 
-			switch (vehModel.fuelConv.fcEffType) {
+			switch (kernel.fcEffType) {
 			case fuelCell:
 				motorKWIn = mechRegenKW;
 				motorKWOut = motor.outputPowerKW(motorKWIn);
@@ -602,7 +582,7 @@ public class FSJVehState {
 				
 				essKWOut = -(motorKWOut+fuelConvKWOut-totalAuxKW)*essChgDischgEffn;
 				
-				fricBreaksKW = breakingKW - mechRegenKW/vehModel.transmission.transEff;
+				fricBreaksKW = breakingKW - mechRegenKW/kernel.transEff;
 				regenKW = motorKWOut;			
 				break;
 			default:	//Not fuel cell
@@ -612,7 +592,7 @@ public class FSJVehState {
 			
 				essKWOut = -(motorKWOut-totalAuxKW)*essChgDischgEffn;			
 				
-				fricBreaksKW = breakingKW - mechRegenKW/vehModel.transmission.transEff;
+				fricBreaksKW = breakingKW - mechRegenKW/kernel.transEff;
 				regenKW = motorKWOut*mechRegenKW/motorKWIn;			
 				break;			
 			}
@@ -620,7 +600,7 @@ public class FSJVehState {
 			//Zero drive power
 			regenKW = 0f;
 			
-			switch (vehModel.fuelConv.fcEffType) {
+			switch (kernel.fcEffType) {
 			case fuelCell:
 				if (fuelConvKWOut > fuelUseTol) {
 					essKWOut = -(fuelConvKWOut-totalAuxKW)*essChgDischgEffn;
@@ -656,42 +636,23 @@ public class FSJVehState {
 			turnFuelConvOff();	//Resets FC tracking timers if first time turning off, otherwise has no effect 
 		}
 		
-		float fuelSinceLastStep = 0f;
-		switch (vehModel.fuelConv.fcEffType) {
-		case fuelCell:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.h2KWhPerKg);
-			break;
-		case diesel:
-		case hybridDiesel:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.kWhPerGalDiesel);
-			break;
-		case cng:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.cngKWhPerM3);
-			break;
-		default:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.kWhPerGGE);
-			break;		
-		}
+		float fuelSinceLastStep = fcConvKWIn*deltaSec/kernel.fuelKWsPerUnit;	//Energy content per unit of fuel depends on fuel converter type
 		
 		//Update Energy use and state of charge
 		energyUse.batteryKWhSinceLastState = essKWOut*deltaSec/3600f;
 		energyUse.batteryKWhSinceTripStart += energyUse.batteryKWhSinceLastState;
-		soc.absSoC += -energyUse.batteryKWhSinceLastState/vehModel.battery.maxEssKwh;
-		soc.relSoC += -energyUse.batteryKWhSinceLastState/vehModel.batterySwingKWh();
+		soc.absSoC += -energyUse.batteryKWhSinceLastState/kernel.maxEssKwh;
+		soc.relSoC += -energyUse.batteryKWhSinceLastState/kernel.batterySwingKWh;
 		energyUse.fuelUseSinceLastState = fuelSinceLastStep;
 		energyUse.fuelUseSinceTripStart += energyUse.fuelUseSinceLastState;
 		
 		//Update data records
-		motion.achCurSpeedMS = achSpeedMS;
-		motion.achCurSpeedMPH = motion.achCurSpeedMS*FSJSimConstants.mphPerMps;
-		motion.curSpeedSlipMPH = motion.curDesiredSpeedMPH - motion.achCurSpeedMPH;
-		motion.metersFromLastState = 0.5f*(motion.prevSpeedMS+motion.achCurSpeedMS)*deltaSec;
-		motion.milesSinceStart += motion.metersFromLastState/FSJSimConstants.metersPerMile;
+		updateMotion(achSpeedMS, deltaSec);
 		
-		instPower.accelKW = accelPowerKW;
-		instPower.dragKW = dragPowerKW;
-		instPower.ascentKW = ascentKW;
-		instPower.rollResKW = rollResKW;
+		instPower.accelKW = roadLoad.accelKW;
+		instPower.dragKW = roadLoad.dragKW;
+		instPower.ascentKW = roadLoad.ascentKW;
+		instPower.rollResKW = roadLoad.rollResKW;
 		instPower.regenKW = regenKW;
 		
 		instPower.auxKW = totalAuxKW;		
@@ -713,29 +674,20 @@ public class FSJVehState {
 	}	
 	
 	//Pure electric vehicles
-	private void updateState_bev(float nextTimeSec, float desiredMPH, float roadGrade, float oAux, float addPayloadKg) {
+	private void updateState_bev(float nextTimeSec, float desiredMPH, float desiredMS, float roadGrade, float roadGradeSin, float oAux, float addPayloadKg) {
 		//Note: No need to ensure fuel converter off since 
 		//	- Initialization (reset all but SOC is invoked) already does that
 		//  - Fuel converter never gets turned on in a BEV
 		
-		//Constants for calculation tuning
-		float achSpeedMSStep = 0.01f;
-		float zeroSpeedTol = 0.001f;
-		float zeroPowerTol = 0.00001f;
-		
 		//Time step
 		float deltaSec = nextTimeSec - time.secSinceTripStart;
 		
 		//Get modifier values from add-ons and environmental conditions
 		float headWindMPH = 0f;
-		float additionalAuxKW = tpt.addAux;
-		float essMod = 1.0f;
-		float airDensModifier = 1.0f;
-		float driveEnergyMod = tpt.adjDEMult;
+		float driveEnergyMod = kernel.driveEnergyMod;
 				
 		float headWindMS = headWindMPH/FSJSimConstants.mphPerMps;
-		float totalAuxKW = additionalAuxKW + vehModel.transmission.auxKw + oAux;
-		float essChgDischgEffn = essMod*(float)Math.sqrt(vehModel.battery.essRoundTripEff);
+		float totalAuxKW = kernel.fixedAuxKW + oAux;
 		
 		//Update time and motion objects
 		time.secSinceTripStart = nextTimeSec;
@@ -748,152 +700,61 @@ public class FSJVehState {
 		motion.curDesiredSpeedMPH = desiredMPH;
 		
 		//Target speed, constrained by tire slip limits
-		float targetSpeedMS = desiredMPH/FSJSimConstants.mphPerMps;
-		float maxMSIncrease = deltaSec*motion.maxAccelMS2;
-		if (targetSpeedMS > motion.prevSpeedMS+maxMSIncrease) targetSpeedMS = motion.prevSpeedMS+maxMSIncrease;
-		float maxMSDecrease = deltaSec*motion.maxDecelMS2;
-		if (targetSpeedMS < motion.prevSpeedMS-maxMSDecrease) targetSpeedMS = motion.prevSpeedMS-maxMSDecrease;
+		float targetSpeedMS = FSJVehKernel.targetSpeedMS(motion.prevSpeedMS, desiredMS, deltaSec, motion.maxAccelMS2, motion.maxDecelMS2);
 				
 		//Limits on motor power
-		float maxKWFromEssToMotor = vehModel.battery.maxEssKw*essChgDischgEffn - totalAuxKW;
-		float maxMotorKWOut = Math.min(vehModel.motor.maxMotorKw, 
-				Math.max(0, instPower.mtPowerOut)+(deltaSec*vehModel.motor.maxMotorKw/vehModel.motor.motorSecsToPeakPwr));
-		if (!vehModel.battery.overrideMaxEsskw) {
-			float maxMotorOutKWForMaxEssOutKW = motor.outputPowerKW(maxKWFromEssToMotor);
-			maxMotorKWOut = Math.min(maxMotorKWOut, maxMotorOutKWForMaxEssOutKW);
-		}
-		
-		//Iterate to identify achievable speed
-		float achSpeedMS = targetSpeedMS;
-		
-		float dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-				simConsts.airDensity*airDensModifier);
-		float accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-		float ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		float rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		
-		float totalReqMotorKWOut = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-		
-		while (totalReqMotorKWOut > maxMotorKWOut) {
-			achSpeedMS = achSpeedMS - achSpeedMSStep;
-			if (achSpeedMS < 0) {
-				achSpeedMS = 0f;
-				break;
-			}
+		float maxMotorKWOut = FSJVehKernel.bevMaxMotorKWOut(kernel, motor, instPower.mtPowerOut, totalAuxKW, deltaSec);
 		
-			dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-					simConsts.airDensity*airDensModifier);
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			
-			totalReqMotorKWOut = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-		}
+		//Solve for achievable speed
+		FSJVehKernel.RoadLoad roadLoad = stepRoadLoad;
+		float achSpeedMS = FSJVehKernel.achievedSpeedMS(kernel, FSJVehKernel.achSpeedTolMS(simConsts), motion.prevSpeedMS, targetSpeedMS, 
+				maxMotorKWOut, 0f, driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg, roadLoad);
 		
-		//Remove effect of drag if vehicle is stopped
-		if (achSpeedMS < zeroSpeedTol) {
-			achSpeedMS = 0f;
-			dragPowerKW = 0f;
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		}
-		
-		//Calculate power required to the wheels
-		float sumKWReqToWheels = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW);
-		
-		//Check if breaking or driving
-		float fricBreaksKW = 0f;
-		float regenKW = 0f;
-		float motorKWOut = 0f;
-		float motorKWIn = 0f;
-		float mtEffn = 0f;
-		float essKWOut = 0f;
-		
-		if (sumKWReqToWheels > 0f) {
-			//Driving
-			motorKWOut = sumKWReqToWheels/vehModel.transmission.transEff;
-			motorKWIn = motor.inputPowerKW(motorKWOut);
-			if (motorKWIn > 0) mtEffn = motorKWOut/motorKWIn;
-			essKWOut = (motorKWIn + totalAuxKW)/essChgDischgEffn;
-			
-		} else if (sumKWReqToWheels < -zeroPowerTol) {
-			//Breaking
-			float maxKWEssCharging = (1f/essChgDischgEffn)*Math.min(vehModel.battery.maxEssKw, 
-					(vehModel.chargeControl.maxSoCBatterySwing - soc.absSoC)*vehModel.battery.maxEssKwh*3600f/deltaSec);	//Positive value
-			float maxMechanicalRegenKWintoMotor = motor.inputPowerKW(Math.min(maxKWEssCharging, 
-					vehModel.motor.maxMotorKw));	//Positive value
-			float percentRegen = maxContrLimPercentRegen(vehModel.transmission.maxRegen, 
-					0.5f*(motion.prevSpeedMPH+achSpeedMS*FSJSimConstants.mphPerMps));		//Positive value
-			
-			float breakingKW = -sumKWReqToWheels;	//Positive value because request to wheels is negative
-			float mechRegenKW = percentRegen*breakingKW*vehModel.transmission.transEff;
-			mechRegenKW = Math.min(mechRegenKW, maxMechanicalRegenKWintoMotor);
-			
-			fricBreaksKW = breakingKW - mechRegenKW/vehModel.transmission.transEff;
-			regenKW = motor.outputPowerKW(mechRegenKW);
-			
-			motorKWIn = mechRegenKW;
-			motorKWOut = regenKW;
-			if (motorKWIn > 0) mtEffn = motorKWOut/motorKWIn;
-		
-			essKWOut = -(regenKW-totalAuxKW)*essChgDischgEffn;	
-		} else {
-			//Zero power for the drive
-			regenKW = 0f;
-			essKWOut = totalAuxKW/essChgDischgEffn;
-		}
+		//Power flows in motor and battery
+		FSJVehKernel.DriveFlows flows = stepFlows;
+		FSJVehKernel.bevDriveFlows(kernel, motor, roadLoad.sumKW(driveEnergyMod), totalAuxKW, soc.absSoC, 
+				motion.prevSpeedMPH, achSpeedMS, deltaSec, flows);
 		
 		//Update Energy use and state of charge
-		energyUse.batteryKWhSinceLastState = essKWOut*deltaSec/3600f;
+		energyUse.batteryKWhSinceLastState = flows.batteryKWh;
 		energyUse.batteryKWhSinceTripStart += energyUse.batteryKWhSinceLastState;
-		soc.absSoC += -energyUse.batteryKWhSinceLastState/vehModel.battery.maxEssKwh;
-		soc.relSoC += -energyUse.batteryKWhSinceLastState/vehModel.batterySwingKWh();
+		soc.absSoC += -energyUse.batteryKWhSinceLastState/kernel.maxEssKwh;
+		soc.relSoC += -energyUse.batteryKWhSinceLastState/kernel.batterySwingKWh;
 		
 		//Update data records
-		motion.achCurSpeedMS = achSpeedMS;
-		motion.achCurSpeedMPH = motion.achCurSpeedMS*FSJSimConstants.mphPerMps;
-		motion.curSpeedSlipMPH = motion.curDesiredSpeedMPH - motion.achCurSpeedMPH;
-		motion.metersFromLastState = 0.5f*(motion.prevSpeedMS+motion.achCurSpeedMS)*deltaSec;
-		motion.milesSinceStart += motion.metersFromLastState/FSJSimConstants.metersPerMile;
+		updateMotion(achSpeedMS, deltaSec);
 		
-		instPower.accelKW = accelPowerKW;
-		instPower.dragKW = dragPowerKW;
-		instPower.ascentKW = ascentKW;
-		instPower.rollResKW = rollResKW;
-		instPower.regenKW = regenKW;
+		instPower.accelKW = roadLoad.accelKW;
+		instPower.dragKW = roadLoad.dragKW;
+		instPower.ascentKW = roadLoad.ascentKW;
+		instPower.rollResKW = roadLoad.rollResKW;
+		instPower.regenKW = flows.regenKW;
 		
 		instPower.auxKW = totalAuxKW;
 		
-		instPower.fricBrakeKW = fricBreaksKW;
+		instPower.fricBrakeKW = flows.fricBrakeKW;
 		
-		instPower.mtPowerIn = motorKWIn;
-		instPower.mtPowerOut = motorKWOut;
-		instPower.mtEffn = mtEffn;
+		instPower.mtPowerIn = flows.mtPowerIn;
+		instPower.mtPowerOut = flows.mtPowerOut;
+		instPower.mtEffn = flows.mtEffn;
 		
 		energyUse.fcLoadHist.addTimeNotOperating(deltaSec);
 	}	
 	//Conventional vehicles
-	private void updateState_cv(float nextTimeSec, float desiredMPH, float roadGrade, float oAux, float addPayloadKg) {
+	private void updateState_cv(float nextTimeSec, float desiredMPH, float desiredMS, float roadGrade, float roadGradeSin, float oAux, float addPayloadKg) {
 		//Always turn fuel converter on if first time updating state (has no effect if it's already turned on)
 		turnFuelConvOn();
 		
-		//Constants for calculation tuning
-		float achSpeedMSStep = 0.01f;
-		float zeroSpeedTol = 0.001f;
-		
 		//Time step
 		float deltaSec = nextTimeSec - time.secSinceTripStart;
 		
 		//Get modifier values from add-ons and environmental conditions
 		float headWindMPH = 0f;
-		float additionalAuxKW = tpt.addAux;
 		float fcMod = 1.0f;
-		float airDensModifier = 1.0f;
-		float driveEnergyMod = tpt.adjDEMult;
+		float driveEnergyMod = kernel.driveEnergyMod;
 						
 		float headWindMS = headWindMPH/FSJSimConstants.mphPerMps;
-		float totalAuxKW = additionalAuxKW + vehModel.transmission.auxKw + oAux;
+		float totalAuxKW = kernel.fixedAuxKW + oAux;
 		
 		//Update time and motion objects
 		time.secSinceTripStart = nextTimeSec;
@@ -906,138 +767,49 @@ public class FSJVehState {
 		motion.curDesiredSpeedMPH = desiredMPH;
 		
 		//Target speed, constrained by tire slip limits
-		float targetSpeedMS = desiredMPH/FSJSimConstants.mphPerMps;
-		float maxMSIncrease = deltaSec*motion.maxAccelMS2;
-		if (targetSpeedMS > motion.prevSpeedMS+maxMSIncrease) targetSpeedMS = motion.prevSpeedMS+maxMSIncrease;
-		float maxMSDecrease = deltaSec*motion.maxDecelMS2;
-		if (targetSpeedMS < motion.prevSpeedMS-maxMSDecrease) targetSpeedMS = motion.prevSpeedMS-maxMSDecrease;
+		float targetSpeedMS = FSJVehKernel.targetSpeedMS(motion.prevSpeedMS, desiredMS, deltaSec, motion.maxAccelMS2, motion.maxDecelMS2);
 		
 		//Maximum fuel converter power
-		float maxFCKWout = fcMod*Math.min(vehModel.fuelConv.maxFuelConvKw, 
-				instPower.fcPowerOut + deltaSec*vehModel.fuelConv.maxFuelConvKw/vehModel.fuelConv.fuelConvSecsToPeakPwr);
-		
-		//Iterate to identify achievable speed
-		float achSpeedMS = targetSpeedMS;
-		
-		float dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-				simConsts.airDensity*airDensModifier);
-		float accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-		float ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		float rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		
-		float totalReqFuelConvKW = totalAuxKW + driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-		
-		while (totalReqFuelConvKW > maxFCKWout) {
-			achSpeedMS = achSpeedMS - achSpeedMSStep;
-			if (achSpeedMS < 0) {
-				achSpeedMS = 0f;
-				break;
-			}
-		
-			dragPowerKW = calcDragKW(motion.prevSpeedMS+headWindMS, achSpeedMS+headWindMS,
-					simConsts.airDensity*airDensModifier);
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			
-			totalReqFuelConvKW = totalAuxKW + driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW)/vehModel.transmission.transEff;
-		}
+		float maxFCKWout = fcMod*FSJVehKernel.maxFuelConvKWOut(kernel, instPower.fcPowerOut, deltaSec);
 		
-		//Remove effect of drag if vehicle is stopped
-		if (achSpeedMS < zeroSpeedTol) {
-			achSpeedMS = 0f;
-			dragPowerKW = 0f;
-			accelPowerKW = calcAccelAndInertiaKW(motion.prevSpeedMS, achSpeedMS, deltaSec, addPayloadKg);
-			ascentKW = calcAscentKW(roadGrade, motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-			rollResKW = calcRollResKW(motion.prevSpeedMS, achSpeedMS, addPayloadKg);
-		}
+		//Solve for achievable speed
+		FSJVehKernel.RoadLoad roadLoad = stepRoadLoad;
+		float achSpeedMS = FSJVehKernel.achievedSpeedMS(kernel, FSJVehKernel.achSpeedTolMS(simConsts), motion.prevSpeedMS, targetSpeedMS, 
+				maxFCKWout, totalAuxKW, driveEnergyMod, headWindMS, roadGradeSin, deltaSec, addPayloadKg, roadLoad);
 		
-		//Calculate power required from the engine and/or breaks
-		float sumKWReqToWheel = driveEnergyMod*(dragPowerKW+accelPowerKW+ascentKW+rollResKW);
-		float fricBreaksKW = 0f;
-		if (sumKWReqToWheel < 0) {
-			fricBreaksKW = -sumKWReqToWheel;
-			totalReqFuelConvKW = totalAuxKW;
-		} else {
-			totalReqFuelConvKW = totalAuxKW + sumKWReqToWheel/vehModel.transmission.transEff;
-		}
-		
-		//Calculate required input power, efficiency and fuel amount
-		float fcConvKWIn = fuelConv.inputPowerKW(totalReqFuelConvKW/fcMod);
-		float fcEffn = totalReqFuelConvKW/fcConvKWIn;
-		float fuelSinceLastStep = 0f;
-		switch (vehModel.fuelConv.fcEffType) {
-		case diesel:
-		case hybridDiesel:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.kWhPerGalDiesel);
-			break;
-		case cng:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.cngKWhPerM3);
-			break;
-		default:
-			fuelSinceLastStep = fcConvKWIn*deltaSec/(3600f*simConsts.kWhPerGGE);
-			break;		
-		}
+		//Power required from the engine and/or breaks, and fuel use
+		FSJVehKernel.DriveFlows flows = stepFlows;
+		FSJVehKernel.cvDriveFlows(kernel, fuelConv, roadLoad.sumKW(driveEnergyMod), totalAuxKW, fcMod, deltaSec, flows);
 		
 		//Update data objects
-		motion.achCurSpeedMS = achSpeedMS;
-		motion.achCurSpeedMPH = motion.achCurSpeedMS*FSJSimConstants.mphPerMps;
-		motion.curSpeedSlipMPH = motion.curDesiredSpeedMPH - motion.achCurSpeedMPH;
-		motion.metersFromLastState = 0.5f*(motion.prevSpeedMS+motion.achCurSpeedMS)*deltaSec;
-		motion.milesSinceStart += motion.metersFromLastState/FSJSimConstants.metersPerMile;
+		updateMotion(achSpeedMS, deltaSec);
 		
-		energyUse.fuelUseSinceLastState = fuelSinceLastStep;
+		energyUse.fuelUseSinceLastState = flows.fuelUse;
 		energyUse.fuelUseSinceTripStart += energyUse.fuelUseSinceLastState;
 		
-		instPower.accelKW = accelPowerKW;
-		instPower.dragKW = dragPowerKW;
-		instPower.ascentKW = ascentKW;
-		instPower.rollResKW = rollResKW;
+		instPower.accelKW = roadLoad.accelKW;
+		instPower.dragKW = roadLoad.dragKW;
+		instPower.ascentKW = roadLoad.ascentKW;
+		instPower.rollResKW = roadLoad.rollResKW;
 		
 		instPower.auxKW = totalAuxKW;
 		
-		instPower.fricBrakeKW = fricBreaksKW;
+		instPower.fricBrakeKW = flows.fricBrakeKW;
 		
-		instPower.fcPowerOut = totalReqFuelConvKW;
-		instPower.fcPowerIn = fcConvKWIn;
-		instPower.fcEffn = fcEffn;
+		instPower.fcPowerOut = flows.fcPowerOut;
+		instPower.fcPowerIn = flows.fcPowerIn;
+		instPower.fcEffn = flows.fcEffn;
 		
-		energyUse.fcLoadHist.addTimeOperating(deltaSec, totalReqFuelConvKW);
+		energyUse.fcLoadHist.addTimeOperating(deltaSec, flows.fcPowerOut);
 	}
 	
-	//Function for calculation of percentage regenerative breaking
-	private static float maxContrLimPercentRegen(float maxRegenFrac, float mph) {
-		float a = 500f;
-		float b = 0.99f;
-		return maxRegenFrac/(1f+a*(float)Math.exp(-b*(1f+mph)));
-	}
-
-	//Function for calculating drag power
-	private float calcDragKW(float prevNetSpeedMS, float netSpeedMS, float airDensity) {
-		float avSpeed = 0.5f*(prevNetSpeedMS + netSpeedMS);
-		return 0.5f*airDensity*vehModel.general.dragCoef*vehModel.general.frontalAreaM2
-				*avSpeed*avSpeed*avSpeed/1000f;
-	}
-	//Function for calculating acceleration and wheel inertia power
-	private float calcAccelAndInertiaKW(float prevSpeedMS, float targetSpeedMS, float deltaSec, float addPayloadKg) {
-		float curWheelRadPS = prevSpeedMS/vehModel.wheels.wheelRadiusM;
-		float reqWheelRadPS = targetSpeedMS/vehModel.wheels.wheelRadiusM;
-		float inertiaKW = 0.5f*vehModel.massProp.allWheelsKgM2*
-				(reqWheelRadPS*reqWheelRadPS - curWheelRadPS*curWheelRadPS)/(deltaSec*1000f);
-		
-		float accelKW = 0.5f*(vehModel.massProp.totalKg + tpt.addMass + addPayloadKg)*
-				(targetSpeedMS*targetSpeedMS - prevSpeedMS*prevSpeedMS)/(deltaSec*1000f);
-		return inertiaKW+accelKW;
-	}
-	//Function for calculating road grade power
-	private float calcAscentKW(float roadGrade, float prevSpeedMS, float targetSpeedMS, float addPayloadKg) {
-		float avSpeed = 0.5f*(prevSpeedMS+targetSpeedMS);
-		return (vehModel.massProp.totalKg + tpt.addMass + addPayloadKg)*simConsts.gravity*(float)Math.sin(Math.atan(roadGrade))*avSpeed/1000f;
-	}
-	//Function for calculating tire rolling resistance
-	private float calcRollResKW(float prevSpeedMS, float targetSpeedMS, float addPayloadKg) {
-		float avSpeed = 0.5f*(prevSpeedMS+targetSpeedMS);
-		return simConsts.gravity*(vehModel.massProp.totalKg + tpt.addMass + addPayloadKg)*vehModel.wheels.wheelRrCoeff*avSpeed/1000f;
+	//Function to update motion after solving for the achieved speed
+	private void updateMotion(float achSpeedMS, float deltaSec) {
+		motion.achCurSpeedMS = achSpeedMS;
+		motion.achCurSpeedMPH = motion.achCurSpeedMS*FSJSimConstants.mphPerMps;
+		motion.curSpeedSlipMPH = motion.curDesiredSpeedMPH - motion.achCurSpeedMPH;
+		motion.metersFromLastState = FSJVehKernel.metersTravelled(motion.prevSpeedMS, motion.achCurSpeedMS, deltaSec);
+		motion.milesSinceStart += motion.metersFromLastState/FSJSimConstants.metersPerMile;
 	}
 	
 	/*
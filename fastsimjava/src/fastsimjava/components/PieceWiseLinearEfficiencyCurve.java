@@ -15,19 +15,8 @@ public class PieceWiseLinearEfficiencyCurve {
 		shortName = new String(readShortName);
 		cType = curveType;
 
-		String[] sp = readLineFracPower.split(",");
-		fracOfMaxPower = new float[sp.length];
-		
-		for (int i=0; i<fracOfMaxPower.length; i++) {
-			fracOfMaxPower[i] = Float.parseFloat(sp[i]);
-		}
-		
-		effValues = new float[fracOfMaxPower.length];
-		sp = readLineEff.split(",");
-		
-		for (int i=0; i<effValues.length; i++) {
-			effValues[i] = Float.parseFloat(sp[i]);
-		}
+		fracOfMaxPower = FSJCSVReader.parseFloats(readLineFracPower);
+		effValues = FSJCSVReader.parseFloats(readLineEff, fracOfMaxPower.length);
 	}
 	
 	//Copy constructor
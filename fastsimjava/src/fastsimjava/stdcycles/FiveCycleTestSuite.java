@@ -1,5 +1,11 @@
 package fastsimjava.stdcycles;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import fastsimjava.*;
 import fastsimjava.FSJVehModelParam.FuelConverterEffType;
 import fastsimjava.components.*;
@@ -11,6 +17,8 @@ public class FiveCycleTestSuite {
 	private static final int us06HighwayEnd = 494;
 	
 	private float[] uddsBag1, uddsBag2, ftpFull, hwfetFull, us06City1, us06City2, us06Highway, us06Full, sc03Full;
+	//Pre-processed inputs of the above (created once, shared by all simulations)
+	private FSJTripInput uddsBag1Trip, uddsBag2Trip, ftpFullTrip, hwfetFullTrip, us06City1Trip, us06City2Trip, us06HighwayTrip, sc03FullTrip;
 	
 	
 	public FiveCycleTestSuite(StdDynamometerTestCycles testCycles) throws Exception {
@@ -50,14 +58,234 @@ public class FiveCycleTestSuite {
 		for (int i=0; i<us06Highway.length; i++) us06Highway[i] = mph[us06HighwayStart+i];
 		for (int i=0; i<us06City1.length; i++) us06City1[i] = mph[i];
 		for (int i=0; i<us06City2.length; i++) us06City2[i] = mph[us06HighwayEnd+i];
+		
+		uddsBag1Trip = new FSJTripInput(null, uddsBag1, null, null, null);
+		uddsBag2Trip = new FSJTripInput(null, uddsBag2, null, null, null);
+		ftpFullTrip = new FSJTripInput(null, ftpFull, null, null, null);
+		hwfetFullTrip = new FSJTripInput(null, hwfetFull, null, null, null);
+		us06City1Trip = new FSJTripInput(null, us06City1, null, null, null);
+		us06City2Trip = new FSJTripInput(null, us06City2, null, null, null);
+		us06HighwayTrip = new FSJTripInput(null, us06Highway, null, null, null);
+		sc03FullTrip = new FSJTripInput(null, sc03Full, null, null, null);
 	}
 
 	//Function for performing FASTSim simulation of EPA 5-Cycle test procedures of a given Vehicle model -- Default Inputs otherwise 
 	//This remains Work in progress until FASTSim-HOT
 	public FiveCycleTestResult performTest(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager) {
-		FiveCycleTestResult res = new FiveCycleTestResult();
+		TestSegment[] segments = testSegments(vehModel);
+		
+		//Run all segments in order on one simulator
 		FASTSimJ3c fsj = new FASTSimJ3c();
-		fsj.setVehModel(vehModel, curveManager);		
+		fsj.setVehModel(vehModel, curveManager);
+		
+		FASTSimJ3c.TripCSummary[][] segResults = new FASTSimJ3c.TripCSummary[segments.length][];
+		int[] sameRunIDs = sameRunIDs(segments, fsj.modelsThermalEffects());
+		for (int i=0; i<segments.length; i++) {
+			if (sameRunIDs[i] < i) segResults[i] = segResults[sameRunIDs[i]];
+			else segResults[i] = runSegment(fsj, segments[i]);
+		}
+		
+		return testResult(vehModel, segResults);
+	}
+	// ...version running the independent test segments concurrently on the given executor (same results as the sequential version)
+	public FiveCycleTestResult performTest(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager, ExecutorService executor) 
+			throws InterruptedException, ExecutionException {
+		FSJVehModelParam[] vehModels = {vehModel};
+		FSJEffCurvesManager[] curveManagers = {curveManager};
+		return performTests(vehModels, curveManagers, executor)[0];
+	}
+	//Function for performing the test of many vehicle models (with their curve managers), with all test segments of all
+	// vehicles submitted to the given executor, results are in the same order as the vehicle models
+	public FiveCycleTestResult[] performTests(FSJVehModelParam[] vehModels, FSJEffCurvesManager[] curveManagers, ExecutorService executor) 
+			throws InterruptedException, ExecutionException {
+		TestSegment[][] segments = new TestSegment[vehModels.length][];
+		int[][] sameRunIDs = new int[vehModels.length][];
+		ArrayList<ArrayList<Future<FASTSimJ3c.TripCSummary[]>>> lstFutures = new ArrayList<ArrayList<Future<FASTSimJ3c.TripCSummary[]>>>();
+		boolean compareConditions = new FASTSimJ3c().modelsThermalEffects();
+		
+		for (int i=0; i<vehModels.length; i++) {
+			final FSJVehModelParam vehModel = vehModels[i];
+			final FSJEffCurvesManager curveManager = curveManagers[i];
+			segments[i] = testSegments(vehModel);
+			sameRunIDs[i] = sameRunIDs(segments[i], compareConditions);
+			
+			ArrayList<Future<FASTSimJ3c.TripCSummary[]>> vehFutures = new ArrayList<Future<FASTSimJ3c.TripCSummary[]>>();
+			for (int j=0; j<segments[i].length; j++) {
+				if (sameRunIDs[i][j] < j) {
+					vehFutures.add(null);
+					continue;
+				}
+				
+				final TestSegment segment = segments[i][j];
+				vehFutures.add(executor.submit(new Callable<FASTSimJ3c.TripCSummary[]>() {
+					@Override public FASTSimJ3c.TripCSummary[] call() throws Exception {
+						//Each segment starts from a defined state, so it can be run on its own simulator
+						FASTSimJ3c fsj = new FASTSimJ3c();
+						fsj.setVehModel(vehModel, curveManager);
+						return runSegment(fsj, segment);
+					}
+				}));
+			}
+			lstFutures.add(vehFutures);
+		}
+		
+		FiveCycleTestResult[] results = new FiveCycleTestResult[vehModels.length];
+		for (int i=0; i<results.length; i++) {
+			ArrayList<Future<FASTSimJ3c.TripCSummary[]>> vehFutures = lstFutures.get(i);
+			FASTSimJ3c.TripCSummary[][] segResults = new FASTSimJ3c.TripCSummary[vehFutures.size()][];
+			for (int j=0; j<segResults.length; j++) {
+				if (sameRunIDs[i][j] < j) segResults[j] = segResults[sameRunIDs[i][j]];
+				else segResults[j] = vehFutures.get(j).get();
+			}
+			results[i] = testResult(vehModels[i], segResults);
+		}
+		return results;
+	}
+	
+	
+	//Class for a segment of the test -- one or more cycles (or portions of cycles) run back-to-back,
+	// starting from the given relative state of charge (value < 0 only for vehicle types whose results do not depend on the
+	// state left by previous runs, i.e. conventional vehicles and HEVs, which are balanced for zero net battery use)
+	private static class TestSegment {
+		private TestCondition condition;
+		private float initialRelSoC;
+		private FSJTripInput[] cycles;
+		private TestSegment(TestCondition condition, float initialRelSoC, FSJTripInput... cycles) {
+			this.condition = condition;
+			this.initialRelSoC = initialRelSoC;
+			this.cycles = cycles;
+		}
+		
+		//Check whether simulating the other segment would give the same results, i.e. all its inputs are the same:
+		// initial state of charge, contents of the cycles and (only if the simulator models thermal effects) test condition
+		private boolean sameRunAs(TestSegment other, boolean compareConditions) {
+			if (compareConditions && (condition != other.condition)) return false;
+			if (initialRelSoC != other.initialRelSoC) return false;
+			if (cycles.length != other.cycles.length) return false;
+			for (int i=0; i<cycles.length; i++) {
+				if (!cycles[i].sameContents(other.cycles[i])) return false;
+			}
+			return true;
+		}
+	}
+	//Ambient & engine conditions of the test segments (thermal modules would use these)
+	private enum TestCondition {
+		ftp75ColdStart,		//Ambient Temperature 75F and cold engine start
+		ftp75Running,		//Ambient Temperature 75F, right after previous bag
+		ftp75HotStart,		//Ambient Temperature 75F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
+		ftp20ColdStart,		//Ambient Temperature 20F and cold engine start
+		ftp20Running,		//Ambient Temperature 20F, right after previous bag
+		ftp20HotStart,		//Ambient Temperature 20F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
+		warm75,				//Ambient Temperature 75F and warmed up engine
+		ac95,				//Ambient Temperature 95F (with AC on) and warmed up engine
+	}
+	//Function to identify, for every segment, the first segment of the test with the same run (each such run is simulated only once)
+	private static int[] sameRunIDs(TestSegment[] segments, boolean compareConditions) {
+		int[] ids = new int[segments.length];
+		for (int i=0; i<segments.length; i++) {
+			ids[i] = i;
+			for (int j=0; j<i; j++) {
+				if (segments[i].sameRunAs(segments[j], compareConditions)) {
+					ids[i] = j;
+					break;
+				}
+			}
+		}
+		return ids;
+	}
+	//Function to simulate a segment, returns copies of the compact summary of each cycle in the segment
+	private static FASTSimJ3c.TripCSummary[] runSegment(FASTSimJ3c fsj, TestSegment segment) {
+		FASTSimJ3c.TripCSummary[] res = new FASTSimJ3c.TripCSummary[segment.cycles.length];
+		
+		if (segment.initialRelSoC >= 0) fsj.setRelSoC(segment.initialRelSoC);
+		for (int i=0; i<res.length; i++) {
+			fsj.runC(segment.cycles[i], new FSJHybridPowerManagerDefault());
+			res[i] = fsj.new TripCSummary(fsj.lastTripSummary());
+		}
+		return res;
+	}
+	
+	//Function to return the test segments for a given vehicle model
+	private TestSegment[] testSegments(FSJVehModelParam vehModel) {
+		switch (vehModel.general.vehPtType) {
+		case cv:
+		{
+			TestSegment[] segments = {
+					//FIRST TEST: Run the "normal temperature FTP" (Bag-1, Bag-2, Bag-3)
+					new TestSegment(TestCondition.ftp75ColdStart, -1f, uddsBag1Trip), new TestSegment(TestCondition.ftp75Running, -1f, uddsBag2Trip), 
+							new TestSegment(TestCondition.ftp75HotStart, -1f, uddsBag1Trip),
+					//SECOND TEST: Run the "Cold temperature FTP" (Bag-1, Bag-2, Bag-3)
+					new TestSegment(TestCondition.ftp20ColdStart, -1f, uddsBag1Trip), new TestSegment(TestCondition.ftp20Running, -1f, uddsBag2Trip), 
+							new TestSegment(TestCondition.ftp20HotStart, -1f, uddsBag1Trip),
+					//THIRD TEST: Run US06 (City Portion, Highway Portion, City Portion)
+					new TestSegment(TestCondition.warm75, -1f, us06City1Trip), new TestSegment(TestCondition.warm75, -1f, us06HighwayTrip), new TestSegment(TestCondition.warm75, -1f, us06City2Trip),
+					//FOURTH TEST: Run HWFET
+					new TestSegment(TestCondition.warm75, -1f, hwfetFullTrip),
+					//FIFTH TEST: Run SC03
+					new TestSegment(TestCondition.ac95, -1f, sc03FullTrip)
+			};
+			return segments;
+		}
+		case hev:
+			if (vehModel.fuelConv.fcEffType == FuelConverterEffType.fuelCell) {	//Fuel Cell Hybrid
+				TestSegment[] segments = {new TestSegment(TestCondition.ftp75ColdStart, -1f, ftpFullTrip), new TestSegment(TestCondition.warm75, -1f, hwfetFullTrip)};
+				return segments;
+			} 
+			else 
+			{
+				TestSegment[] segments = {
+						//FIRST TEST: Run the "normal temperature FTP" (Bag-1, Bag-2, Bag-3, Bag-4)
+						new TestSegment(TestCondition.ftp75ColdStart, -1f, uddsBag1Trip), new TestSegment(TestCondition.ftp75Running, -1f, uddsBag2Trip), 
+								new TestSegment(TestCondition.ftp75HotStart, -1f, uddsBag1Trip), new TestSegment(TestCondition.ftp75Running, -1f, uddsBag2Trip),
+						//SECOND TEST: Run the "Cold temperature FTP" (Bag-1, Bag-2, Bag-3)
+						new TestSegment(TestCondition.ftp20ColdStart, -1f, uddsBag1Trip), new TestSegment(TestCondition.ftp20Running, -1f, uddsBag2Trip), 
+								new TestSegment(TestCondition.ftp20HotStart, -1f, uddsBag1Trip),
+						//THIRD TEST: Run US06 (City Portion, Highway Portion, City Portion)
+						new TestSegment(TestCondition.warm75, -1f, us06City1Trip), new TestSegment(TestCondition.warm75, -1f, us06HighwayTrip), new TestSegment(TestCondition.warm75, -1f, us06City2Trip),
+						//FOURTH TEST: Run HWFET
+						new TestSegment(TestCondition.warm75, -1f, hwfetFullTrip),
+						//FIFTH TEST: Run SC03
+						new TestSegment(TestCondition.ac95, -1f, sc03FullTrip)
+				};
+				return segments;
+			}
+		case bev:
+		{
+			TestSegment[] segments = {new TestSegment(TestCondition.ftp75ColdStart, 1f, ftpFullTrip), new TestSegment(TestCondition.warm75, 1f, hwfetFullTrip)};
+			return segments;
+		}
+		case phev:
+			if (vehModel.fuelConv.fcEffType == FuelConverterEffType.fuelCell) {	//Fuel Cell Hybrid
+				TestSegment[] segments = {
+						//CHARGE DEPLETION MODE
+						new TestSegment(TestCondition.ftp75ColdStart, 1f, ftpFullTrip), new TestSegment(TestCondition.warm75, 1f, hwfetFullTrip),
+						//CHARGE SUSTAINING MODE
+						new TestSegment(TestCondition.ftp75ColdStart, 0f, ftpFullTrip), new TestSegment(TestCondition.warm75, 0f, hwfetFullTrip)
+				};
+				return segments;
+			}
+			else
+			{
+				TestSegment[] segments = {
+						//CHARGE DEPLETION MODE
+						new TestSegment(TestCondition.ftp75ColdStart, 1f, ftpFullTrip), new TestSegment(TestCondition.warm75, 1f, hwfetFullTrip),
+						//CHARGE SUSTAINING MODE: the bags of each FTP, and the portions of US06, are run back-to-back from the same start
+						new TestSegment(TestCondition.ftp75ColdStart, 0f, uddsBag1Trip, uddsBag2Trip, uddsBag1Trip, uddsBag2Trip),
+						new TestSegment(TestCondition.ftp20ColdStart, 0f, uddsBag1Trip, uddsBag2Trip, uddsBag1Trip),
+						new TestSegment(TestCondition.warm75, 0f, us06City1Trip, us06HighwayTrip, us06City2Trip),
+						new TestSegment(TestCondition.warm75, 0f, hwfetFullTrip),
+						new TestSegment(TestCondition.ac95, 0f, sc03FullTrip)
+				};
+				return segments;
+			}
+		default:
+			return new TestSegment[0];
+		}
+	}
+	
+	//Function to calculate the test result from the compact summaries of the test segments
+	private static FiveCycleTestResult testResult(FSJVehModelParam vehModel, FASTSimJ3c.TripCSummary[][] s) {
+		FiveCycleTestResult res = new FiveCycleTestResult();
 		
 		float chargerEfficiency = vehModel.transmission.chgEff;
 		//System.out.println("Assumed Charger Efficiency for Equivalent EPA Test = " + chargerEfficiency);
@@ -67,68 +295,57 @@ public class FiveCycleTestSuite {
 		{
 			//FIRST TEST: Run the "normal temperature FTP"
 			//Bag-1 //Thermal modules would use Ambient Temperature 75F and cold engine start
-			fsj.runC(null, uddsBag1, null);
-			float ftp75F_Bag1_miles = fsj.lastTripSummary().miles;
-			float ftp75F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+			float ftp75F_Bag1_miles = s[0][0].miles;
+			float ftp75F_Bag1_gal = s[0][0].fuelUse;
 			
 			//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 75F
-			fsj.runC(null, uddsBag2, null);
-			float ftp75F_Bag2_miles = fsj.lastTripSummary().miles;
-			float ftp75F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+			float ftp75F_Bag2_miles = s[1][0].miles;
+			float ftp75F_Bag2_gal = s[1][0].fuelUse;
 						
 			//Bag-3 //Thermal modules would use Ambient Temperature 75F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-			fsj.runC(null, uddsBag1, null);
-			float ftp75F_Bag3_miles = fsj.lastTripSummary().miles;
-			float ftp75F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+			float ftp75F_Bag3_miles = s[2][0].miles;
+			float ftp75F_Bag3_gal = s[2][0].fuelUse;
 			
 			
 			
 			//SECOND TEST: Run the "Cold temperature FTP"
 			//Bag-1 //Thermal modules would use Ambient Temperature 20F and cold engine start
-			fsj.runC(null, uddsBag1, null);
-			float ftp20F_Bag1_miles = fsj.lastTripSummary().miles;
-			float ftp20F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+			float ftp20F_Bag1_miles = s[3][0].miles;
+			float ftp20F_Bag1_gal = s[3][0].fuelUse;
 			
 			//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 20F
-			fsj.runC(null, uddsBag2, null);
-			float ftp20F_Bag2_miles = fsj.lastTripSummary().miles;
-			float ftp20F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+			float ftp20F_Bag2_miles = s[4][0].miles;
+			float ftp20F_Bag2_gal = s[4][0].fuelUse;
 			
 			//Bag-3 //Thermal modules would use Ambient Temperature 20F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-			fsj.runC(null, uddsBag1, null);
-			float ftp20F_Bag3_miles = fsj.lastTripSummary().miles;
-			float ftp20F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+			float ftp20F_Bag3_miles = s[5][0].miles;
+			float ftp20F_Bag3_gal = s[5][0].fuelUse;
 			
 			
 			
 			//THIRD TEST: Run US06
 			//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-			fsj.runC(null, us06City1, null);
-			float us06_city_miles = fsj.lastTripSummary().miles;
-			float us06_city_gal = fsj.lastTripSummary().fuelUse;
+			float us06_city_miles = s[6][0].miles;
+			float us06_city_gal = s[6][0].fuelUse;
 			
 			//Highway Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-			fsj.runC(null, us06Highway, null);
-			float us06_highway_miles = fsj.lastTripSummary().miles;
-			float us06_highway_gal = fsj.lastTripSummary().fuelUse;
+			float us06_highway_miles = s[7][0].miles;
+			float us06_highway_gal = s[7][0].fuelUse;
 			
-			fsj.runC(null, us06City2, null);
-			us06_city_miles += fsj.lastTripSummary().miles;
-			us06_city_gal += fsj.lastTripSummary().fuelUse;
+			us06_city_miles += s[8][0].miles;
+			us06_city_gal += s[8][0].fuelUse;
 			
 			
 			//FOURTH TEST: Run HWFET
 			//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-			fsj.runC(null, hwfetFull, null);
-			float hwfet_miles = fsj.lastTripSummary().miles;
-			float hwfet_gal = fsj.lastTripSummary().fuelUse;
+			float hwfet_miles = s[9][0].miles;
+			float hwfet_gal = s[9][0].fuelUse;
 						
 			
 			//FIFTH TEST: Run SC03
 			//City Portion //Thermal modules would use Ambient Temperature 95 (with AC on) and warmed up engine
-			fsj.runC(null, sc03Full, null);
-			float sc03_miles = fsj.lastTripSummary().miles;
-			float sc03_gal = fsj.lastTripSummary().fuelUse;
+			float sc03_miles = s[10][0].miles;
+			float sc03_gal = s[10][0].fuelUse;
 			
 			
 			//CITY Rating Calculation
@@ -157,13 +374,11 @@ public class FiveCycleTestSuite {
 		case hev:
 			if (vehModel.fuelConv.fcEffType == FuelConverterEffType.fuelCell) {	//Fuel Cell Hybrid
 				//Using the 0.7 factor method and one run of FTP + HWFET -- No Thermal Effects Correction seem to be employed or needed as of 2017 standard 
-				fsj.runC(null, ftpFull, null);
-				float ftp_miles = fsj.lastTripSummary().miles;
-				float ftp_kgH2 = fsj.lastTripSummary().fuelUse;
+				float ftp_miles = s[0][0].miles;
+				float ftp_kgH2 = s[0][0].fuelUse;
 				
-				fsj.runC(null, hwfetFull, null);
-				float hwfet_miles = fsj.lastTripSummary().miles;
-				float hwfet_kgH2 = fsj.lastTripSummary().fuelUse;
+				float hwfet_miles = s[1][0].miles;
+				float hwfet_kgH2 = s[1][0].fuelUse;
 				
 				res.city.mpg = (ftp_miles*0.7f)/ftp_kgH2;
 				res.highway.mpg = (hwfet_miles*0.7f)/hwfet_kgH2;
@@ -173,74 +388,62 @@ public class FiveCycleTestSuite {
 			{
 				//FIRST TEST: Run the "normal temperature FTP"
 				//Bag-1 //Thermal modules would use Ambient Temperature 75F and cold engine start
-				fsj.runC(null, uddsBag1, null);
-				float ftp75F_Bag1_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag1_miles = s[0][0].miles;
+				float ftp75F_Bag1_gal = s[0][0].fuelUse;
 				
 				//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 75F
-				fsj.runC(null, uddsBag2, null);
-				float ftp75F_Bag2_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag2_miles = s[1][0].miles;
+				float ftp75F_Bag2_gal = s[1][0].fuelUse;
 				
 				//Bag-3 //Thermal modules would use Ambient Temperature 75F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-				fsj.runC(null, uddsBag1, null);
-				float ftp75F_Bag3_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag3_miles = s[2][0].miles;
+				float ftp75F_Bag3_gal = s[2][0].fuelUse;
 				
 				//Bag-4 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 75F
-				fsj.runC(null, uddsBag2, null);
-				float ftp75F_Bag4_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag4_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag4_miles = s[3][0].miles;
+				float ftp75F_Bag4_gal = s[3][0].fuelUse;
 				
 				
 				
 				//SECOND TEST: Run the "Cold temperature FTP"
 				//Bag-1 //Thermal modules would use Ambient Temperature 20F and cold engine start
-				fsj.runC(null, uddsBag1, null);
-				float ftp20F_Bag1_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag1_miles = s[4][0].miles;
+				float ftp20F_Bag1_gal = s[4][0].fuelUse;
 				
 				//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 20F
-				fsj.runC(null, uddsBag2, null);
-				float ftp20F_Bag2_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag2_miles = s[5][0].miles;
+				float ftp20F_Bag2_gal = s[5][0].fuelUse;
 				
 				//Bag-3 //Thermal modules would use Ambient Temperature 20F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-				fsj.runC(null, uddsBag1, null);
-				float ftp20F_Bag3_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag3_miles = s[6][0].miles;
+				float ftp20F_Bag3_gal = s[6][0].fuelUse;
 				
 				
 				
 				//THIRD TEST: Run US06
 				//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.runC(null, us06City1, null);
-				float us06_city_miles = fsj.lastTripSummary().miles;
-				float us06_city_gal = fsj.lastTripSummary().fuelUse;
+				float us06_city_miles = s[7][0].miles;
+				float us06_city_gal = s[7][0].fuelUse;
 				
 				//Highway Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.runC(null, us06Highway, null);
-				float us06_highway_miles = fsj.lastTripSummary().miles;
-				float us06_highway_gal = fsj.lastTripSummary().fuelUse;
+				float us06_highway_miles = s[8][0].miles;
+				float us06_highway_gal = s[8][0].fuelUse;
 				
-				fsj.runC(null, us06City2, null);
-				us06_city_miles += fsj.lastTripSummary().miles;
-				us06_city_gal += fsj.lastTripSummary().fuelUse;
+				us06_city_miles += s[9][0].miles;
+				us06_city_gal += s[9][0].fuelUse;
 				
 				
 				//FOURTH TEST: Run HWFET
 				//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.runC(null, hwfetFull, null);
-				float hwfet_miles = fsj.lastTripSummary().miles;
-				float hwfet_gal = fsj.lastTripSummary().fuelUse;
+				float hwfet_miles = s[10][0].miles;
+				float hwfet_gal = s[10][0].fuelUse;
 				
 				
 				
 				//FIFTH TEST: Run SC03
 				//City Portion //Thermal modules would use Ambient Temperature 95 (with AC on) and warmed up engine
-				fsj.runC(null, sc03Full, null);
-				float sc03_miles = fsj.lastTripSummary().miles;
-				float sc03_gal = fsj.lastTripSummary().fuelUse;
+				float sc03_miles = s[11][0].miles;
+				float sc03_gal = s[11][0].fuelUse;
 				
 				
 				//CITY Rating Calculation
@@ -270,15 +473,11 @@ public class FiveCycleTestSuite {
 		case bev:
 		{
 			//Using the 0.7 factor method and one run of FTP + HWFET -- No Thermal Effects Correction seem to be employed or needed as of 2017 standard 
-			fsj.setRelSoC(1f);
-			fsj.runC(null, ftpFull, null);
-			float ftp_miles = fsj.lastTripSummary().miles;
-			float ftp_kWh = fsj.lastTripSummary().batteryUse;
+			float ftp_miles = s[0][0].miles;
+			float ftp_kWh = s[0][0].batteryUse;
 			
-			fsj.setRelSoC(1f);
-			fsj.runC(null, hwfetFull, null);
-			float hwfet_miles = fsj.lastTripSummary().miles;
-			float hwfet_kWh = fsj.lastTripSummary().batteryUse;
+			float hwfet_miles = s[1][0].miles;
+			float hwfet_kWh = s[1][0].batteryUse;
 			
 			res.city.kwhpm = ftp_kWh/(ftp_miles*0.7f*chargerEfficiency);
 			res.highway.kwhpm = hwfet_kWh/(hwfet_miles*0.7f*chargerEfficiency);
@@ -288,15 +487,11 @@ public class FiveCycleTestSuite {
 		case phev:
 		{
 			//CHARGE DEPLETION MODE: Using the 0.7 factor method and one run of FTP + HWFET -- No Thermal Effects Correction seem to be employed or needed as of 2017 standard 
-			fsj.setRelSoC(1f);
-			fsj.runC(null, ftpFull, null);
-			float ftp_miles = fsj.lastTripSummary().miles;
-			float ftp_kWh = fsj.lastTripSummary().batteryUse;
+			float ftp_miles = s[0][0].miles;
+			float ftp_kWh = s[0][0].batteryUse;
 			
-			fsj.setRelSoC(1f);
-			fsj.runC(null, hwfetFull, null);
-			float hwfet_miles = fsj.lastTripSummary().miles;
-			float hwfet_kWh = fsj.lastTripSummary().batteryUse;
+			float hwfet_miles = s[1][0].miles;
+			float hwfet_kWh = s[1][0].batteryUse;
 			
 			res.city.kwhpm = ftp_kWh/(ftp_miles*0.7f*chargerEfficiency);
 			res.highway.kwhpm = hwfet_kWh/(hwfet_miles*0.7f*chargerEfficiency);
@@ -304,15 +499,11 @@ public class FiveCycleTestSuite {
 						
 			if (vehModel.fuelConv.fcEffType == FuelConverterEffType.fuelCell) {	//Fuel Cell Hybrid
 				//Using the 0.7 factor method and one run of FTP + HWFET -- No Thermal Effects Correction seem to be employed or needed as of 2017 standard 
-				fsj.setRelSoC(0f);
-				fsj.runC(null, ftpFull, null);
-				float ftp_csmiles = fsj.lastTripSummary().miles;
-				float ftp_kgH2 = fsj.lastTripSummary().fuelUse;
+				float ftp_csmiles = s[2][0].miles;
+				float ftp_kgH2 = s[2][0].fuelUse;
 				
-				fsj.setRelSoC(0f);
-				fsj.runC(null, hwfetFull, null);
-				float hwfet_csmiles = fsj.lastTripSummary().miles;
-				float hwfet_kgH2 = fsj.lastTripSummary().fuelUse;
+				float hwfet_csmiles = s[3][0].miles;
+				float hwfet_kgH2 = s[3][0].fuelUse;
 				
 				res.city.mpg = (ftp_csmiles*0.7f)/ftp_kgH2;
 				res.highway.mpg = (hwfet_csmiles*0.7f)/hwfet_kgH2;
@@ -322,80 +513,63 @@ public class FiveCycleTestSuite {
 			{
 				//CHARGE SUSTAINING MODE: Same as Hybrids
 				//FIRST TEST: Run the "normal temperature FTP"
-				fsj.setRelSoC(0f);
 				//Bag-1 //Thermal modules would use Ambient Temperature 75F and cold engine start
-				fsj.runC(null, uddsBag1, null);
-				float ftp75F_Bag1_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag1_miles = s[2][0].miles;
+				float ftp75F_Bag1_gal = s[2][0].fuelUse;
 				
 				//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 75F
-				fsj.runC(null, uddsBag2, null);
-				float ftp75F_Bag2_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag2_miles = s[2][1].miles;
+				float ftp75F_Bag2_gal = s[2][1].fuelUse;
 				
 				//Bag-3 //Thermal modules would use Ambient Temperature 75F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-				fsj.runC(null, uddsBag1, null);
-				float ftp75F_Bag3_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag3_miles = s[2][2].miles;
+				float ftp75F_Bag3_gal = s[2][2].fuelUse;
 				
 				//Bag-4 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 75F
-				fsj.runC(null, uddsBag2, null);
-				float ftp75F_Bag4_miles = fsj.lastTripSummary().miles;
-				float ftp75F_Bag4_gal = fsj.lastTripSummary().fuelUse;
+				float ftp75F_Bag4_miles = s[2][3].miles;
+				float ftp75F_Bag4_gal = s[2][3].fuelUse;
 				
 				
 				
 				//SECOND TEST: Run the "Cold temperature FTP"
-				fsj.setRelSoC(0f);
 				//Bag-1 //Thermal modules would use Ambient Temperature 20F and cold engine start
-				fsj.runC(null, uddsBag1, null);
-				float ftp20F_Bag1_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag1_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag1_miles = s[3][0].miles;
+				float ftp20F_Bag1_gal = s[3][0].fuelUse;
 				
 				//Bag-2 //(right after, no modifiers to engine cool-off), Thermal modules would use Ambient Temperature 20F
-				fsj.runC(null, uddsBag2, null);
-				float ftp20F_Bag2_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag2_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag2_miles = s[3][1].miles;
+				float ftp20F_Bag2_gal = s[3][1].fuelUse;
 				
 				//Bag-3 //Thermal modules would use Ambient Temperature 20F, Vehicle & Engine left to cool off for a period of ftpWaitBag2ToBag3 seconds
-				fsj.runC(null, uddsBag1, null);
-				float ftp20F_Bag3_miles = fsj.lastTripSummary().miles;
-				float ftp20F_Bag3_gal = fsj.lastTripSummary().fuelUse;
+				float ftp20F_Bag3_miles = s[3][2].miles;
+				float ftp20F_Bag3_gal = s[3][2].fuelUse;
 				
 				
 				
 				//THIRD TEST: Run US06
 				//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.setRelSoC(0f);
-				fsj.runC(null, us06City1, null);
-				float us06_city_miles = fsj.lastTripSummary().miles;
-				float us06_city_gal = fsj.lastTripSummary().fuelUse;
+				float us06_city_miles = s[4][0].miles;
+				float us06_city_gal = s[4][0].fuelUse;
 				
 				//Highway Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.runC(null, us06Highway, null);
-				float us06_highway_miles = fsj.lastTripSummary().miles;
-				float us06_highway_gal = fsj.lastTripSummary().fuelUse;
+				float us06_highway_miles = s[4][1].miles;
+				float us06_highway_gal = s[4][1].fuelUse;
 				
-				fsj.runC(null, us06City2, null);
-				us06_city_miles += fsj.lastTripSummary().miles;
-				us06_city_gal += fsj.lastTripSummary().fuelUse;
+				us06_city_miles += s[4][2].miles;
+				us06_city_gal += s[4][2].fuelUse;
 				
 				
 				//FOURTH TEST: Run HWFET
-				fsj.setRelSoC(0f);
 				//City Portion //Thermal modules would use Ambient Temperature 75 and warmed up engine
-				fsj.runC(null, hwfetFull, null);
-				hwfet_miles = fsj.lastTripSummary().miles;
-				float hwfet_gal = fsj.lastTripSummary().fuelUse;
+				hwfet_miles = s[5][0].miles;
+				float hwfet_gal = s[5][0].fuelUse;
 				
 				
 				
 				//FIFTH TEST: Run SC03
-				fsj.setRelSoC(0f);
 				//City Portion //Thermal modules would use Ambient Temperature 95 (with AC on) and warmed up engine
-				fsj.runC(null, sc03Full, null);
-				float sc03_miles = fsj.lastTripSummary().miles;
-				float sc03_gal = fsj.lastTripSummary().fuelUse;
+				float sc03_miles = s[6][0].miles;
+				float sc03_gal = s[6][0].fuelUse;
 				
 				
 				//CITY Rating Calculation
@@ -1,11 +1,11 @@
 package fastsimjava.stdcycles;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import fastsimjava.components.FSJCSVReader;
+
 
 public class StdDynamometerTestCycles {
 	private TestCycle[] cycles;
@@ -112,12 +112,11 @@ public class StdDynamometerTestCycles {
 			ArrayList<Float> lst = new ArrayList<Float>();
 			
 			try {
-				BufferedReader readingBuffer=new BufferedReader(new FileReader(fname));
-				String readLine;
+				FSJCSVReader readingBuffer = new FSJCSVReader(fname);
 				
-				while ((readLine = readingBuffer.readLine())!=null) {
-					String[] strSplit = readLine.split(",");
-					lst.add(Float.parseFloat(strSplit[1]));
+				while (readingBuffer.nextLine()) {
+					readingBuffer.skipField();
+					lst.add(readingBuffer.nextFloat());
 				}				
 				readingBuffer.close();
 			} catch (IOException e) {}
@@ -1,10 +1,10 @@
 package fastsimjava.utility;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.util.ArrayList;
 
+import fastsimjava.components.FSJCSVReader;
+
 public class CoastDown {
 	//Unit conversion constants
 	public static final float PoundsPerKg = 2.205f;
@@ -34,11 +34,10 @@ public class CoastDown {
 	}
 	public static float[] readSingleColumnFloatValues(String fname) {
 		try {
-			String readLine;
 			ArrayList<Float> lst = new ArrayList<Float>();
-			BufferedReader fin = new BufferedReader(new FileReader(fname));
-			while ((readLine = fin.readLine())!=null) {
-				lst.add(Float.parseFloat(readLine));
+			FSJCSVReader fin = new FSJCSVReader(fname);
+			while (fin.nextLine()) {
+				lst.add(fin.nextFloat());
 			}
 			fin.close();
 						
@@ -0,0 +1,198 @@
+package fastsimjava.utility;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import fastsimjava.*;
+import fastsimjava.abs.FSJHybridPowerManagerBase;
+import fastsimjava.components.FSJHybridPowerManagerDefault;
+import fastsimjava.components.FSJTripInput;
+
+//Class for running many vehicle samples against a set of vehicle models on a pool of worker threads
+// Note: vehicle models and curve managers are shared read-only between workers, while each worker thread
+//       lazily creates its own simulator and power manager for every vehicle model (these carry per-trip mutable state)
+public class FleetBatchRunner {
+	//Default limit on number of samples submitted but not yet finished (bounds memory when reading from an iterator)
+	public static final int Default_MaxSamplesInFlight = 256;
+
+	//Vehicle models
+	private FSJVehModelParam[] vehModels;
+	private FSJEffCurvesManager[] curveManagers;
+	private float[] addMassKg, addAuxKW, adjDEMult;
+	public int numVehModels() {return vehModels.length;}
+
+	//Factory for per-worker hybrid power managers
+	private PowerManagerFactory pwrMgrFactory;
+
+	//Executor and flag for whether it was created (and should be shut down) by this object
+	private ExecutorService executor;
+	private boolean ownsExecutor;
+
+	//Per-worker simulators
+	private ThreadLocal<WorkerContext> workerContexts;
+
+	//Relative SoC at the start of every trip for BEVs & PHEVs (value < 0 carries over the SoC from the previous trip of the same sample)
+	public float pluginInitialRelSoC;
+	//Limit on number of samples submitted to the executor and not yet finished
+	public int maxSamplesInFlight;
+
+
+	//Constructors via one-file vehicle models (including 3-parameter tuning), running on a new fixed thread pool
+	public FleetBatchRunner(FSJOneFileVehModel[] ofvModels, int numThreads) {
+		this(ofvModels, Executors.newFixedThreadPool(Math.max(1, numThreads)), null);
+		ownsExecutor = true;
+	}
+	// ...running on a supplied executor (fork-join or otherwise), with optional factory for power managers (null = default power manager)
+	public FleetBatchRunner(FSJOneFileVehModel[] ofvModels, ExecutorService execService, PowerManagerFactory pmFactory) {
+		vehModels = new FSJVehModelParam[ofvModels.length];
+		curveManagers = new FSJEffCurvesManager[ofvModels.length];
+		addMassKg = new float[ofvModels.length];
+		addAuxKW = new float[ofvModels.length];
+		adjDEMult = new float[ofvModels.length];
+
+		for (int i=0; i<ofvModels.length; i++) {
+			vehModels[i] = ofvModels[i].vehModelParam;
+			curveManagers[i] = ofvModels[i].curveMan;
+			addMassKg[i] = ofvModels[i].addMassKg;
+			addAuxKW[i] = ofvModels[i].addAuxKW;
+			adjDEMult[i] = ofvModels[i].adjDEMult;
+		}
+
+		init(execService, pmFactory);
+	}
+	//Constructor via vehicle models sharing one curve manager (no 3-parameter tuning)
+	public FleetBatchRunner(FSJVehModelParam[] vModels, FSJEffCurvesManager curveMan, ExecutorService execService, PowerManagerFactory pmFactory) {
+		vehModels = new FSJVehModelParam[vModels.length];
+		curveManagers = new FSJEffCurvesManager[vModels.length];
+		addMassKg = new float[vModels.length];
+		addAuxKW = new float[vModels.length];
+		adjDEMult = new float[vModels.length];
+
+		for (int i=0; i<vModels.length; i++) {
+			vehModels[i] = vModels[i];
+			curveManagers[i] = curveMan;
+			adjDEMult[i] = 1f;
+		}
+
+		init(execService, pmFactory);
+	}
+	private void init(ExecutorService execService, PowerManagerFactory pmFactory) {
+		executor = execService;
+		ownsExecutor = false;
+
+		pwrMgrFactory = pmFactory;
+		if (pwrMgrFactory == null) pwrMgrFactory = new DefaultPowerManagerFactory();
+
+		pluginInitialRelSoC = 1f;
+		maxSamplesInFlight = Default_MaxSamplesInFlight;
+
+		workerContexts = new ThreadLocal<WorkerContext>() {
+			@Override protected WorkerContext initialValue() {
+				return new WorkerContext();
+			}
+		};
+	}
+
+	//Function to shut down the executor (only if it was created by this object)
+	public void shutdown() {
+		if (ownsExecutor) executor.shutdown();
+	}
+
+
+	//Function to run all samples in an array, results are indexed as [sampleID][vehModelID][tripID] in input order
+	public FASTSimJ3c.TripCSummary[][][] runBatch(VehicleSampleMA[] vehSamples) throws InterruptedException, ExecutionException {
+		ArrayList<VehicleSampleMA> lst = new ArrayList<VehicleSampleMA>();
+		for (int i=0; i<vehSamples.length; i++) lst.add(vehSamples[i]);
+		return runBatch(lst.iterator());
+	}
+	// ...version for a stream of samples (e.g. read lazily from file), samples are released once simulated
+	public FASTSimJ3c.TripCSummary[][][] runBatch(Iterator<VehicleSampleMA> vehSamples) throws InterruptedException, ExecutionException {
+		ArrayList<Future<FASTSimJ3c.TripCSummary[][]>> lstFutures = new ArrayList<Future<FASTSimJ3c.TripCSummary[][]>>();
+		final Semaphore inFlight = new Semaphore(Math.max(1, maxSamplesInFlight));
+
+		while (vehSamples.hasNext()) {
+			final VehicleSampleMA vs = vehSamples.next();
+			inFlight.acquire();
+
+			lstFutures.add(executor.submit(new Callable<FASTSimJ3c.TripCSummary[][]>() {
+				@Override public FASTSimJ3c.TripCSummary[][] call() throws Exception {
+					try {
+						return workerContexts.get().runSample(vs);
+					} finally {
+						inFlight.release();
+					}
+				}
+			}));
+		}
+
+		FASTSimJ3c.TripCSummary[][][] arr = new FASTSimJ3c.TripCSummary[lstFutures.size()][][];
+		for (int i=0; i<arr.length; i++) arr[i] = lstFutures.get(i).get();
+		return arr;
+	}
+
+
+	//Per-worker data: one simulator and one power manager for each vehicle model
+	private class WorkerContext {
+		private FASTSimJ3c[] simulators;
+		private FSJHybridPowerManagerBase[] pwrMgrs;
+
+		private WorkerContext() {
+			simulators = new FASTSimJ3c[vehModels.length];
+			pwrMgrs = new FSJHybridPowerManagerBase[vehModels.length];
+
+			for (int i=0; i<simulators.length; i++) {
+				simulators[i] = new FASTSimJ3c();
+				simulators[i].setVehModel(vehModels[i], curveManagers[i], addMassKg[i], addAuxKW[i], adjDEMult[i]);
+				pwrMgrs[i] = pwrMgrFactory.createPowerManager();
+			}
+		}
+
+		//Function to simulate all trips of one sample with all vehicle models, results indexed as [vehModelID][tripID]
+		private FASTSimJ3c.TripCSummary[][] runSample(VehicleSampleMA vs) {
+			VehicleSampleMA.Trip[] trips = vs.trips();
+			FASTSimJ3c.TripCSummary[][] res = new FASTSimJ3c.TripCSummary[simulators.length][trips.length];
+
+			//Pre-process every trip once, shared by all vehicle models
+			FSJTripInput[] tripInputs = new FSJTripInput[trips.length];
+			for (int j=0; j<trips.length; j++) {
+				float[] mph = trips[j].speedMPH();
+				float[] payloadKg = VehicleSampleMA.payload1HzTimeSeries(trips[j].payloadAdjust(), mph.length);
+				tripInputs[j] = new FSJTripInput(null, mph, trips[j].fltGrade(), trips[j].recAuxKW(), payloadKg);
+			}
+
+			for (int i=0; i<simulators.length; i++) {
+				FASTSimJ3c fsj = simulators[i];
+				boolean isPlugin = vehModels[i].isPlugin();
+
+				if (isPlugin && (pluginInitialRelSoC < 0)) fsj.setRelSoC(1f);
+
+				for (int j=0; j<trips.length; j++) {
+					if (isPlugin && (pluginInitialRelSoC >= 0)) fsj.setRelSoC(pluginInitialRelSoC);
+					fsj.runC(tripInputs[j], pwrMgrs[i]);
+
+					//Copy, since later changes to SoC of the same simulator reset the last trip summary
+					res[i][j] = fsj.new TripCSummary(fsj.lastTripSummary());
+				}
+			}
+
+			return res;
+		}
+	}
+
+	//Interface for creating a new power manager for each worker
+	public interface PowerManagerFactory {
+		public FSJHybridPowerManagerBase createPowerManager();
+	}
+	//Default factory
+	public static class DefaultPowerManagerFactory implements PowerManagerFactory {
+		public FSJHybridPowerManagerBase createPowerManager() {
+			return new FSJHybridPowerManagerDefault();
+		}
+	}
+}
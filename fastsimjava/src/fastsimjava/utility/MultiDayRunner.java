@@ -0,0 +1,159 @@
+package fastsimjava.utility;
+
+import fastsimjava.*;
+import fastsimjava.abs.FSJHybridPowerManagerBase;
+import fastsimjava.components.FSJHybridPowerManagerDefault;
+import fastsimjava.components.FSJTripInput;
+
+//Class for simulating all trips of a vehicle sample in order (possibly over several days), with the state of charge carried over
+// from trip to trip and optional charging of BEVs & PHEVs during the dwell time between trips
+// Note: the vehicle model is set once on the simulator, only the state of charge is adjusted between trips
+public class MultiDayRunner {
+	//Simulator and power manager
+	private FASTSimJ3c sim;
+	private FSJHybridPowerManagerBase hybPwrMgr;
+	public FASTSimJ3c simulator() {return sim;}
+
+	//Charging model during dwell times (null = no charging)
+	public ChargingModel chargingModel;
+	//Relative SoC at the start of the first trip for BEVs & PHEVs (value < 0 continues from the current SoC of the simulator)
+	public float initialRelSoC;
+
+
+	//Constructor with default power manager (simulator should have its vehicle model set)
+	public MultiDayRunner(FASTSimJ3c simulator) {
+		this(simulator, new FSJHybridPowerManagerDefault());
+	}
+	// ...with given power manager (CANNOT be null)
+	public MultiDayRunner(FASTSimJ3c simulator, FSJHybridPowerManagerBase pwrMgr) {
+		sim = simulator;
+		hybPwrMgr = pwrMgr;
+		chargingModel = null;
+		initialRelSoC = 1f;
+	}
+
+	//Function to simulate all trips of a vehicle sample
+	public ChainedResult run(VehicleSampleMA vs) {
+		FSJVehModelParam vehModel = sim.getCurVehModel();
+		if (vehModel == null) return null;
+
+		//Days sized from the largest day ID of any trip (numDriveDays() only looks at the last trip)
+		VehicleSampleMA.Trip[] trips = vs.trips();
+		int numDays = 0;
+		for (int j=0; j<trips.length; j++) numDays = Math.max(numDays, trips[j].tripIDs().dayID + 1);
+		ChainedResult res = new ChainedResult(trips.length, numDays);
+
+		boolean isPlugin = vehModel.isPlugin();
+		float batterySwingKWh = vehModel.batterySwingKWh();
+		float curRelSoC = -1f;
+		if (isPlugin) {
+			if (initialRelSoC >= 0) sim.setRelSoC(initialRelSoC);
+			curRelSoC = sim.curRelSoC();
+		}
+
+		for (int j=0; j<trips.length; j++) {
+			VehicleSampleMA.TripIDs tripIDs = trips[j].tripIDs();
+
+			//Charging during dwell time before the trip
+			if ((j > 0) && isPlugin && (chargingModel != null)) {
+				boolean newDay = tripIDs.dayID != trips[j-1].tripIDs().dayID;
+				float gridKWh = chargingModel.gridKWh(curRelSoC, batterySwingKWh, tripIDs.secsFromLastTrip, newDay);
+				if (gridKWh > 0) {
+					curRelSoC = Math.min(1f, Math.max(0f, curRelSoC) + gridKWh*chargingModel.chargeEff/batterySwingKWh);
+					sim.setRelSoC(curRelSoC);
+					res.chargedKWhBeforeTrip[j] = gridKWh;
+				}
+			}
+			res.relSoCAtTripStart[j] = curRelSoC;
+
+			//Simulate the trip
+			float[] mph = trips[j].speedMPH();
+			float[] payloadKg = VehicleSampleMA.payload1HzTimeSeries(trips[j].payloadAdjust(), mph.length);
+			sim.runC(new FSJTripInput(null, mph, trips[j].fltGrade(), trips[j].recAuxKW(), payloadKg), hybPwrMgr);
+
+			//Copy, since later changes to SoC reset the last trip summary
+			FASTSimJ3c.TripCSummary tSummary = sim.new TripCSummary(sim.lastTripSummary());
+			res.tripSummaries[j] = tSummary;
+			if (isPlugin) curRelSoC = tSummary.finalRelSoC;
+
+			//Add to summary of the day (trips with negative day ID are only counted)
+			if (tripIDs.dayID >= 0) res.daySummaries[tripIDs.dayID].addTrip(tSummary, res.chargedKWhBeforeTrip[j]);
+			else res.numTripsWithoutDay++;
+		}
+
+		return res;
+	}
+
+
+	//Charging model -- charging at a fixed power (kW from the grid) during dwell times longer than a minimum,
+	// optionally only overnight (i.e. before the first trip of a day, as for home-only charging)
+	public static class ChargingModel {
+		public float chargerKW, chargeEff, minDwellSec;
+		public boolean overnightOnly;
+
+		public ChargingModel(float chargerKW, boolean overnightOnly) {
+			this(chargerKW, 0.9f, 0f, overnightOnly);
+		}
+		public ChargingModel(float chargerKW, float chargeEff, float minDwellSec, boolean overnightOnly) {
+			this.chargerKW = chargerKW;
+			this.chargeEff = chargeEff;
+			this.minDwellSec = minDwellSec;
+			this.overnightOnly = overnightOnly;
+		}
+
+		//Function to return energy drawn from the grid (kWh) during a dwell, override for other charging behaviors
+		public float gridKWh(float relSoC, float batterySwingKWh, int dwellSec, boolean newDay) {
+			if (overnightOnly && !newDay) return 0f;
+			if (dwellSec < minDwellSec) return 0f;
+			if ((chargerKW <= 0)||(chargeEff <= 0)) return 0f;
+
+			float kWhToFull = (1f - Math.max(0f, relSoC))*batterySwingKWh/chargeEff;
+			return Math.max(0f, Math.min(kWhToFull, chargerKW*dwellSec/3600f));
+		}
+	}
+
+	//Results of a chained run
+	public static class ChainedResult {
+		//Per-trip compact summaries, relative SoC at start of each trip (-1 if not plug-in) and energy charged from the grid before each trip
+		public FASTSimJ3c.TripCSummary[] tripSummaries;
+		public float[] relSoCAtTripStart, chargedKWhBeforeTrip;
+		//Per-day summaries (indexed by day ID, up to the largest day ID of any trip), and number of trips with negative day ID
+		// (such trips are in the per-trip results but in no day summary)
+		public DaySummary[] daySummaries;
+		public int numTripsWithoutDay;
+
+		private ChainedResult(int numTrips, int numDays) {
+			tripSummaries = new FASTSimJ3c.TripCSummary[numTrips];
+			relSoCAtTripStart = new float[numTrips];
+			chargedKWhBeforeTrip = new float[numTrips];
+
+			daySummaries = new DaySummary[Math.max(0, numDays)];
+			for (int i=0; i<daySummaries.length; i++) daySummaries[i] = new DaySummary(i);
+		}
+	}
+	//Summary of all trips of one day
+	public static class DaySummary {
+		public int dayID, numTrips;
+		public float miles, fuelUse, batteryUse, chargedKWh, seconds, finalRelSoC;
+
+		private DaySummary(int dayID) {
+			this.dayID = dayID;
+		}
+		private void addTrip(FASTSimJ3c.TripCSummary tSummary, float chargedKWhBeforeTrip) {
+			numTrips++;
+			miles += tSummary.miles;
+			fuelUse += tSummary.fuelUse;
+			batteryUse += tSummary.batteryUse;
+			chargedKWh += chargedKWhBeforeTrip;
+			seconds += tSummary.seconds;
+			finalRelSoC = tSummary.finalRelSoC;
+		}
+
+		public static String headerString() {
+			return "dayID,numTrips,miles,fuelUse,batteryUse,chargedKWh,seconds,finalRelSoC";
+		}
+		@Override public String toString() {
+			return ""+dayID+","+numTrips+","+miles+","+fuelUse+","+batteryUse+","+chargedKWh+","+seconds+","+finalRelSoC;
+		}
+	}
+}
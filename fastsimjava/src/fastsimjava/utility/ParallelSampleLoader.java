@@ -0,0 +1,205 @@
+package fastsimjava.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import fastsimjava.components.FSJCSVReader;
+
+//Class for reading a whole file of vehicle samples (same format as VehicleSampleMA.readArrayFromFile) on several threads
+// -- The file is memory-mapped in regions that are scanned in parallel for the lines starting each vehicle sample,
+//    then groups of consecutive samples are parsed in parallel, and samples are returned in file order
+// -- Unlike readArrayFromFile, a sample that cannot be parsed is reported as SampleFileStream.ParseException (with line number)
+//    instead of ending the array at the previous sample
+public class ParallelSampleLoader {
+	//Bytes in one region scanned for sample headers
+	private static final long ScanRegionBytes = 1L << 26;
+	//Limits on bytes in one group of samples parsed by one task, and target number of groups per thread
+	private static final long MinGroupBytes = 1L << 20;
+	private static final long MaxGroupBytes = 1L << 30;
+	private static final int GroupsPerThread = 8;
+
+	//Function to read all samples in a file on a new fork-join pool (one thread per processor, shut down when done)
+	public static VehicleSampleMA[] load(String fname) throws IOException, InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return load(fname, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	// ...on a given fork-join pool
+	public static VehicleSampleMA[] load(final String fname, ForkJoinPool pool) throws IOException, InterruptedException {
+		RandomAccessFile raf = new RandomAccessFile(fname, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long fileSize = channel.size();
+			final byte[] header = VehicleSampleMA.Header_newVehicleSample.getBytes("US-ASCII");
+
+			//Scan regions for the offsets of sample headers (and the number of lines before each)
+			ArrayList<Future<ScanResult>> lstScans = new ArrayList<Future<ScanResult>>();
+			for (long start=0; start<fileSize; start+=ScanRegionBytes) {
+				final long regionStart = start;
+				final long regionEnd = Math.min(fileSize, start + ScanRegionBytes);
+				lstScans.add(pool.submit(new Callable<ScanResult>() {
+					@Override public ScanResult call() throws Exception {
+						return scanRegion(channel, fileSize, regionStart, regionEnd, header);
+					}
+				}));
+			}
+			ArrayList<Long> lstOffsets = new ArrayList<Long>();
+			ArrayList<Integer> lstLinesBefore = new ArrayList<Integer>();
+			int linesBeforeRegion = 0;
+			for (int i=0; i<lstScans.size(); i++) {
+				ScanResult scan = getResult(lstScans.get(i));
+				for (int j=0; j<scan.offsets.length; j++) {
+					lstOffsets.add(scan.offsets[j]);
+					lstLinesBefore.add(linesBeforeRegion + scan.linesBefore[j]);
+				}
+				linesBeforeRegion += scan.numLines;
+			}
+
+			//Group consecutive samples for parsing
+			long groupBytes = Math.max(MinGroupBytes, Math.min(MaxGroupBytes, fileSize/(GroupsPerThread*pool.getParallelism())));
+			ArrayList<Future<VehicleSampleMA[]>> lstGroups = new ArrayList<Future<VehicleSampleMA[]>>();
+			int firstSampleID = 0;
+			while (firstSampleID < lstOffsets.size()) {
+				final long groupStart = lstOffsets.get(firstSampleID);
+				final int groupLinesBefore = lstLinesBefore.get(firstSampleID);
+				int endSampleID = firstSampleID + 1;
+				while ((endSampleID < lstOffsets.size())&&(lstOffsets.get(endSampleID) - groupStart < groupBytes)) endSampleID++;
+
+				final long groupEnd = (endSampleID < lstOffsets.size()) ? lstOffsets.get(endSampleID) : fileSize;
+				final int numSamples = endSampleID - firstSampleID;
+				lstGroups.add(pool.submit(new Callable<VehicleSampleMA[]>() {
+					@Override public VehicleSampleMA[] call() throws Exception {
+						return parseGroup(fname, channel, groupStart, groupEnd, groupLinesBefore, numSamples);
+					}
+				}));
+				firstSampleID = endSampleID;
+			}
+
+			//Collect in file order
+			VehicleSampleMA[] arr = new VehicleSampleMA[lstOffsets.size()];
+			int curID = 0;
+			for (int i=0; i<lstGroups.size(); i++) {
+				VehicleSampleMA[] groupSamples = getResult(lstGroups.get(i));
+				for (int j=0; j<groupSamples.length; j++) arr[curID++] = groupSamples[j];
+			}
+			return arr;
+		} finally {
+			raf.close();
+		}
+	}
+	//Function to return the result of a task, re-throwing what the task threw
+	private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof IOException) throw (IOException)cause;
+			throw new IOException(cause);
+		}
+	}
+
+
+	//Result of scanning a region: offsets of sample headers, number of line breaks in the region before each, and in the whole region
+	private static class ScanResult {
+		private long[] offsets;
+		private int[] linesBefore;
+		private int numLines;
+	}
+
+	//Function to find offsets of the sample headers that start a line within [regionStart, regionEnd)
+	// (line breaks are counted at offsets in [regionStart-1, regionEnd-1), so that regions split the count of lines in the file)
+	private static ScanResult scanRegion(FileChannel channel, long fileSize, long regionStart, long regionEnd, byte[] header) throws IOException {
+		long mapStart = Math.max(0, regionStart - 1);
+		long mapEnd = Math.min(fileSize, regionEnd + header.length);
+		ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+
+		ArrayList<Long> lstOffsets = new ArrayList<Long>();
+		ArrayList<Integer> lstLinesBefore = new ArrayList<Integer>();
+		if ((regionStart == 0)&&startsWith(bb, 0, header)) {
+			lstOffsets.add(0L);
+			lstLinesBefore.add(0);
+		}
+
+		//Line breaks just before offsets in [max(1, regionStart), regionEnd)
+		int numLines = 0;
+		int iStart = (int)Math.max(0, regionStart - 1 - mapStart);
+		int iEnd = (int)(regionEnd - 1 - mapStart);
+		for (int i=iStart; i<iEnd; i++) {
+			if (bb.get(i) == '\n') {
+				numLines++;
+				if (startsWith(bb, i+1, header)) {
+					lstOffsets.add(mapStart + i + 1);
+					lstLinesBefore.add(numLines);
+				}
+			}
+		}
+
+		ScanResult scan = new ScanResult();
+		scan.offsets = new long[lstOffsets.size()];
+		scan.linesBefore = new int[lstOffsets.size()];
+		for (int i=0; i<scan.offsets.length; i++) {
+			scan.offsets[i] = lstOffsets.get(i);
+			scan.linesBefore[i] = lstLinesBefore.get(i);
+		}
+		scan.numLines = numLines;
+		return scan;
+	}
+	private static boolean startsWith(ByteBuffer bb, int pos, byte[] header) {
+		if (pos + header.length > bb.limit()) return false;
+		for (int i=0; i<header.length; i++) {
+			if (bb.get(pos + i) != header[i]) return false;
+		}
+		return true;
+	}
+
+	//Function to parse a group of consecutive samples (with line numbers, including those in exceptions, counted in the whole file)
+	private static VehicleSampleMA[] parseGroup(String fname, FileChannel channel, long groupStart, long groupEnd, int linesBefore,
+			int numSamples) throws IOException {
+		ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, groupStart, groupEnd - groupStart);
+		FSJCSVReader fin = new FSJCSVReader(new InputStreamReader(new ByteBufferInputStream(bb)), linesBefore);
+
+		VehicleSampleMA[] arr = new VehicleSampleMA[numSamples];
+		int sampleFirstLine = linesBefore + 1;
+		try {
+			for (int i=0; i<arr.length; i++) {
+				sampleFirstLine = fin.lineNumber() + 1;
+				arr[i] = VehicleSampleMA.readFrom(fin);
+			}
+		} catch (Exception e) {
+			throw new SampleFileStream.ParseException(fname, sampleFirstLine, fin.lineNumber(), e);
+		}
+		return arr;
+	}
+
+	//Input stream reading from a (mapped) buffer
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer bb;
+
+		private ByteBufferInputStream(ByteBuffer bb) {
+			this.bb = bb;
+		}
+		@Override public int read() {
+			if (!bb.hasRemaining()) return -1;
+			return bb.get() & 0xFF;
+		}
+		@Override public int read(byte[] b, int off, int len) {
+			if (!bb.hasRemaining()) return -1;
+			int n = Math.min(len, bb.remaining());
+			bb.get(b, off, n);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package fastsimjava.utility;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import fastsimjava.*;
+import fastsimjava.abs.FSJHybridPowerManagerBase;
+import fastsimjava.components.FSJTripInput;
+
+//Class for sweeping vehicle model parameters (and three-parameter tuning values) over a design of experiments,
+// simulating a set of trips for every design point on a pool of worker threads
+// Note #1: variants are created via the copy constructor of the base vehicle model (no re-parsing), and fuel converter & motor
+//          look-up tables are shared through FSJEffCurvesLibrary, so design points with the same component sizes share them
+// Note #2: each worker thread re-uses one simulator and one power manager for all of its design points
+public class ParamSweepEngine {
+	//Default limit on number of design points submitted but not yet finished
+	public static final int Default_MaxPointsInFlight = 256;
+
+	//Sweepable fields
+	public enum SweepField {
+		maxEssKwh, maxEssKw, maxMotorKw, maxFuelConvKw, dragCoef, frontalAreaM2, gliderKg, cargoKg, wheelRrCoeff, auxKw,
+		addMass, addAux, adjDEMult;
+
+		//Function to set the value of the field in the vehicle model (three-parameter tuning values are in tpt as addMass, addAux, adjDEMult)
+		private void apply(FSJVehModelParam vehModel, float[] tpt, float value) {
+			switch (this) {
+			case maxEssKwh:
+				vehModel.battery.maxEssKwh = value;
+				break;
+			case maxEssKw:
+				vehModel.battery.maxEssKw = value;
+				break;
+			case maxMotorKw:
+				vehModel.motor.maxMotorKw = value;
+				break;
+			case maxFuelConvKw:
+				vehModel.fuelConv.maxFuelConvKw = value;
+				break;
+			case dragCoef:
+				vehModel.general.dragCoef = value;
+				break;
+			case frontalAreaM2:
+				vehModel.general.frontalAreaM2 = value;
+				break;
+			case gliderKg:
+				vehModel.general.gliderKg = value;
+				break;
+			case cargoKg:
+				vehModel.general.cargoKg = value;
+				break;
+			case wheelRrCoeff:
+				vehModel.wheels.wheelRrCoeff = value;
+				break;
+			case auxKw:
+				vehModel.transmission.auxKw = value;
+				break;
+			case addMass:
+				tpt[0] = value;
+				break;
+			case addAux:
+				tpt[1] = value;
+				break;
+			case adjDEMult:
+				tpt[2] = value;
+				break;
+			}
+		}
+	}
+
+	//Range of a swept field
+	public static class FieldRange {
+		public SweepField field;
+		public float minValue, maxValue;
+		//Number of levels for full-factorial designs (ignored for Latin hypercube designs)
+		public int numLevels;
+
+		public FieldRange(SweepField field, float minValue, float maxValue, int numLevels) {
+			this.field = field;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.numLevels = Math.max(1, numLevels);
+		}
+		//Value at given level of a full-factorial design
+		private float levelValue(int levelID) {
+			if (numLevels < 2) return 0.5f*(minValue + maxValue);
+			return minValue + (maxValue - minValue)*levelID/(float)(numLevels - 1);
+		}
+	}
+
+	//Interface for receiving results as they become available (called from worker threads, so implementations must be thread-safe)
+	// Note: the summaries are copies, but their gmCO2Eq() functions refer to the worker's simulator and should not be used later on
+	public interface ResultSink {
+		public void addResult(int pointID, float[] fieldValues, FASTSimJ3c.TripCSummary[] tripSummaries);
+	}
+
+	//Base vehicle model, its curves and tuning
+	private FSJVehModelParam baseVehModel;
+	private FSJEffCurvesManager curveMan;
+	private float baseAddMass, baseAddAux, baseAdjDEMult;
+
+	//Swept fields and design points (values of the swept fields, indexed as [pointID][fieldID])
+	private FieldRange[] ranges;
+	private float[][] designPoints;
+	public int numPoints() {return designPoints.length;}
+	public float[] designPoint(int pointID) {return designPoints[pointID];}
+
+	//Relative SoC at the start of every trip for BEVs & PHEVs
+	public float pluginInitialRelSoC;
+	//Limit on number of design points submitted and not yet finished
+	public int maxPointsInFlight;
+
+
+	//Constructor via one-file vehicle model (including 3-parameter tuning) and ranges of the fields to be swept
+	public ParamSweepEngine(FSJOneFileVehModel ofvModel, FieldRange[] fieldRanges) {
+		this(ofvModel.vehModelParam, ofvModel.curveMan, ofvModel.addMassKg, ofvModel.addAuxKW, ofvModel.adjDEMult, fieldRanges);
+	}
+	// ...via vehicle model, curves and tuning values
+	public ParamSweepEngine(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager, float addMass, float addAux, float adjDEMult,
+			FieldRange[] fieldRanges) {
+		baseVehModel = vehModel;
+		curveMan = curveManager;
+		baseAddMass = addMass;
+		baseAddAux = addAux;
+		baseAdjDEMult = adjDEMult;
+		ranges = fieldRanges;
+
+		pluginInitialRelSoC = 1f;
+		maxPointsInFlight = Default_MaxPointsInFlight;
+		setFullFactorialDesign();
+	}
+
+	//Function to set the design to all combinations of levels of the swept fields
+	public void setFullFactorialDesign() {
+		int numPoints = 1;
+		for (int i=0; i<ranges.length; i++) numPoints *= ranges[i].numLevels;
+
+		designPoints = new float[numPoints][ranges.length];
+		for (int p=0; p<numPoints; p++) {
+			int rem = p;
+			for (int i=ranges.length-1; i>=0; i--) {
+				designPoints[p][i] = ranges[i].levelValue(rem % ranges[i].numLevels);
+				rem /= ranges[i].numLevels;
+			}
+		}
+	}
+	//Function to set the design to a Latin hypercube of given number of points (each field's range is split into numPoints
+	// equal strata, and every stratum is sampled exactly once)
+	public void setLatinHypercubeDesign(int numPoints, long randomSeed) {
+		Random rnd = new Random(randomSeed);
+		designPoints = new float[numPoints][ranges.length];
+
+		int[] perm = new int[numPoints];
+		for (int i=0; i<ranges.length; i++) {
+			for (int p=0; p<numPoints; p++) perm[p] = p;
+			for (int p=numPoints-1; p>0; p--) {
+				int j = rnd.nextInt(p+1);
+				int tmp = perm[p];
+				perm[p] = perm[j];
+				perm[j] = tmp;
+			}
+
+			float delta = (ranges[i].maxValue - ranges[i].minValue)/numPoints;
+			for (int p=0; p<numPoints; p++) {
+				designPoints[p][i] = ranges[i].minValue + delta*(perm[p] + rnd.nextFloat());
+			}
+		}
+	}
+	//Function to set a user-defined design (values of the swept fields, indexed as [pointID][fieldID])
+	public void setDesign(float[][] points) {
+		designPoints = points;
+	}
+
+	//Function to create the vehicle model of a design point, returns the three-parameter tuning in tpt (addMass, addAux, adjDEMult)
+	public FSJVehModelParam createVariant(int pointID, float[] tpt) {
+		FSJVehModelParam vehModel = new FSJVehModelParam(baseVehModel);
+		tpt[0] = baseAddMass;
+		tpt[1] = baseAddAux;
+		tpt[2] = baseAdjDEMult;
+
+		for (int i=0; i<ranges.length; i++) ranges[i].field.apply(vehModel, tpt, designPoints[pointID][i]);
+		vehModel.recalcMassProp();
+		return vehModel;
+	}
+
+
+	//Function to run all design points on the given executor for a set of trips, results are streamed to the sink as points finish
+	public void run(final FSJTripInput[] trips, ExecutorService executor, FleetBatchRunner.PowerManagerFactory pmFactory,
+			final ResultSink sink) throws InterruptedException, ExecutionException {
+		if (pmFactory == null) pmFactory = new FleetBatchRunner.DefaultPowerManagerFactory();
+		final FleetBatchRunner.PowerManagerFactory pwrMgrFactory = pmFactory;
+
+		//Per-worker simulator & power manager
+		final ThreadLocal<FASTSimJ3c> workerSims = new ThreadLocal<FASTSimJ3c>() {
+			@Override protected FASTSimJ3c initialValue() {
+				return new FASTSimJ3c();
+			}
+		};
+		final ThreadLocal<FSJHybridPowerManagerBase> workerPwrMgrs = new ThreadLocal<FSJHybridPowerManagerBase>() {
+			@Override protected FSJHybridPowerManagerBase initialValue() {
+				return pwrMgrFactory.createPowerManager();
+			}
+		};
+
+		ArrayList<Future<Object>> lstFutures = new ArrayList<Future<Object>>();
+		final Semaphore inFlight = new Semaphore(Math.max(1, maxPointsInFlight));
+
+		for (int p=0; p<designPoints.length; p++) {
+			final int pointID = p;
+			inFlight.acquire();
+
+			lstFutures.add(executor.submit(new Callable<Object>() {
+				@Override public Object call() throws Exception {
+					try {
+						FASTSimJ3c.TripCSummary[] res = runPoint(pointID, trips, workerSims.get(), workerPwrMgrs.get());
+						sink.addResult(pointID, designPoints[pointID], res);
+						return null;
+					} finally {
+						inFlight.release();
+					}
+				}
+			}));
+		}
+
+		for (int i=0; i<lstFutures.size(); i++) lstFutures.get(i).get();
+	}
+	//Function to simulate all trips for one design point
+	private FASTSimJ3c.TripCSummary[] runPoint(int pointID, FSJTripInput[] trips, FASTSimJ3c fsj, FSJHybridPowerManagerBase pwrMgr) {
+		float[] tpt = new float[3];
+		FSJVehModelParam vehModel = createVariant(pointID, tpt);
+		fsj.setVehModel(vehModel, curveMan, tpt[0], tpt[1], tpt[2]);
+		boolean isPlugin = vehModel.isPlugin();
+
+		FASTSimJ3c.TripCSummary[] res = new FASTSimJ3c.TripCSummary[trips.length];
+		for (int j=0; j<trips.length; j++) {
+			if (isPlugin && (pluginInitialRelSoC >= 0)) fsj.setRelSoC(pluginInitialRelSoC);
+			fsj.runC(trips[j], pwrMgr);
+
+			//Copy, since later runs of the same simulator reset the last trip summary
+			res[j] = fsj.new TripCSummary(fsj.lastTripSummary());
+		}
+		return res;
+	}
+
+
+	//Sink writing one row per design point and trip to a CSV file
+	public static class CSVTableSink implements ResultSink {
+		private FileWriter fout;
+		private String lsep;
+
+		public CSVTableSink(String fname, FieldRange[] fieldRanges) throws IOException {
+			lsep = System.getProperty("line.separator");
+			fout = new FileWriter(fname);
+
+			String header = "pointID";
+			for (int i=0; i<fieldRanges.length; i++) header = header + "," + fieldRanges[i].field;
+			header = header + ",tripID,miles,fuelUse,batteryUse,maxSpeedSlipMPH,finalRelSoC,seconds,secondsIdling,secondsFuelConvOn,nFuelConvStarts";
+			fout.append(header + lsep);
+		}
+
+		@Override public synchronized void addResult(int pointID, float[] fieldValues, FASTSimJ3c.TripCSummary[] tripSummaries) {
+			String st = "" + pointID;
+			for (int i=0; i<fieldValues.length; i++) st = st + "," + fieldValues[i];
+
+			try {
+				for (int j=0; j<tripSummaries.length; j++) fout.append(st + "," + j + "," + tripSummaries[j] + lsep);
+			} catch (IOException e) {}
+		}
+
+		//Function to close the file (after the run is finished)
+		public synchronized void close() {
+			try {
+				fout.flush();
+				fout.close();
+			} catch (IOException e) {}
+		}
+	}
+}
@@ -1,10 +1,11 @@
 package fastsimjava.utility;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import fastsimjava.components.FSJCSVReader;
+
 
 public class SVehicleSample {
 	//Constants
@@ -36,7 +37,7 @@ public class SVehicleSample {
 	public static SVehicleSample[] readFromFile(String fileName) {
 		try {
 			ArrayList<SVehicleSample> lst = new ArrayList<SVehicleSample>();
-			BufferedReader fin = new BufferedReader(new FileReader(fileName));
+			FSJCSVReader fin = new FSJCSVReader(fileName);
 			
 			SVehicleSample curSample = new SVehicleSample(fin);
 			lst.add(curSample);
@@ -72,11 +73,23 @@ public class SVehicleSample {
 		}
 	}
 
+	//Function for opening a file for reading one sample at a time (with default number of samples read ahead)
+	public static SampleFileStream<SVehicleSample> openStream(String fileName) throws IOException {
+		return openStream(fileName, SampleFileStream.Default_ReadAhead);
+	}
+	public static SampleFileStream<SVehicleSample> openStream(String fileName, int readAhead) throws IOException {
+		return new SampleFileStream<SVehicleSample>(fileName, readAhead, new SampleFileStream.SampleParser<SVehicleSample>() {
+			@Override public SVehicleSample parse(FSJCSVReader fin) throws Exception {
+				return new SVehicleSample(fin);
+			}
+		});
+	}
+
 	//Private constructor to prevent direct instantiation -- Use one of the static functions to read from file
-	private SVehicleSample(BufferedReader fin) throws Exception {
-		String readLine = fin.readLine();			
-		readLine = fin.readLine();
-		vehSampleInfo = new SampleID(readLine);
+	private SVehicleSample(FSJCSVReader fin) throws Exception {
+		fin.requireNextLine();			
+		fin.requireNextLine();
+		vehSampleInfo = new SampleID(fin);
 		
 		trips = new Trip[vehSampleInfo.nTrips];
 		for (int i=0; i<trips.length; i++) {
@@ -87,7 +100,7 @@ public class SVehicleSample {
 	
 	public static SVehicleSample readFromFile(String fileName, int sampleIDinFile) {
 		try {
-			BufferedReader fin = new BufferedReader(new FileReader(fileName));
+			FSJCSVReader fin = new FSJCSVReader(fileName);
 
 			SVehicleSample curSample = null;
 			for (int i=0; i<=sampleIDinFile; i++) {
@@ -103,7 +116,7 @@ public class SVehicleSample {
 	}
 	public static SVehicleSample readFromFile(String fileName, int householdID, int vehIDinHousehold) {
 		try {
-			BufferedReader fin = new BufferedReader(new FileReader(fileName));
+			FSJCSVReader fin = new FSJCSVReader(fileName);
 			SVehicleSample curSample = new SVehicleSample(fin);
 			
 			while (!curSample.vehSampleInfo.isSameSample(householdID, vehIDinHousehold)) {
@@ -150,13 +163,12 @@ public class SVehicleSample {
 			if (vehIDinHH!=vehIDinHousehold) return false;
 			return true;
 		}
-		//Constructor from reading a line from CSV file
-		private SampleID(String readLine) {
-			String[] sp = readLine.split(",");
-			hhID = Integer.parseInt(sp[0]);
-			vehIDinHH = Integer.parseInt(sp[1]);
-			hhWt = Float.parseFloat(sp[2]);
-			nTrips = Integer.parseInt(sp[3]);
+		//Constructor from the current line of CSV file
+		private SampleID(FSJCSVReader fin) {
+			hhID = fin.nextInt();
+			vehIDinHH = fin.nextInt();
+			hhWt = fin.nextFloat();
+			nTrips = fin.nextInt();
 		}	
 		//Forming a line String
 		@Override public String toString() {
@@ -177,28 +189,26 @@ public class SVehicleSample {
 		//Trip identification flag
 		public TripIsPublic isTripPublic;
 
-		//Constructor from reading a line from CSV file
-		private TripIDs(String readLine) {
-			String[] sp = readLine.split(",");
-			
-			gID = Integer.parseInt(sp[0]);
-			dayID = Integer.parseInt(sp[1]);
-			idInDay = Integer.parseInt(sp[2]);
+		//Constructor from the current line of CSV file
+		private TripIDs(FSJCSVReader fin) {
+			gID = fin.nextInt();
+			dayID = fin.nextInt();
+			idInDay = fin.nextInt();
 			
-			secsFromLastTrip = Integer.parseInt(sp[3]);
-			numRecSteps = Integer.parseInt(sp[4]);
-			miles = Float.parseFloat(sp[5]);
+			secsFromLastTrip = fin.nextInt();
+			numRecSteps = fin.nextInt();
+			miles = fin.nextFloat();
 			
-			year = Integer.parseInt(sp[6]);
-			month = Integer.parseInt(sp[7]);
-			day = Integer.parseInt(sp[8]);
+			year = fin.nextInt();
+			month = fin.nextInt();
+			day = fin.nextInt();
 			
-			hr24 = Integer.parseInt(sp[9]);
-			min = Integer.parseInt(sp[10]);
-			sec = Integer.parseInt(sp[11]);
+			hr24 = fin.nextInt();
+			min = fin.nextInt();
+			sec = fin.nextInt();
 			
-			if (sp.length > 12) {
-				isTripPublic = TripIsPublic.decode(sp[12]);
+			if (fin.hasNextField()) {
+				isTripPublic = TripIsPublic.decode(fin.nextString());
 			} else {
 				isTripPublic = TripIsPublic.unknown;
 			}
@@ -225,19 +235,18 @@ public class SVehicleSample {
 		public float[] fltGrade() {return fltGrade;}
 
 		//Constructor via reading a chunk from a file
-		private Trip (BufferedReader fin) throws Exception {
-			String readLine = fin.readLine();			
-			readLine = fin.readLine();
-			tripIDs = new TripIDs(readLine);
-			readLine = fin.readLine();
+		private Trip (FSJCSVReader fin) throws Exception {
+			fin.requireNextLine();			
+			fin.requireNextLine();
+			tripIDs = new TripIDs(fin);
+			fin.requireNextLine();
 			
 			speedMPH = new float[tripIDs.numRecSteps];
 			fltGrade = new float[tripIDs.numRecSteps];
 			for (int i=0; i<speedMPH.length; i++) {
-				readLine = fin.readLine();
-				String[] sp = readLine.split(",");
-				speedMPH[i] = Float.parseFloat(sp[0]);
-				fltGrade[i] = Float.parseFloat(sp[1]);
+				fin.requireNextLine();
+				speedMPH[i] = fin.nextFloat();
+				fltGrade[i] = fin.nextFloat();
 			}
 		}
 		//Function for writing the trip to file
@@ -0,0 +1,155 @@
+package fastsimjava.utility;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import fastsimjava.components.FSJCSVReader;
+
+//Class for reading a file of vehicle samples one sample at a time (see VehicleSampleMA.openStream and SVehicleSample.openStream)
+// -- Samples are parsed on a separate thread into a bounded read-ahead queue, so that memory use does not depend on file size
+//    and simulations can start as soon as the first sample is read
+// -- Samples that cannot be parsed stop the reading, and are reported as ParseException (with file name and line number) by next()
+// Note: the stream can only be iterated once, and should be closed if not iterated to the end
+public class SampleFileStream<T> implements Iterator<T>, Iterable<T> {
+	//Default number of samples read ahead
+	public static final int Default_ReadAhead = 16;
+	//Marker for end of file in the queue
+	private static final Object EndOfFile = new Object();
+
+	//Interface for parsing one sample from an opened file
+	interface SampleParser<T> {
+		public T parse(FSJCSVReader fin) throws Exception;
+	}
+
+	//File name, queue of read samples (or end-of-file marker or exception) and reading thread
+	private String fileName;
+	private ArrayBlockingQueue<Object> queue;
+	private Thread readerThread;
+	private volatile boolean closed;
+	//Next item taken from the queue (null if not yet taken)
+	private Object nextItem;
+	//Number of samples returned so far
+	private int numReturned;
+	public int numReturned() {return numReturned;}
+
+
+	//Constructor (opens the file and starts reading)
+	SampleFileStream(String fileName, int readAhead, final SampleParser<T> parser) throws IOException {
+		this.fileName = fileName;
+		queue = new ArrayBlockingQueue<Object>(Math.max(1, readAhead));
+		final FSJCSVReader fin = new FSJCSVReader(fileName);
+
+		readerThread = new Thread(new Runnable() {
+			@Override public void run() {
+				readAll(fin, parser);
+			}
+		}, "SampleFileStream");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	//Function run on the reading thread
+	// (the queue always ends with the end-of-file marker or an exception, unless the stream was closed, so that next() cannot wait forever)
+	private void readAll(FSJCSVReader fin, SampleParser<T> parser) {
+		Object lastItem = EndOfFile;
+		try {
+			while (!closed) {
+				if (!skipBlankLines(fin)) break;
+
+				int firstLine = fin.lineNumber() + 1;
+				T sample = null;
+				try {
+					sample = parser.parse(fin);
+				} catch (Exception e) {
+					lastItem = new ParseException(fileName, firstLine, fin.lineNumber(), e);
+					break;
+				}
+				queue.put(sample);
+			}
+		} catch (InterruptedException e) {
+			if (!closed) lastItem = new ParseException(fileName, fin.lineNumber()+1, fin.lineNumber()+1, e);
+		} catch (Throwable e) {
+			lastItem = new ParseException(fileName, fin.lineNumber()+1, fin.lineNumber()+1, e);
+		} finally {
+			try {
+				fin.close();
+			} catch (IOException e) {}
+
+			if (!closed) {
+				try {
+					queue.put(lastItem);
+				} catch (InterruptedException e) {}
+			}
+		}
+	}
+	//Function to skip empty lines before the next sample, returns false at end of file
+	private static boolean skipBlankLines(FSJCSVReader fin) throws IOException {
+		while (fin.nextLine()) {
+			if (!fin.isBlankLine()) {
+				fin.pushBack();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Function to stop reading (if not already at end of file)
+	public void close() {
+		closed = true;
+		readerThread.interrupt();
+		nextItem = EndOfFile;
+	}
+
+
+	@Override public Iterator<T> iterator() {return this;}
+
+	@Override public boolean hasNext() {
+		if (nextItem == null) {
+			try {
+				nextItem = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				nextItem = EndOfFile;
+			}
+		}
+		return nextItem != EndOfFile;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		Object item = nextItem;
+		nextItem = null;
+
+		if (item instanceof ParseException) {
+			nextItem = EndOfFile;
+			throw (ParseException)item;
+		}
+		numReturned++;
+		return (T)item;
+	}
+
+	@Override public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	//Exception for a sample that could not be read
+	public static class ParseException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private String fileName;
+		private int sampleFirstLine, lineNumber;
+		public String fileName() {return fileName;}
+		public int sampleFirstLine() {return sampleFirstLine;}
+		public int lineNumber() {return lineNumber;}
+
+		ParseException(String fileName, int sampleFirstLine, int lineNumber, Throwable cause) {
+			super(fileName + ": line " + lineNumber + " (sample starting at line " + sampleFirstLine + "): " + cause, cause);
+			this.fileName = fileName;
+			this.sampleFirstLine = sampleFirstLine;
+			this.lineNumber = lineNumber;
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package fastsimjava.utility;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import fastsimjava.*;
+import fastsimjava.abs.FSJHybridPowerManagerBase;
+import fastsimjava.components.FSJTripInput;
+
+//Class for calibrating the three-parameter tuning (addMass, addAux, adjDEMult) of a vehicle model against measured per-trip
+// fuel use or battery energy use, via Nelder-Mead (downhill simplex) minimization of the root-mean-square relative error
+// (for trips with zero measured value, which have no relative error, the absolute error is used instead)
+// Note #1: all trips of all candidate points of an iteration (initial simplex, or shrink step) are simulated concurrently on the executor
+// Note #2: each worker thread re-uses one simulator, the vehicle model is only re-set when the tuning values change
+public class ThreeParCalibrator {
+	//Quantity measured for each trip
+	public enum CalibrationTarget {
+		fuelUse,		//Fuel use in the units of the fuel converter type (e.g. gallons of gasoline)
+		batteryKWh,		//Battery energy use (kWh)
+	}
+	//Reason for the end of a calibration
+	public enum StopReason {
+		targetErrorReached, errorConverged, simplexConverged, maxEvaluations, maxSeconds
+	}
+
+	//Vehicle model and its curves
+	private FSJVehModelParam vehModel;
+	private FSJEffCurvesManager curveMan;
+	//Trips, measured values and calibration target
+	private FSJTripInput[] trips;
+	private float[] measured;
+	private CalibrationTarget target;
+
+	//Executor, factory for power managers and per-worker contexts
+	private ExecutorService executor;
+	private FleetBatchRunner.PowerManagerFactory pwrMgrFactory;
+	private ThreadLocal<WorkerContext> workerContexts;
+
+	//Relative SoC at the start of every trip for BEVs & PHEVs
+	public float pluginInitialRelSoC;
+	//Lower & upper bounds and initial simplex step sizes of [addMass, addAux, adjDEMult]
+	public float[] minValues, maxValues, initialSteps;
+
+	//Early stopping rules -- stop when error is below target, when the spread of errors over the simplex is below errorTol,
+	// when the simplex is smaller than simplexTol (relative to the initial steps), or on reaching the limits of evaluations or time
+	public float targetRMSRelError, errorTol, simplexTol;
+	public int maxEvaluations;
+	public float maxSeconds;
+
+
+	//Constructor (measured values are per trip, null power manager factory = default power manager)
+	public ThreeParCalibrator(FSJVehModelParam vehModel, FSJEffCurvesManager curveManager, FSJTripInput[] trips, float[] measured,
+			CalibrationTarget target, ExecutorService executor, FleetBatchRunner.PowerManagerFactory pmFactory) {
+		this.vehModel = vehModel;
+		curveMan = curveManager;
+		this.trips = trips;
+		this.measured = measured;
+		this.target = target;
+		this.executor = executor;
+
+		pwrMgrFactory = pmFactory;
+		if (pwrMgrFactory == null) pwrMgrFactory = new FleetBatchRunner.DefaultPowerManagerFactory();
+		workerContexts = new ThreadLocal<WorkerContext>() {
+			@Override protected WorkerContext initialValue() {
+				return new WorkerContext();
+			}
+		};
+
+		pluginInitialRelSoC = 1f;
+		minValues = new float[] {-500f, -5f, 0.5f};
+		maxValues = new float[] {1000f, 10f, 2f};
+		initialSteps = new float[] {100f, 0.5f, 0.1f};
+
+		targetRMSRelError = 0.001f;
+		errorTol = 1e-5f;
+		simplexTol = 0.001f;
+		maxEvaluations = 200;
+		maxSeconds = 60f;
+	}
+
+
+	//Function to run the calibration starting from the given tuning values
+	public CalibrationResult calibrate(float addMass, float addAux, float adjDEMult) throws InterruptedException, ExecutionException {
+		long startTime = System.currentTimeMillis();
+		int nDim = 3;
+		CalibrationResult res = new CalibrationResult();
+
+		//Initial simplex
+		float[][] simplex = new float[nDim+1][];
+		simplex[0] = bounded(new float[] {addMass, addAux, adjDEMult});
+		for (int i=0; i<nDim; i++) {
+			simplex[i+1] = new float[] {simplex[0][0], simplex[0][1], simplex[0][2]};
+			simplex[i+1][i] += initialSteps[i];
+			if (simplex[i+1][i] > maxValues[i]) simplex[i+1][i] = simplex[0][i] - initialSteps[i];
+			simplex[i+1] = bounded(simplex[i+1]);
+		}
+		float[] errors = evaluate(simplex);
+		res.numEvaluations += simplex.length;
+
+		while (true) {
+			sortSimplex(simplex, errors);
+
+			//Check stopping rules
+			res.stopReason = null;
+			if (errors[0] <= targetRMSRelError) res.stopReason = StopReason.targetErrorReached;
+			else if ((errors[nDim] - errors[0]) <= errorTol) res.stopReason = StopReason.errorConverged;
+			else if (simplexSize(simplex) <= simplexTol) res.stopReason = StopReason.simplexConverged;
+			else if (res.numEvaluations >= maxEvaluations) res.stopReason = StopReason.maxEvaluations;
+			else if ((System.currentTimeMillis() - startTime) >= 1000f*maxSeconds) res.stopReason = StopReason.maxSeconds;
+			if (res.stopReason != null) break;
+			res.numIterations++;
+
+			//Centroid of all but the worst point
+			float[] centroid = new float[nDim];
+			for (int p=0; p<nDim; p++) {
+				for (int i=0; i<nDim; i++) centroid[i] += simplex[p][i]/nDim;
+			}
+
+			//Reflection
+			float[] xr = pointAlong(centroid, simplex[nDim], -1f);
+			float fr = evaluate(xr);
+			res.numEvaluations++;
+
+			if (fr < errors[0]) {
+				//Expansion
+				float[] xe = pointAlong(centroid, simplex[nDim], -2f);
+				float fe = evaluate(xe);
+				res.numEvaluations++;
+				if (fe < fr) {
+					simplex[nDim] = xe;
+					errors[nDim] = fe;
+				} else {
+					simplex[nDim] = xr;
+					errors[nDim] = fr;
+				}
+				continue;
+			}
+			if (fr < errors[nDim-1]) {
+				simplex[nDim] = xr;
+				errors[nDim] = fr;
+				continue;
+			}
+
+			//Contraction (outside if reflected point is better than the worst, otherwise inside)
+			float[] xc;
+			if (fr < errors[nDim]) xc = pointAlong(centroid, simplex[nDim], -0.5f);
+			else xc = pointAlong(centroid, simplex[nDim], 0.5f);
+			float fc = evaluate(xc);
+			res.numEvaluations++;
+			if (fc < Math.min(fr, errors[nDim])) {
+				simplex[nDim] = xc;
+				errors[nDim] = fc;
+				continue;
+			}
+
+			//Shrink towards the best point
+			float[][] shrunk = new float[nDim][];
+			for (int p=1; p<=nDim; p++) shrunk[p-1] = pointAlong(simplex[0], simplex[p], 0.5f);
+			float[] shrunkErrors = evaluate(shrunk);
+			res.numEvaluations += nDim;
+			for (int p=1; p<=nDim; p++) {
+				simplex[p] = shrunk[p-1];
+				errors[p] = shrunkErrors[p-1];
+			}
+		}
+
+		res.addMass = simplex[0][0];
+		res.addAux = simplex[0][1];
+		res.adjDEMult = simplex[0][2];
+		res.rmsRelError = errors[0];
+		res.seconds = 0.001f*(System.currentTimeMillis() - startTime);
+		return res;
+	}
+
+	//Function for point at centroid + scale*(x - centroid), within bounds
+	private float[] pointAlong(float[] centroid, float[] x, float scale) {
+		float[] pt = new float[centroid.length];
+		for (int i=0; i<pt.length; i++) pt[i] = centroid[i] + scale*(x[i] - centroid[i]);
+		return bounded(pt);
+	}
+	private float[] bounded(float[] x) {
+		for (int i=0; i<x.length; i++) x[i] = Math.max(minValues[i], Math.min(maxValues[i], x[i]));
+		return x;
+	}
+	//Function to sort the simplex points by error (best first)
+	private static void sortSimplex(float[][] simplex, float[] errors) {
+		for (int i=1; i<errors.length; i++) {
+			float[] x = simplex[i];
+			float f = errors[i];
+			int j = i-1;
+			while ((j >= 0)&&(errors[j] > f)) {
+				simplex[j+1] = simplex[j];
+				errors[j+1] = errors[j];
+				j--;
+			}
+			simplex[j+1] = x;
+			errors[j+1] = f;
+		}
+	}
+	//Function for size of the simplex (largest distance from the best point, scaled by the initial steps)
+	private float simplexSize(float[][] simplex) {
+		float maxDist = 0f;
+		for (int p=1; p<simplex.length; p++) {
+			float dist2 = 0f;
+			for (int i=0; i<simplex[0].length; i++) {
+				float d = (simplex[p][i] - simplex[0][i])/initialSteps[i];
+				dist2 += d*d;
+			}
+			maxDist = Math.max(maxDist, (float)Math.sqrt(dist2));
+		}
+		return maxDist;
+	}
+
+
+	//Function to evaluate the root-mean-square relative error at one point
+	public float evaluate(float[] point) throws InterruptedException, ExecutionException {
+		float[][] points = {point};
+		return evaluate(points)[0];
+	}
+	//Function to evaluate several points, with all trips of all points simulated concurrently
+	public float[] evaluate(float[][] points) throws InterruptedException, ExecutionException {
+		ArrayList<Future<Float>> lstFutures = new ArrayList<Future<Float>>();
+		for (int p=0; p<points.length; p++) {
+			final float[] point = points[p];
+			for (int j=0; j<trips.length; j++) {
+				final int tripID = j;
+				lstFutures.add(executor.submit(new Callable<Float>() {
+					@Override public Float call() throws Exception {
+						return workerContexts.get().runTrip(point, tripID);
+					}
+				}));
+			}
+		}
+
+		float[] errors = new float[points.length];
+		for (int p=0; p<points.length; p++) {
+			float sumSq = 0f;
+			for (int j=0; j<trips.length; j++) {
+				float simValue = lstFutures.get(p*trips.length + j).get();
+				float relError = simValue - measured[j];
+				if (measured[j] != 0) relError = relError/measured[j];
+				sumSq += relError*relError;
+			}
+			errors[p] = (float)Math.sqrt(sumSq/trips.length);
+		}
+		return errors;
+	}
+
+	//Per-worker simulator & power manager, with the tuning values the vehicle model was last set with
+	private class WorkerContext {
+		private FASTSimJ3c fsj;
+		private FSJHybridPowerManagerBase pwrMgr;
+		private float[] curTuning;
+
+		private WorkerContext() {
+			fsj = new FASTSimJ3c();
+			pwrMgr = pwrMgrFactory.createPowerManager();
+		}
+
+		//Function to simulate one trip with given tuning values, returns the simulated value of the calibration target
+		private float runTrip(float[] tuning, int tripID) {
+			if ((curTuning == null)||(curTuning[0] != tuning[0])||(curTuning[1] != tuning[1])||(curTuning[2] != tuning[2])) {
+				fsj.setVehModel(vehModel, curveMan, tuning[0], tuning[1], tuning[2]);
+				curTuning = new float[] {tuning[0], tuning[1], tuning[2]};
+			}
+
+			if (vehModel.isPlugin() && (pluginInitialRelSoC >= 0)) fsj.setRelSoC(pluginInitialRelSoC);
+			fsj.runC(trips[tripID], pwrMgr);
+
+			switch (target) {
+			case batteryKWh:
+				return fsj.lastTripSummary().batteryUse;
+			default:
+				return fsj.lastTripSummary().fuelUse;
+			}
+		}
+	}
+
+
+	//Result of a calibration
+	public static class CalibrationResult {
+		public float addMass, addAux, adjDEMult, rmsRelError, seconds;
+		public int numEvaluations, numIterations;
+		public StopReason stopReason;
+
+		private CalibrationResult() {}
+
+		@Override public String toString() {
+			return ""+addMass+","+addAux+","+adjDEMult+","+rmsRelError+","+numEvaluations+","+numIterations+","+stopReason+","+seconds;
+		}
+	}
+}
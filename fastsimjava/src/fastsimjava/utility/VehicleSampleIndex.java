@@ -0,0 +1,354 @@
+package fastsimjava.utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import fastsimjava.components.FSJCSVReader;
+
+//Index of a file of vehicle samples (same format as VehicleSampleMA.readArrayFromFile), with the byte offset, household ID,
+// vehicle ID in household and number of trips of every sample, and the byte offset & number of time steps of every trip
+// -- The index is saved in a small sidecar file (name of the samples file + ".idx"), and allows reading any one sample or trip
+//    directly, without parsing the file up to it
+// -- The sidecar records the length & last-modified time of the samples file, and open() re-builds it if these changed
+// Note: line breaks in the samples file should be \n or \r\n (as written by writeArrayToFile)
+public class VehicleSampleIndex {
+	//Extension of the sidecar file, and format identification
+	public static final String FileExtension = ".idx";
+	public static final int MagicNumber = 0x46534A49;	//"FSJI"
+	public static final int FormatVersion = 1;
+
+	//Samples file, with its length & last-modified time when the index was built
+	private String samplesFileName;
+	private long samplesFileLength, samplesFileLastModified;
+	public String samplesFileName() {return samplesFileName;}
+
+	//Per-sample info, first trip of each sample (in the per-trip arrays), and per-trip info
+	private long[] sampleOffsets;
+	private int[] hhIDs, vehIDsInHH, sampleFirstTrip;
+	private long[] tripOffsets;
+	private int[] tripNumRecSteps;
+	//Look-up of sample ID by household ID & vehicle ID in household
+	private HashMap<Long, Integer> sampleLookup;
+
+	public int numSamples() {return sampleOffsets.length;}
+	public int numTrips() {return tripOffsets.length;}
+	public int hhID(int sampleID) {return hhIDs[sampleID];}
+	public int vehIDinHH(int sampleID) {return vehIDsInHH[sampleID];}
+	public int numTrips(int sampleID) {return sampleFirstTrip[sampleID+1] - sampleFirstTrip[sampleID];}
+	public int numRecSteps(int sampleID, int tripID) {return tripNumRecSteps[sampleFirstTrip[sampleID] + tripID];}
+	public long sampleOffset(int sampleID) {return sampleOffsets[sampleID];}
+	public long tripOffset(int sampleID, int tripID) {return tripOffsets[sampleFirstTrip[sampleID] + tripID];}
+
+
+	private VehicleSampleIndex() {}
+
+	//Function to open the index of a samples file -- reads the sidecar file if it is up to date, otherwise builds the index
+	// and (tries to) save the sidecar file
+	public static VehicleSampleIndex open(String samplesFileName) throws IOException {
+		File sidecar = new File(samplesFileName + FileExtension);
+		File samplesFile = new File(samplesFileName);
+		if (sidecar.exists()) {
+			try {
+				VehicleSampleIndex index = readFromFile(samplesFileName, sidecar.getPath());
+				if ((index.samplesFileLength == samplesFile.length())&&(index.samplesFileLastModified == samplesFile.lastModified())) return index;
+			} catch (IOException e) {}
+		}
+
+		VehicleSampleIndex index = build(samplesFileName);
+		try {
+			index.writeToFile(sidecar.getPath());
+		} catch (IOException e) {}
+		return index;
+	}
+
+	//Function to build the index by scanning the samples file (only the lines with sample & trip IDs are parsed)
+	public static VehicleSampleIndex build(String samplesFileName) throws IOException {
+		File samplesFile = new File(samplesFileName);
+		VehicleSampleIndex index = new VehicleSampleIndex();
+		index.samplesFileName = samplesFileName;
+		index.samplesFileLength = samplesFile.length();
+		index.samplesFileLastModified = samplesFile.lastModified();
+
+		LongArray sampleOffsets = new LongArray();
+		IntArray hhIDs = new IntArray();
+		IntArray vehIDs = new IntArray();
+		IntArray firstTrip = new IntArray();
+		LongArray tripOffsets = new LongArray();
+		IntArray tripSteps = new IntArray();
+
+		LineScanner fin = new LineScanner(new FileInputStream(samplesFile));
+		try {
+			while (true) {
+				if (!fin.skipBlankLines()) break;	//Empty lines before the next sample (e.g. at the end of the file)
+				long sampleOffset = fin.lineStartOffset();
+				fin.requireSkipLines(1);			//Header of vehicle sample
+				fin.requireSkipLines(1);			//Header of sample IDs
+
+				FSJCSVReader idLine = FSJCSVReader.forLine(fin.requireLine());
+				sampleOffsets.add(sampleOffset);
+				hhIDs.add(idLine.nextInt());
+				vehIDs.add(idLine.nextInt());
+				idLine.skipField();
+				int nTrips = idLine.nextInt();
+				firstTrip.add(tripOffsets.size());
+
+				for (int j=0; j<nTrips; j++) {
+					tripOffsets.add(fin.offset());
+					fin.requireSkipLines(2);		//Header of trip & header of trip IDs
+
+					FSJCSVReader tripLine = FSJCSVReader.forLine(fin.requireLine());
+					for (int k=0; k<4; k++) tripLine.skipField();
+					int numRecSteps = tripLine.nextInt();
+					for (int k=5; k<12; k++) tripLine.skipField();
+					int numPayloadAdjust = tripLine.nextInt();
+					tripSteps.add(numRecSteps);
+
+					//Payload adjustment header & lines, sec-by-sec header & lines
+					fin.requireSkipLines(1 + numPayloadAdjust + 1 + numRecSteps);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Could not index " + samplesFileName + " at line " + fin.lineNumber(), e);
+		} finally {
+			fin.close();
+		}
+
+		index.sampleOffsets = sampleOffsets.toArray();
+		index.hhIDs = hhIDs.toArray();
+		index.vehIDsInHH = vehIDs.toArray();
+		firstTrip.add(tripOffsets.size());
+		index.sampleFirstTrip = firstTrip.toArray();
+		index.tripOffsets = tripOffsets.toArray();
+		index.tripNumRecSteps = tripSteps.toArray();
+		index.formLookup();
+		return index;
+	}
+	private void formLookup() {
+		sampleLookup = new HashMap<Long, Integer>();
+		for (int i=hhIDs.length-1; i>=0; i--) sampleLookup.put(lookupKey(hhIDs[i], vehIDsInHH[i]), i);
+	}
+	private static Long lookupKey(int hhID, int vehIDinHH) {
+		return (((long)hhID) << 32) | (vehIDinHH & 0xFFFFFFFFL);
+	}
+
+
+	//Function to save the index
+	public void writeToFile(String fname) throws IOException {
+		DataOutputStream fout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		try {
+			fout.writeInt(MagicNumber);
+			fout.writeInt(FormatVersion);
+			fout.writeLong(samplesFileLength);
+			fout.writeLong(samplesFileLastModified);
+			fout.writeInt(sampleOffsets.length);
+			fout.writeInt(tripOffsets.length);
+
+			for (int i=0; i<sampleOffsets.length; i++) {
+				fout.writeLong(sampleOffsets[i]);
+				fout.writeInt(hhIDs[i]);
+				fout.writeInt(vehIDsInHH[i]);
+				fout.writeInt(sampleFirstTrip[i+1] - sampleFirstTrip[i]);
+			}
+			for (int i=0; i<tripOffsets.length; i++) {
+				fout.writeLong(tripOffsets[i]);
+				fout.writeInt(tripNumRecSteps[i]);
+			}
+		} finally {
+			fout.close();
+		}
+	}
+	//Function to read a saved index
+	public static VehicleSampleIndex readFromFile(String samplesFileName, String fname) throws IOException {
+		DataInputStream fin = new DataInputStream(new BufferedInputStream(new FileInputStream(fname)));
+		try {
+			if ((fin.readInt() != MagicNumber)||(fin.readInt() != FormatVersion)) throw new IOException("Not a vehicle sample index file: " + fname);
+
+			VehicleSampleIndex index = new VehicleSampleIndex();
+			index.samplesFileName = samplesFileName;
+			index.samplesFileLength = fin.readLong();
+			index.samplesFileLastModified = fin.readLong();
+			int numSamples = fin.readInt();
+			int numTrips = fin.readInt();
+
+			index.sampleOffsets = new long[numSamples];
+			index.hhIDs = new int[numSamples];
+			index.vehIDsInHH = new int[numSamples];
+			index.sampleFirstTrip = new int[numSamples+1];
+			for (int i=0; i<numSamples; i++) {
+				index.sampleOffsets[i] = fin.readLong();
+				index.hhIDs[i] = fin.readInt();
+				index.vehIDsInHH[i] = fin.readInt();
+				index.sampleFirstTrip[i+1] = index.sampleFirstTrip[i] + fin.readInt();
+			}
+			index.tripOffsets = new long[numTrips];
+			index.tripNumRecSteps = new int[numTrips];
+			for (int i=0; i<numTrips; i++) {
+				index.tripOffsets[i] = fin.readLong();
+				index.tripNumRecSteps[i] = fin.readInt();
+			}
+
+			index.formLookup();
+			return index;
+		} finally {
+			fin.close();
+		}
+	}
+
+
+	//Function to find a sample by household ID & vehicle ID in household (returns -1 if not found)
+	public int findSample(int hhID, int vehIDinHH) {
+		Integer sampleID = sampleLookup.get(lookupKey(hhID, vehIDinHH));
+		if (sampleID == null) return -1;
+		return sampleID;
+	}
+
+	//Function to read one sample
+	public VehicleSampleMA readSample(int sampleID) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(samplesFileName, "r");
+		try {
+			return VehicleSampleMA.readFrom(readerAt(raf, sampleOffsets[sampleID]));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Could not read sample " + sampleID + " of " + samplesFileName, e);
+		} finally {
+			raf.close();
+		}
+	}
+	// ...by household ID & vehicle ID in household (returns null if not found)
+	public VehicleSampleMA readSample(int hhID, int vehIDinHH) throws IOException {
+		int sampleID = findSample(hhID, vehIDinHH);
+		if (sampleID < 0) return null;
+		return readSample(sampleID);
+	}
+	//Function to read one trip of a sample
+	public VehicleSampleMA.Trip readTrip(int sampleID, int tripID) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(samplesFileName, "r");
+		try {
+			return VehicleSampleMA.readTripFrom(readerAt(raf, tripOffset(sampleID, tripID)));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Could not read trip " + tripID + " of sample " + sampleID + " of " + samplesFileName, e);
+		} finally {
+			raf.close();
+		}
+	}
+	private static FSJCSVReader readerAt(RandomAccessFile raf, long offset) throws IOException {
+		FileChannel channel = raf.getChannel();
+		channel.position(offset);
+		return new FSJCSVReader(new InputStreamReader(Channels.newInputStream(channel)));
+	}
+
+
+	//Scanner of lines of a file as bytes, keeping track of the byte offset
+	private static class LineScanner {
+		private InputStream in;
+		private byte[] buf;
+		private int pos, lim, lineNumber;
+		private long bufOffset, lineStartOffset;
+
+		private LineScanner(InputStream in) {
+			this.in = in;
+			buf = new byte[1 << 16];
+		}
+		private long offset() {return bufOffset + pos;}
+		private int lineNumber() {return lineNumber;}
+		private long lineStartOffset() {return lineStartOffset;}
+		private void close() throws IOException {in.close();}
+
+		private boolean fill() throws IOException {
+			bufOffset += lim;
+			pos = 0;
+			lim = Math.max(0, in.read(buf));
+			return lim > 0;
+		}
+		//Function to skip one line, returns false if at end of file
+		private boolean skipLine() throws IOException {
+			boolean anyChars = false;
+			while (true) {
+				if ((pos >= lim)&&!fill()) {
+					if (anyChars) lineNumber++;
+					return anyChars;
+				}
+				anyChars = true;
+				if (buf[pos++] == '\n') {
+					lineNumber++;
+					return true;
+				}
+			}
+		}
+		//Function to skip lines with only white space (as FSJCSVReader.isBlankLine), returns false if at end of file
+		// -- stops at the first other character, with the start of its line in lineStartOffset()
+		private boolean skipBlankLines() throws IOException {
+			lineStartOffset = offset();
+			while (true) {
+				if ((pos >= lim)&&!fill()) return false;
+				byte b = buf[pos];
+				if (!Character.isWhitespace(b)) return true;
+				pos++;
+				if (b == '\n') {
+					lineNumber++;
+					lineStartOffset = offset();
+				}
+			}
+		}
+		private void requireSkipLines(int numLines) throws IOException {
+			for (int i=0; i<numLines; i++) {
+				if (!skipLine()) throw new EOFException("Unexpected end of file after line " + lineNumber);
+			}
+		}
+		//Function to read one line as String (without line break), throwing EOFException if at end of file
+		private String requireLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			boolean anyChars = false;
+			while (true) {
+				if ((pos >= lim)&&!fill()) {
+					if (!anyChars) throw new EOFException("Unexpected end of file after line " + lineNumber);
+					break;
+				}
+				anyChars = true;
+				byte b = buf[pos++];
+				if (b == '\n') break;
+				if (b != '\r') sb.append((char)b);
+			}
+			lineNumber++;
+			return sb.toString();
+		}
+	}
+
+	//Growable arrays of primitives
+	private static class LongArray {
+		private long[] values = new long[1024];
+		private int size;
+		private void add(long v) {
+			if (size == values.length) values = Arrays.copyOf(values, 2*size);
+			values[size++] = v;
+		}
+		private int size() {return size;}
+		private long[] toArray() {return Arrays.copyOf(values, size);}
+	}
+	private static class IntArray {
+		private int[] values = new int[1024];
+		private int size;
+		private void add(int v) {
+			if (size == values.length) values = Arrays.copyOf(values, 2*size);
+			values[size++] = v;
+		}
+		private int[] toArray() {return Arrays.copyOf(values, size);}
+	}
+}
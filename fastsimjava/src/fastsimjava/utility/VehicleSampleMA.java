@@ -1,14 +1,16 @@
 package fastsimjava.utility;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import fastsimjava.components.FSJCSVReader;
+import fastsimjava.components.FSJCompactTrip;
+
 
 public class VehicleSampleMA {
 	
-	private static final String Header_newVehicleSample = "____VehicleSample__";
+	static final String Header_newVehicleSample = "____VehicleSample__";
 	private static final String Header_newTrip = "___Trip_";
 	private static final String Header_SampleID = "hhID,vehIDinHH,hhWt,nTrips";
 	private static final String Header_TripIDs = "gID,dayID,idInDay,secsFromLastTrip,numRecSteps,miles,year,month,day,hr24,min,sec,numPayloadAdjust";
@@ -57,7 +59,7 @@ public class VehicleSampleMA {
 		ArrayList<VehicleSampleMA> lst = new ArrayList<VehicleSampleMA>();
 		
 		try {
-			BufferedReader fin = new BufferedReader(new FileReader(fname));
+			FSJCSVReader fin = new FSJCSVReader(fname);
 
 			int updatePeriod = 50;
 			int samplesCount = 0;
@@ -87,17 +89,40 @@ public class VehicleSampleMA {
 		for (int i=0; i<arr.length; i++) arr[i] = lst.get(i);
 		return arr;
 	}
+	//Function for opening a file for reading one sample at a time (with default number of samples read ahead)
+	public static SampleFileStream<VehicleSampleMA> openStream(String fname) throws IOException {
+		return openStream(fname, SampleFileStream.Default_ReadAhead);
+	}
+	public static SampleFileStream<VehicleSampleMA> openStream(String fname, int readAhead) throws IOException {
+		return new SampleFileStream<VehicleSampleMA>(fname, readAhead, new SampleFileStream.SampleParser<VehicleSampleMA>() {
+			@Override public VehicleSampleMA parse(FSJCSVReader fin) throws Exception {
+				return new VehicleSampleMA(fin);
+			}
+		});
+	}
+	//Functions to read the next sample, or the next trip, from an opened file (used by ParallelSampleLoader & VehicleSampleIndex)
+	static VehicleSampleMA readFrom(FSJCSVReader fin) throws Exception {
+		return new VehicleSampleMA(fin);
+	}
+	static Trip readTripFrom(FSJCSVReader fin) throws Exception {
+		return new Trip(fin);
+	}
 	
 	
 	//Default constructor
 	private VehicleSampleMA() {}
+	//Constructor from identification info and already formed trips (used by VehicleSampleStore)
+	VehicleSampleMA(SampleID vehSampleInfo, Trip[] trips) {
+		this.vehSampleInfo = vehSampleInfo;
+		this.trips = trips;
+	}
 	//Private constructor via reading from file
-	private VehicleSampleMA(BufferedReader fin) throws Exception {
-		String readLine = fin.readLine();
-		readLine = fin.readLine();
+	private VehicleSampleMA(FSJCSVReader fin) throws Exception {
+		fin.requireNextLine();	//Skip header of vehicle sample
+		fin.requireNextLine();	//Skip header of sample IDs
 		
-		readLine = fin.readLine();
-		vehSampleInfo = new SampleID(readLine);
+		fin.requireNextLine();
+		vehSampleInfo = new SampleID(fin);
 		
 		trips = new Trip[vehSampleInfo.nTrips];
 		for (int i=0; i<trips.length; i++) trips[i] = new Trip(fin);
@@ -134,14 +159,13 @@ public class VehicleSampleMA {
 		public float hhWt;
 
 		//Default constructor
-		private SampleID() {}
-		//Constructor from reading a line from CSV file
-		private SampleID(String readLine) {
-			String[] sp = readLine.split(",");
-			hhID = Integer.parseInt(sp[0]);
-			vehIDinHH = Integer.parseInt(sp[1]);
-			hhWt = Float.parseFloat(sp[2]);
-			nTrips = Integer.parseInt(sp[3]);
+		SampleID() {}
+		//Constructor from the current line of CSV file
+		private SampleID(FSJCSVReader fin) {
+			hhID = fin.nextInt();
+			vehIDinHH = fin.nextInt();
+			hhWt = fin.nextFloat();
+			nTrips = fin.nextInt();
 		}	
 		//Forming a line String
 		@Override public String toString() {
@@ -160,27 +184,25 @@ public class VehicleSampleMA {
 		public int year,month,day,hr24,min,sec;
 
 		//Default constructor
-		private TripIDs() {}
-		//Constructor from reading a line from CSV file
-		private TripIDs(String readLine) {
-			String[] sp = readLine.split(",");
+		TripIDs() {}
+		//Constructor from the current line of CSV file
+		private TripIDs(FSJCSVReader fin) {
+			gID = fin.nextInt();
+			dayID = fin.nextInt();
+			idInDay = fin.nextInt();
 			
-			gID = Integer.parseInt(sp[0]);
-			dayID = Integer.parseInt(sp[1]);
-			idInDay = Integer.parseInt(sp[2]);
+			secsFromLastTrip = fin.nextInt();
+			numRecSteps = fin.nextInt();
+			miles = fin.nextFloat();
 			
-			secsFromLastTrip = Integer.parseInt(sp[3]);
-			numRecSteps = Integer.parseInt(sp[4]);
-			miles = Float.parseFloat(sp[5]);
+			year = fin.nextInt();
+			month = fin.nextInt();
+			day = fin.nextInt();
 			
-			year = Integer.parseInt(sp[6]);
-			month = Integer.parseInt(sp[7]);
-			day = Integer.parseInt(sp[8]);
-			
-			hr24 = Integer.parseInt(sp[9]);
-			min = Integer.parseInt(sp[10]);
-			sec = Integer.parseInt(sp[11]);
-			numPayloadAdjust = Integer.parseInt(sp[12]);
+			hr24 = fin.nextInt();
+			min = fin.nextInt();
+			sec = fin.nextInt();
+			numPayloadAdjust = fin.nextInt();
 		}
 		
 		//Forming a line String
@@ -211,12 +233,16 @@ public class VehicleSampleMA {
 		public int tStepID;
 		public float payloadKg;
 		
-		private AdditionalPayload() {}
+		AdditionalPayload() {}
 		public AdditionalPayload(String readLine) {
 			String[] sp = readLine.split(",");
 			tStepID =  Integer.parseInt(sp[0]);
 			payloadKg =  Float.parseFloat(sp[1]);
 		}
+		private AdditionalPayload(FSJCSVReader fin) {
+			tStepID = fin.nextInt();
+			payloadKg = fin.nextFloat();
+		}
 		
 		//Forming a line String
 		@Override public String toString() {
@@ -279,35 +305,47 @@ public class VehicleSampleMA {
 		private float[] recAuxKW;
 		public float[] recAuxKW() {return recAuxKW;}
 		
+		//Function to return the trip in compact (quantized) form, with payload as 1Hz time series
+		public FSJCompactTrip compactTrip() {
+			return new FSJCompactTrip(speedMPH, fltGrade, recAuxKW, payload1HzTimeSeries(payloadAdjust, speedMPH.length));
+		}
+		
 		//Default constructor
 		private Trip() {}
+		//Constructor from already formed identifiers, payload adjustments and sec-by-sec data (used by VehicleSampleStore)
+		Trip(TripIDs tripIDs, AdditionalPayload[] payloadAdjust, float[] speedMPH, float[] fltGrade, float[] recAuxKW) {
+			this.tripIDs = tripIDs;
+			this.payloadAdjust = payloadAdjust;
+			this.speedMPH = speedMPH;
+			this.fltGrade = fltGrade;
+			this.recAuxKW = recAuxKW;
+		}
 		//Constructor via reading a chunk from a file
-		private Trip (BufferedReader fin) throws Exception {
-			String readLine = fin.readLine();		//Skip header of Trip	
+		private Trip (FSJCSVReader fin) throws Exception {
+			fin.requireNextLine();		//Skip header of Trip	
 			
-			readLine = fin.readLine();	//Skip header of Trip IDs
-			readLine = fin.readLine();	//Data of Trip IDs
+			fin.requireNextLine();	//Skip header of Trip IDs
+			fin.requireNextLine();	//Data of Trip IDs
 			
-			tripIDs = new TripIDs(readLine);
+			tripIDs = new TripIDs(fin);
 			
 			payloadAdjust = new AdditionalPayload[tripIDs.numPayloadAdjust];
 			speedMPH = new float[tripIDs.numRecSteps];
 			fltGrade = new float[tripIDs.numRecSteps];
 			recAuxKW = new float[tripIDs.numRecSteps];
 						
-			readLine = fin.readLine();	//Skip header of payload adjustment
+			fin.requireNextLine();	//Skip header of payload adjustment
 			for (int i=0; i<payloadAdjust.length; i++) {
-				readLine = fin.readLine();
-				payloadAdjust[i] = new AdditionalPayload(readLine);
+				fin.requireNextLine();
+				payloadAdjust[i] = new AdditionalPayload(fin);
 			}
 			
-			readLine = fin.readLine();	//Skip header of sec-by-sec			
+			fin.requireNextLine();	//Skip header of sec-by-sec			
 			for (int i=0; i<speedMPH.length; i++) {
-				readLine = fin.readLine();
-				String[] sp = readLine.split(",");
-				speedMPH[i] = Float.parseFloat(sp[0]);
-				fltGrade[i] = Float.parseFloat(sp[1]);
-				recAuxKW[i] = Float.parseFloat(sp[2]);
+				fin.requireNextLine();
+				speedMPH[i] = fin.nextFloat();
+				fltGrade[i] = fin.nextFloat();
+				recAuxKW[i] = fin.nextFloat();
 			}
 		}
 		//Function for writing the trip to file
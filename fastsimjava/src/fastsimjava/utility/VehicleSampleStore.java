@@ -0,0 +1,370 @@
+package fastsimjava.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import fastsimjava.components.FSJTripInput;
+
+//Binary columnar store of vehicle samples (same contents as the CSV files of VehicleSampleMA), opened via memory-mapping
+// -- Layout: header, table of samples, table of trips, table of payload adjustments, then the speedMPH, fltGrade and recAuxKW
+//    of all trips each as one contiguous column of floats (little-endian)
+// -- Opening the store only maps the file, sec-by-sec data of a trip can be viewed without copying or parsing (as FloatBuffer),
+//    and is only copied into arrays when forming a VehicleSampleMA or a trip input for simulation
+// Note #1: columns are mapped in chunks of whole trips (a mapped buffer is limited to 2GB), tables are mapped as single buffers
+// Note #2: the store may be shared by any number of threads for reading
+public class VehicleSampleStore {
+	//File format identification
+	public static final int MagicNumber = 0x46534A56;	//"FSJV"
+	public static final int FormatVersion = 1;
+	//Bytes of header and of one record in each of the tables
+	private static final int HeaderBytes = 128;
+	private static final int SampleRecBytes = 20;
+	private static final int TripRecBytes = 64;
+	private static final int PayloadRecBytes = 8;
+	//Column IDs and maximum bytes in one mapped chunk of a column
+	private static final int Col_speedMPH = 0;
+	private static final int Col_fltGrade = 1;
+	private static final int Col_recAuxKW = 2;
+	private static final int NumColumns = 3;
+	private static final long MaxChunkBytes = Integer.MAX_VALUE;
+
+	//File & mapped tables
+	private RandomAccessFile raf;
+	private ByteBuffer sampleTable, tripTable, payloadTable;
+	private int numSamples, numTrips;
+	public int numSamples() {return numSamples;}
+	public int numTrips() {return numTrips;}
+
+	//Mapped chunks of the columns (indexed as [columnID][chunkID]), with the first trip & first time step of each chunk
+	private ByteBuffer[][] columnChunks;
+	private int[] chunkFirstTrip;
+	private long[] chunkFirstStep;
+
+
+	//Constructor via opening a store file
+	public VehicleSampleStore(String fname) throws IOException {
+		raf = new RandomAccessFile(fname, "r");
+		FileChannel channel = raf.getChannel();
+
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HeaderBytes).order(ByteOrder.LITTLE_ENDIAN);
+		if ((header.getInt(0) != MagicNumber)||(header.getInt(4) != FormatVersion)) {
+			raf.close();
+			throw new IOException("Not a vehicle sample store file: " + fname);
+		}
+		numSamples = header.getInt(8);
+		numTrips = header.getInt(12);
+		int numPayloadAdjust = header.getInt(16);
+		long[] colOffsets = {header.getLong(48), header.getLong(56), header.getLong(64)};
+
+		sampleTable = mapTable(channel, header.getLong(24), (long)numSamples*SampleRecBytes);
+		tripTable = mapTable(channel, header.getLong(32), (long)numTrips*TripRecBytes);
+		payloadTable = mapTable(channel, header.getLong(40), (long)numPayloadAdjust*PayloadRecBytes);
+
+		//Split columns into chunks at trip boundaries
+		ArrayList<Integer> lstChunkFirstTrip = new ArrayList<Integer>();
+		ArrayList<Long> lstChunkNumSteps = new ArrayList<Long>();
+		long curChunkSteps = 0;
+		for (int t=0; t<numTrips; t++) {
+			long tripSteps = numRecSteps(t);
+			if ((lstChunkFirstTrip.size() < 1)||(4*(curChunkSteps + tripSteps) > MaxChunkBytes)) {
+				if (lstChunkFirstTrip.size() > 0) lstChunkNumSteps.add(curChunkSteps);
+				lstChunkFirstTrip.add(t);
+				curChunkSteps = 0;
+			}
+			curChunkSteps += tripSteps;
+		}
+		if (lstChunkFirstTrip.size() > 0) lstChunkNumSteps.add(curChunkSteps);
+
+		int numChunks = lstChunkFirstTrip.size();
+		chunkFirstTrip = new int[numChunks];
+		chunkFirstStep = new long[numChunks];
+		columnChunks = new ByteBuffer[NumColumns][numChunks];
+		for (int c=0; c<numChunks; c++) {
+			chunkFirstTrip[c] = lstChunkFirstTrip.get(c);
+			chunkFirstStep[c] = firstStep(chunkFirstTrip[c]);
+			long numBytes = 4*lstChunkNumSteps.get(c);
+			for (int i=0; i<NumColumns; i++) {
+				columnChunks[i][c] = channel.map(FileChannel.MapMode.READ_ONLY, colOffsets[i] + 4*chunkFirstStep[c], numBytes);
+			}
+		}
+	}
+	private static ByteBuffer mapTable(FileChannel channel, long offset, long numBytes) throws IOException {
+		if (numBytes > MaxChunkBytes) throw new IOException("Table too large for mapping");
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, numBytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	//Function to close the file (mapped buffers stay valid until garbage collected)
+	public void close() {
+		try {
+			raf.close();
+		} catch (IOException e) {}
+	}
+
+
+	//Identification info of a vehicle sample
+	public VehicleSampleMA.SampleID sampleID(int sampleID) {
+		int pos = sampleID*SampleRecBytes;
+		VehicleSampleMA.SampleID info = new VehicleSampleMA.SampleID();
+		info.hhID = sampleTable.getInt(pos);
+		info.vehIDinHH = sampleTable.getInt(pos+4);
+		info.hhWt = sampleTable.getFloat(pos+8);
+		info.nTrips = sampleTable.getInt(pos+12);
+		return info;
+	}
+	//Number of trips of a vehicle sample, and index (in the whole store) of a trip of a vehicle sample
+	public int numTrips(int sampleID) {return sampleTable.getInt(sampleID*SampleRecBytes + 12);}
+	public int tripIndex(int sampleID, int tripIDinSample) {return sampleTable.getInt(sampleID*SampleRecBytes + 16) + tripIDinSample;}
+
+	//Identifiers of a trip (by index in the whole store)
+	public VehicleSampleMA.TripIDs tripIDs(int tripIndex) {
+		int pos = tripIndex*TripRecBytes;
+		VehicleSampleMA.TripIDs ids = new VehicleSampleMA.TripIDs();
+		ids.gID = tripTable.getInt(pos);
+		ids.dayID = tripTable.getInt(pos+4);
+		ids.idInDay = tripTable.getInt(pos+8);
+		ids.secsFromLastTrip = tripTable.getInt(pos+12);
+		ids.numRecSteps = tripTable.getInt(pos+16);
+		ids.miles = tripTable.getFloat(pos+20);
+		ids.year = tripTable.getInt(pos+24);
+		ids.month = tripTable.getInt(pos+28);
+		ids.day = tripTable.getInt(pos+32);
+		ids.hr24 = tripTable.getInt(pos+36);
+		ids.min = tripTable.getInt(pos+40);
+		ids.sec = tripTable.getInt(pos+44);
+		ids.numPayloadAdjust = tripTable.getInt(pos+48);
+		return ids;
+	}
+	public int numRecSteps(int tripIndex) {return tripTable.getInt(tripIndex*TripRecBytes + 16);}
+	private int firstPayloadAdjust(int tripIndex) {return tripTable.getInt(tripIndex*TripRecBytes + 52);}
+	private long firstStep(int tripIndex) {return tripTable.getLong(tripIndex*TripRecBytes + 56);}
+
+	//Payload adjustments of a trip
+	public VehicleSampleMA.AdditionalPayload[] payloadAdjust(int tripIndex) {
+		int num = tripTable.getInt(tripIndex*TripRecBytes + 48);
+		int first = firstPayloadAdjust(tripIndex);
+		VehicleSampleMA.AdditionalPayload[] arr = new VehicleSampleMA.AdditionalPayload[num];
+		for (int i=0; i<num; i++) {
+			arr[i] = new VehicleSampleMA.AdditionalPayload();
+			arr[i].tStepID = payloadTable.getInt((first+i)*PayloadRecBytes);
+			arr[i].payloadKg = payloadTable.getFloat((first+i)*PayloadRecBytes + 4);
+		}
+		return arr;
+	}
+
+	//Views (without copying) of the sec-by-sec data of a trip
+	public FloatBuffer speedMPH(int tripIndex) {return columnView(Col_speedMPH, tripIndex);}
+	public FloatBuffer fltGrade(int tripIndex) {return columnView(Col_fltGrade, tripIndex);}
+	public FloatBuffer recAuxKW(int tripIndex) {return columnView(Col_recAuxKW, tripIndex);}
+	private FloatBuffer columnView(int columnID, int tripIndex) {
+		int chunkID = chunkID(tripIndex);
+		int pos = (int)(4*(firstStep(tripIndex) - chunkFirstStep[chunkID]));
+
+		ByteBuffer bb = columnChunks[columnID][chunkID].duplicate();
+		bb.position(pos);
+		bb.limit(pos + 4*numRecSteps(tripIndex));
+		return bb.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+	}
+	private int chunkID(int tripIndex) {
+		int lo = 0;
+		int hi = chunkFirstTrip.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1)/2;
+			if (chunkFirstTrip[mid] <= tripIndex) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+	private static float[] toArray(FloatBuffer fb) {
+		float[] arr = new float[fb.remaining()];
+		fb.get(arr);
+		return arr;
+	}
+
+	//Function to form one trip (copies the sec-by-sec data into arrays)
+	public VehicleSampleMA.Trip trip(int tripIndex) {
+		return new VehicleSampleMA.Trip(tripIDs(tripIndex), payloadAdjust(tripIndex),
+				toArray(speedMPH(tripIndex)), toArray(fltGrade(tripIndex)), toArray(recAuxKW(tripIndex)));
+	}
+	//Function to form the input for simulating one trip
+	public FSJTripInput tripInput(int tripIndex) {
+		float[] mph = toArray(speedMPH(tripIndex));
+		float[] payloadKg = VehicleSampleMA.payload1HzTimeSeries(payloadAdjust(tripIndex), mph.length);
+		return new FSJTripInput(null, mph, toArray(fltGrade(tripIndex)), toArray(recAuxKW(tripIndex)), payloadKg);
+	}
+	//Function to form one vehicle sample
+	public VehicleSampleMA vehicleSample(int sampleID) {
+		VehicleSampleMA.SampleID info = sampleID(sampleID);
+		VehicleSampleMA.Trip[] trips = new VehicleSampleMA.Trip[info.nTrips];
+		for (int j=0; j<trips.length; j++) trips[j] = trip(tripIndex(sampleID, j));
+		return new VehicleSampleMA(info, trips);
+	}
+
+
+	//Function to convert a CSV file of vehicle samples into a store file (samples are read one at a time), returns the number
+	// of samples converted -- throws SampleFileStream.ParseException (with line number) if any sample could not be parsed,
+	// and no store file is left behind if the conversion fails
+	public static int convertFromCSV(String csvFileName, String storeFileName) throws IOException {
+		File storeFile = new File(storeFileName);
+		File folder = storeFile.getAbsoluteFile().getParentFile();
+		SectionWriter[] sections = new SectionWriter[3 + NumColumns];
+		SampleFileStream<VehicleSampleMA> fin = null;
+		FileOutputStream fout = null;
+		FileInputStream sin = null;
+		boolean storeFileCreated = false;
+		boolean completed = false;
+
+		try {
+			for (int i=0; i<sections.length; i++) sections[i] = new SectionWriter(folder);
+			SectionWriter samples = sections[0];
+			SectionWriter trips = sections[1];
+			SectionWriter payloads = sections[2];
+
+			int numSamples = 0;
+			int numTrips = 0;
+			int numPayloadAdjust = 0;
+			long numSteps = 0;
+
+			fin = VehicleSampleMA.openStream(csvFileName);
+			while (fin.hasNext()) {
+				VehicleSampleMA vs = fin.next();
+				VehicleSampleMA.SampleID info = vs.vehSampleInfo();
+				VehicleSampleMA.Trip[] vsTrips = vs.trips();
+				samples.writeInt(info.hhID);
+				samples.writeInt(info.vehIDinHH);
+				samples.writeFloat(info.hhWt);
+				samples.writeInt(vsTrips.length);
+				samples.writeInt(numTrips);
+
+				for (int j=0; j<vsTrips.length; j++) {
+					VehicleSampleMA.TripIDs ids = vsTrips[j].tripIDs();
+					VehicleSampleMA.AdditionalPayload[] pAdj = vsTrips[j].payloadAdjust();
+					float[] mph = vsTrips[j].speedMPH();
+
+					trips.writeInt(ids.gID);
+					trips.writeInt(ids.dayID);
+					trips.writeInt(ids.idInDay);
+					trips.writeInt(ids.secsFromLastTrip);
+					trips.writeInt(mph.length);
+					trips.writeFloat(ids.miles);
+					trips.writeInt(ids.year);
+					trips.writeInt(ids.month);
+					trips.writeInt(ids.day);
+					trips.writeInt(ids.hr24);
+					trips.writeInt(ids.min);
+					trips.writeInt(ids.sec);
+					trips.writeInt(pAdj.length);
+					trips.writeInt(numPayloadAdjust);
+					trips.writeLong(numSteps);
+
+					for (int i=0; i<pAdj.length; i++) {
+						payloads.writeInt(pAdj[i].tStepID);
+						payloads.writeFloat(pAdj[i].payloadKg);
+					}
+					sections[3 + Col_speedMPH].writeFloats(mph);
+					sections[3 + Col_fltGrade].writeFloats(vsTrips[j].fltGrade());
+					sections[3 + Col_recAuxKW].writeFloats(vsTrips[j].recAuxKW());
+
+					numPayloadAdjust += pAdj.length;
+					numSteps += mph.length;
+					numTrips++;
+				}
+				numSamples++;
+			}
+			for (int i=0; i<sections.length; i++) sections[i].finish();
+
+			//Header with offsets of the sections
+			ByteBuffer header = ByteBuffer.allocate(HeaderBytes).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, MagicNumber);
+			header.putInt(4, FormatVersion);
+			header.putInt(8, numSamples);
+			header.putInt(12, numTrips);
+			header.putInt(16, numPayloadAdjust);
+			long offset = HeaderBytes;
+			for (int i=0; i<sections.length; i++) {
+				header.putLong(24 + 8*i, offset);
+				offset += sections[i].numBytes;
+			}
+
+			//Assemble the file
+			fout = new FileOutputStream(storeFile);
+			storeFileCreated = true;
+			FileChannel outChannel = fout.getChannel();
+			while (header.hasRemaining()) outChannel.write(header);
+			for (int i=0; i<sections.length; i++) {
+				sin = new FileInputStream(sections[i].file);
+				FileChannel inChannel = sin.getChannel();
+				long pos = 0;
+				while (pos < sections[i].numBytes) pos += inChannel.transferTo(pos, sections[i].numBytes - pos, outChannel);
+				sin.close();
+				sin = null;
+			}
+			fout.close();
+			fout = null;
+
+			completed = true;
+			return numSamples;
+		} finally {
+			if (fin != null) fin.close();
+			if (sin != null) {
+				try {
+					sin.close();
+				} catch (IOException e) {}
+			}
+			if (fout != null) {
+				try {
+					fout.close();
+				} catch (IOException e) {}
+			}
+			if (storeFileCreated && !completed) storeFile.delete();
+			for (int i=0; i<sections.length; i++) {
+				if (sections[i] != null) sections[i].delete();
+			}
+		}
+	}
+
+	//Writer of one section into a temporary file (little-endian)
+	private static class SectionWriter {
+		private File file;
+		private DataOutputStream dout;
+		private long numBytes;
+
+		private SectionWriter(File folder) throws IOException {
+			file = File.createTempFile("fsjstore", ".tmp", folder);
+			dout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		}
+		private void writeInt(int v) throws IOException {
+			dout.writeInt(Integer.reverseBytes(v));
+			numBytes += 4;
+		}
+		private void writeFloat(float v) throws IOException {
+			writeInt(Float.floatToRawIntBits(v));
+		}
+		private void writeLong(long v) throws IOException {
+			dout.writeLong(Long.reverseBytes(v));
+			numBytes += 8;
+		}
+		private void writeFloats(float[] arr) throws IOException {
+			for (int i=0; i<arr.length; i++) writeInt(Float.floatToRawIntBits(arr[i]));
+		}
+		private void finish() throws IOException {
+			dout.flush();
+			dout.close();
+		}
+		private void delete() {
+			try {
+				dout.close();
+			} catch (IOException e) {}
+			file.delete();
+		}
+	}
+}